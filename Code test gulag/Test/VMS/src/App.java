@@ -1,6 +1,9 @@
+import java.io.File;
+import java.io.IOException;
 import java.util.List;
 import java.util.Scanner;
 import java.util.ArrayList;
+import java.util.Collections;
 
 /**
  * Main application class for the Vehicle Management System
@@ -10,7 +13,13 @@ public class App {
     private static VehicleManager vehicleManager;
     private static Scanner scanner;
     
+    // Number of matches listed per search in the vehicle picker
+    private static final int SEARCH_RESULTS = 10;
+    
     public static void main(String[] args) {
+        // Redraw only what changed between screens when the console supports it
+        TerminalScreen.install();
+        
         // Initialize the vehicle manager and scanner
         vehicleManager = new VehicleManager();
         scanner = new Scanner(System.in);
@@ -41,10 +50,17 @@ public class App {
                     case "delete vehicle":
                         deleteVehicle();
                         break;
+                    case "import csv":
+                        importCsv();
+                        break;
+                    case "export csv":
+                        exportCsv();
+                        break;
                     case "exit":
                         running = false;
-                        // Save all vehicles before exiting
-                        vehicleManager.saveAllVehicles();
+                        // Every change is saved as it is made; only save edits that were never submitted
+                        vehicleManager.savePendingEdits();
+                        vehicleManager.close();
                         System.out.println("Thank you for using the Vehicle Management System. Goodbye!");
                         break;
                     default:
@@ -79,6 +95,8 @@ public class App {
         options.add("View vehicles");
         options.add("Update vehicle");
         options.add("Delete vehicle");
+        options.add("Import from CSV");
+        options.add("Export to CSV");
         options.add("Exit");
         
         int selected = ConsoleHelper.showMenu("VEHICLE MANAGEMENT SYSTEM - MENU", options);
@@ -92,7 +110,9 @@ public class App {
             case 1: return "view vehicles";
             case 2: return "update vehicle";
             case 3: return "delete vehicle";
-            case 4: return "exit";
+            case 4: return "import csv";
+            case 5: return "export csv";
+            case 6: return "exit";
             default: return "";
         }
     }
@@ -108,14 +128,15 @@ public class App {
         
         // First, let user select vehicle type using arrow keys
         List<String> vehicleTypes = new ArrayList<>();
-        vehicleTypes.add("Car");
-        vehicleTypes.add("Truck");
-        vehicleTypes.add("Motorcycle");
+        for (VehicleCodec<?> codec : VehicleCodecs.all()) {
+            vehicleTypes.add(codec.getTypeName());
+        }
+        int cancelOption = vehicleTypes.size();
         vehicleTypes.add("Cancel");
         
         int typeSelection = ConsoleHelper.showMenu("Select vehicle type:", vehicleTypes);
         
-        if (typeSelection == 3 || typeSelection == -1) { // Cancel or escape
+        if (typeSelection == cancelOption || typeSelection == -1) { // Cancel or escape
             System.out.println("Vehicle addition cancelled.");
             return;
         }
@@ -128,16 +149,8 @@ public class App {
                 System.out.println("Vehicle added successfully!");
                 
                 // Display the new vehicle in tabulated format
-                List<String[]> tableData = new ArrayList<>();
-                tableData.add(ConsoleHelper.vehicleToStringArray(newVehicle));
-                
-                String vehicleType = "";
-                if (newVehicle instanceof Car) vehicleType = "car";
-                else if (newVehicle instanceof Truck) vehicleType = "truck";
-                else if (newVehicle instanceof Motorcycle) vehicleType = "motorcycle";
-                
-                String[] headers = ConsoleHelper.getVehicleTableHeaders(vehicleType);
-                ConsoleHelper.displayTable(headers, tableData);
+                String[] headers = ConsoleHelper.getVehicleTableHeaders(VehicleCodecs.typeNameOf(newVehicle));
+                ConsoleHelper.displayVehicles(headers, Collections.singletonList(newVehicle));
             } else {
                 System.out.println("Failed to add vehicle.");
             }
@@ -157,66 +170,41 @@ public class App {
         System.out.println("\nALL VEHICLES");
         System.out.println("------------");
         
-        List<Vehicle> vehicles = vehicleManager.getAllVehicles();
-        
-        if (vehicles.isEmpty()) {
-            System.out.println("No vehicles found.");
-        } else {
-            // Separate vehicles by type
-            List<Vehicle> cars = new ArrayList<>();
-            List<Vehicle> trucks = new ArrayList<>();
-            List<Vehicle> motorcycles = new ArrayList<>();
-            
-            for (Vehicle vehicle : vehicles) {
-                if (vehicle instanceof Car) {
-                    cars.add(vehicle);
-                } else if (vehicle instanceof Truck) {
-                    trucks.add(vehicle);
-                } else if (vehicle instanceof Motorcycle) {
-                    motorcycles.add(vehicle);
-                }
-            }
-            
-            // Display cars
-            if (!cars.isEmpty()) {
-                System.out.println("\nCARS");
-                System.out.println("----");
-                List<String[]> carData = new ArrayList<>();
-                for (Vehicle car : cars) {
-                    carData.add(ConsoleHelper.vehicleToStringArray(car));
+        // Read from a pinned version instead of copying the whole fleet
+        try (FleetSnapshot vehicles = vehicleManager.openSnapshot()) {
+            if (vehicles.isEmpty()) {
+                System.out.println("No vehicles found.");
+            } else {
+                // Separate vehicles by type tag
+                List<List<Vehicle>> byType = new ArrayList<>();
+                for (int i = 0; i < VehicleCodecs.size(); i++) {
+                    byType.add(new ArrayList<>());
                 }
-                String[] carHeaders = ConsoleHelper.getVehicleTableHeaders("car");
-                ConsoleHelper.displayTable(carHeaders, carData);
-                System.out.println("Total cars: " + cars.size());
-            }
-            
-            // Display trucks
-            if (!trucks.isEmpty()) {
-                System.out.println("\nTRUCKS");
-                System.out.println("------");
-                List<String[]> truckData = new ArrayList<>();
-                for (Vehicle truck : trucks) {
-                    truckData.add(ConsoleHelper.vehicleToStringArray(truck));
+                
+                for (Vehicle vehicle : vehicles) {
+                    if (vehicle.getTypeTag() >= 0) {
+                        byType.get(vehicle.getTypeTag()).add(vehicle);
+                    }
                 }
-                String[] truckHeaders = ConsoleHelper.getVehicleTableHeaders("truck");
-                ConsoleHelper.displayTable(truckHeaders, truckData);
-                System.out.println("Total trucks: " + trucks.size());
-            }
-            
-            // Display motorcycles
-            if (!motorcycles.isEmpty()) {
-                System.out.println("\nMOTORCYCLES");
-                System.out.println("-----------");
-                List<String[]> motorcycleData = new ArrayList<>();
-                for (Vehicle motorcycle : motorcycles) {
-                    motorcycleData.add(ConsoleHelper.vehicleToStringArray(motorcycle));
+                
+                // Display each type in its own table
+                for (VehicleCodec<?> codec : VehicleCodecs.all()) {
+                    List<Vehicle> ofType = byType.get(codec.getTag());
+                    if (ofType.isEmpty()) {
+                        continue;
+                    }
+                    String title = codec.getTypeName().toUpperCase() + "S";
+                    System.out.println("\n" + title);
+                    System.out.println("-".repeat(title.length()));
+                    String[] typeHeaders = ConsoleHelper.getVehicleTableHeaders(codec.getTypeName());
+                    ConsoleHelper.displayVehicles(typeHeaders, ofType);
+                    System.out.println("Total " + codec.getTypeName().toLowerCase() + "s: " + ofType.size()
+                            + " (value " + Money.format(Money.totalCents(ofType)) + ")");
                 }
-                String[] motorcycleHeaders = ConsoleHelper.getVehicleTableHeaders("motorcycle");
-                ConsoleHelper.displayTable(motorcycleHeaders, motorcycleData);
-                System.out.println("Total motorcycles: " + motorcycles.size());
+                
+                System.out.println("\nTotal vehicles: " + vehicles.size());
+                System.out.println("Inventory value: " + Money.format(Money.totalCents(vehicles)));
             }
-            
-            System.out.println("\nTotal vehicles: " + vehicles.size());
         }
         
         System.out.println("Press Enter to continue...");
@@ -224,50 +212,68 @@ public class App {
     }
     
     /**
-     * Prompts for a vehicle ID and updates that vehicle
-     * Uses arrow key navigation to select from available vehicles
+     * Prompts for a vehicle and updates it
+     * Uses the search-driven picker to find the vehicle
      */
     private static void updateVehicle() {
-        List<Vehicle> vehicles = vehicleManager.getAllVehicles();
-        
-        if (vehicles.isEmpty()) {
+        if (vehicleManager.getVehicleCount() == 0) {
             System.out.println("No vehicles found to update.");
             System.out.println("Press Enter to continue...");
             scanner.nextLine();
             return;
         }
         
-        // Display vehicles in tabulated format
         System.out.println("\nSELECT VEHICLE TO UPDATE");
         System.out.println("------------------------");
         
-        // Convert vehicles to table data
-        List<String[]> tableData = new ArrayList<>();
-        for (Vehicle vehicle : vehicles) {
-            tableData.add(ConsoleHelper.vehicleToStringArray(vehicle));
-        }
-        
-        // Display the table
-        String[] headers = ConsoleHelper.getVehicleTableHeaders(null);
-        ConsoleHelper.displayTable(headers, tableData);
-        
-        // Create a list of options for selection
-        List<String> options = new ArrayList<>();
-        for (Vehicle vehicle : vehicles) {
-            options.add(String.format("%s - %s %s (%d)", 
-                vehicle.getId(), vehicle.getMake(), vehicle.getModel(), vehicle.getYear()));
-        }
-        options.add("Cancel");
-        
-        int selected = ConsoleHelper.showMenu("Select a vehicle to update:", options);
-        
-        if (selected == options.size() - 1 || selected == -1) {
+        Vehicle vehicle = pickVehicle("Select a vehicle to update:");
+        if (vehicle == null) {
             System.out.println("Update cancelled.");
             return;
         }
         
-        String id = vehicles.get(selected).getId();
-        updateVehicleById(id);
+        updateVehicleById(vehicle.getId());
+    }
+    
+    /**
+     * Lets the user narrow the fleet down by typing a prefix of the make, model or ID
+     * Only the best matches for each prefix are listed, so this stays fast for large fleets
+     * @param title The title of the selection menu
+     * @return The chosen vehicle, or null if cancelled
+     */
+    private static Vehicle pickVehicle(String title) {
+        while (true) {
+            System.out.print("Search by make, model or ID (Enter to cancel): ");
+            String prefix = scanner.nextLine().trim();
+            if (prefix.isEmpty()) {
+                return null;
+            }
+            
+            List<Vehicle> matches = vehicleManager.searchVehicles(prefix, SEARCH_RESULTS);
+            if (matches.isEmpty()) {
+                System.out.println("No vehicles match \"" + prefix + "\".");
+                continue;
+            }
+            
+            // Display the matches in tabulated format
+            ConsoleHelper.displayVehicles(ConsoleHelper.getVehicleTableHeaders(null), matches);
+            
+            // Create a list of options for selection
+            List<String> options = new ArrayList<>();
+            for (Vehicle vehicle : matches) {
+                options.add(String.format("%s - %s %s (%d)", 
+                    vehicle.getId(), vehicle.getMake(), vehicle.getModel(), vehicle.getYear()));
+            }
+            options.add("Search again");
+            
+            int selected = ConsoleHelper.showMenu(title, options);
+            if (selected == -1) {
+                return null;
+            }
+            if (selected < matches.size()) {
+                return matches.get(selected);
+            }
+        }
     }
     
     /**
@@ -315,95 +321,30 @@ public class App {
             vehicle.setColor(input);
         }
         
-        System.out.print("Price [" + vehicle.getPrice() + "]: ");
+        System.out.print("Price [" + Money.toDecimalString(vehicle.getPriceCents()) + "]: ");
         input = scanner.nextLine().trim();
         if (!input.isEmpty()) {
             try {
-                vehicle.setPrice(Double.parseDouble(input));
+                vehicle.setPriceCents(Money.parse(input));
             } catch (NumberFormatException e) {
                 System.out.println("Invalid price format. Keeping current value.");
             }
         }
         
-        // Update specific properties based on vehicle type
-        if (vehicle instanceof Car) {
-            Car car = (Car) vehicle;
-            
-            System.out.print("Number of doors [" + car.getNumDoors() + "]: ");
-            input = scanner.nextLine().trim();
-            if (!input.isEmpty()) {
-                try {
-                    car.setNumDoors(Integer.parseInt(input));
-                } catch (NumberFormatException e) {
-                    System.out.println("Invalid format. Keeping current value.");
-                }
-            }
-            
-            System.out.print("Transmission type [" + car.getTransmissionType() + "]: ");
-            input = scanner.nextLine().trim();
-            if (!input.isEmpty()) {
-                car.setTransmissionType(input);
-            }
-            
-            System.out.print("Engine size [" + car.getEngineSize() + "]: ");
-            input = scanner.nextLine().trim();
-            if (!input.isEmpty()) {
-                try {
-                    car.setEngineSize(Double.parseDouble(input));
-                } catch (NumberFormatException e) {
-                    System.out.println("Invalid format. Keeping current value.");
-                }
-            }
-            
-        } else if (vehicle instanceof Truck) {
-            Truck truck = (Truck) vehicle;
-            
-            System.out.print("Cargo capacity [" + truck.getCargoCapacity() + "]: ");
-            input = scanner.nextLine().trim();
-            if (!input.isEmpty()) {
-                try {
-                    truck.setCargoCapacity(Double.parseDouble(input));
-                } catch (NumberFormatException e) {
-                    System.out.println("Invalid format. Keeping current value.");
-                }
-            }
-            
-            System.out.print("Drive type [" + truck.getDriveType() + "]: ");
-            input = scanner.nextLine().trim();
-            if (!input.isEmpty()) {
-                truck.setDriveType(input);
-            }
-            
-            System.out.print("Has tow package [" + (truck.getHasTowPackage() ? "Yes" : "No") + "]: ");
-            input = scanner.nextLine().trim();
-            if (!input.isEmpty()) {
-                truck.setHasTowPackage(input.equalsIgnoreCase("yes"));
-            }
-            
-        } else if (vehicle instanceof Motorcycle) {
-            Motorcycle motorcycle = (Motorcycle) vehicle;
-            
-            System.out.print("Bike type [" + motorcycle.getBikeType() + "]: ");
-            input = scanner.nextLine().trim();
-            if (!input.isEmpty()) {
-                motorcycle.setBikeType(input);
-            }
-            
-            System.out.print("Engine CC [" + motorcycle.getEngineCC() + "]: ");
-            input = scanner.nextLine().trim();
-            if (!input.isEmpty()) {
-                try {
-                    motorcycle.setEngineCC(Integer.parseInt(input));
-                } catch (NumberFormatException e) {
-                    System.out.println("Invalid format. Keeping current value.");
+        // Update specific properties from the vehicle type's field schema
+        VehicleCodec<?> codec = VehicleCodecs.of(vehicle);
+        if (codec != null) {
+            for (VehicleCodec.Field field : codec.getFields()) {
+                System.out.print(field.getLabel() + " [" + field.display(vehicle) + "]: ");
+                input = scanner.nextLine().trim();
+                if (!input.isEmpty()) {
+                    try {
+                        field.set(vehicle, field.parse(input));
+                    } catch (NumberFormatException e) {
+                        System.out.println("Invalid format. Keeping current value.");
+                    }
                 }
             }
-            
-            System.out.print("Has fairing [" + (motorcycle.getHasFairing() ? "Yes" : "No") + "]: ");
-            input = scanner.nextLine().trim();
-            if (!input.isEmpty()) {
-                motorcycle.setHasFairing(input.equalsIgnoreCase("yes"));
-            }
         }
         
         // Save the updated vehicle
@@ -416,50 +357,27 @@ public class App {
     }
     
     /**
-     * Prompts for a vehicle ID and deletes that vehicle
-     * Uses arrow key navigation to select from available vehicles
+     * Prompts for a vehicle and deletes it
+     * Uses the search-driven picker to find the vehicle
      */
     private static void deleteVehicle() {
-        List<Vehicle> vehicles = vehicleManager.getAllVehicles();
-        
-        if (vehicles.isEmpty()) {
+        if (vehicleManager.getVehicleCount() == 0) {
             System.out.println("No vehicles found to delete.");
             System.out.println("Press Enter to continue...");
             scanner.nextLine();
             return;
         }
         
-        // Display vehicles in tabulated format
         System.out.println("\nSELECT VEHICLE TO DELETE");
         System.out.println("------------------------");
         
-        // Convert vehicles to table data
-        List<String[]> tableData = new ArrayList<>();
-        for (Vehicle vehicle : vehicles) {
-            tableData.add(ConsoleHelper.vehicleToStringArray(vehicle));
-        }
-        
-        // Display the table
-        String[] headers = ConsoleHelper.getVehicleTableHeaders(null);
-        ConsoleHelper.displayTable(headers, tableData);
-        
-        // Create a list of options for selection
-        List<String> options = new ArrayList<>();
-        for (Vehicle vehicle : vehicles) {
-            options.add(String.format("%s - %s %s (%d)", 
-                vehicle.getId(), vehicle.getMake(), vehicle.getModel(), vehicle.getYear()));
-        }
-        options.add("Cancel");
-        
-        int selected = ConsoleHelper.showMenu("Select a vehicle to delete:", options);
-        
-        if (selected == options.size() - 1 || selected == -1) {
+        Vehicle vehicle = pickVehicle("Select a vehicle to delete:");
+        if (vehicle == null) {
             System.out.println("Delete cancelled.");
             return;
         }
         
-        String id = vehicles.get(selected).getId();
-        deleteVehicleById(id);
+        deleteVehicleById(vehicle.getId());
     }
     
     /**
@@ -480,16 +398,8 @@ public class App {
         System.out.println("\nDELETE VEHICLE: " + id);
         
         // Display vehicle details in tabulated format
-        List<String[]> tableData = new ArrayList<>();
-        tableData.add(ConsoleHelper.vehicleToStringArray(vehicle));
-        
-        String vehicleType = "";
-        if (vehicle instanceof Car) vehicleType = "car";
-        else if (vehicle instanceof Truck) vehicleType = "truck";
-        else if (vehicle instanceof Motorcycle) vehicleType = "motorcycle";
-        
-        String[] headers = ConsoleHelper.getVehicleTableHeaders(vehicleType);
-        ConsoleHelper.displayTable(headers, tableData);
+        String[] headers = ConsoleHelper.getVehicleTableHeaders(VehicleCodecs.typeNameOf(vehicle));
+        ConsoleHelper.displayVehicles(headers, Collections.singletonList(vehicle));
         
         // Confirmation with arrow key navigation
         List<String> options = new ArrayList<>();
@@ -511,4 +421,60 @@ public class App {
         System.out.println("Press Enter to continue...");
         scanner.nextLine();
     }
+    
+    /**
+     * Imports vehicles from a CSV file and reports rejected rows
+     */
+    private static void importCsv() {
+        System.out.print("CSV file to import: ");
+        String path = scanner.nextLine().trim();
+        if (path.isEmpty()) {
+            System.out.println("Import cancelled.");
+            return;
+        }
+        
+        try {
+            long start = System.nanoTime();
+            VehicleCsv.ImportResult result = vehicleManager.importCsv(new File(path));
+            System.out.printf("Imported %d vehicles in %.2f s%n", result.getVehicles().size(),
+                    (System.nanoTime() - start) / 1e9);
+            
+            List<String> errors = result.getErrors();
+            if (!errors.isEmpty()) {
+                System.out.println(errors.size() + " rows were rejected:");
+                for (String error : errors.subList(0, Math.min(errors.size(), 20))) {
+                    System.out.println("  " + error);
+                }
+                if (errors.size() > 20) {
+                    System.out.println("  ...");
+                }
+            }
+        } catch (IOException e) {
+            System.out.println("Could not read " + path + ": " + e.getMessage());
+        }
+        
+        System.out.println("Press Enter to continue...");
+        scanner.nextLine();
+    }
+    
+    /**
+     * Exports the fleet to a CSV file
+     */
+    private static void exportCsv() {
+        System.out.print("CSV file to write [vehicles.csv]: ");
+        String path = scanner.nextLine().trim();
+        if (path.isEmpty()) {
+            path = "vehicles.csv";
+        }
+        
+        long written = vehicleManager.exportCsv(new File(path));
+        if (written >= 0) {
+            System.out.println("Exported " + written + " vehicles to " + path);
+        } else {
+            System.out.println("Export failed.");
+        }
+        
+        System.out.println("Press Enter to continue...");
+        scanner.nextLine();
+    }
 }
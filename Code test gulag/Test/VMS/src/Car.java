@@ -8,21 +8,26 @@ public class Car extends Vehicle {
     
     public Car(String id, String make, String model, int year, String color, double price, 
                int numDoors, String transmissionType, double engineSize) {
-        super(id, make, model, year, color, price);
+        this(VehicleId.parse(id), make, model, year, color, Money.toCents(price), numDoors, transmissionType, engineSize);
+    }
+    
+    public Car(long id, String make, String model, int year, String color, long priceCents, 
+               int numDoors, String transmissionType, double engineSize) {
+        super(id, make, model, year, color, priceCents);
         this.numDoors = numDoors;
-        this.transmissionType = transmissionType;
+        this.transmissionType = StringPool.intern(transmissionType);
         this.engineSize = engineSize;
     }
     
     // Getters and setters
     public int getNumDoors() { return numDoors; }
-    public void setNumDoors(int numDoors) { this.numDoors = numDoors; }
+    public void setNumDoors(int numDoors) { this.numDoors = numDoors; touch(); }
     
     public String getTransmissionType() { return transmissionType; }
-    public void setTransmissionType(String transmissionType) { this.transmissionType = transmissionType; }
+    public void setTransmissionType(String transmissionType) { this.transmissionType = StringPool.intern(transmissionType); touch(); }
     
     public double getEngineSize() { return engineSize; }
-    public void setEngineSize(double engineSize) { this.engineSize = engineSize; }
+    public void setEngineSize(double engineSize) { this.engineSize = engineSize; touch(); }
     
     @Override
     public String toString() {
@@ -0,0 +1,37 @@
+/**
+ * Codec for cars
+ */
+public class CarCodec extends VehicleCodec<Car> {
+
+    public CarCodec() {
+        super("Car", Car.class,
+              new Field("numDoors", "Number of doors", "Doors", Kind.INT,
+                        v -> ((Car) v).getNumDoors(), (v, value) -> ((Car) v).setNumDoors((Integer) value)),
+              new Field("transmissionType", "Transmission type", "Transmission", Kind.STRING,
+                        v -> ((Car) v).getTransmissionType(), (v, value) -> ((Car) v).setTransmissionType((String) value)),
+              new Field("engineSize", "Engine size (L)", "Engine", Kind.DOUBLE,
+                        v -> ((Car) v).getEngineSize(), (v, value) -> ((Car) v).setEngineSize((Double) value)));
+    }
+
+    @Override
+    public Car read(long id, String make, String model, int year, String color, long priceCents, FieldReader in) {
+        return new Car(id, make, model, year, color, priceCents,
+                       in.readInt("numDoors", 0),
+                       in.readString("transmissionType", ""),
+                       in.readDouble("engineSize", 0.0));
+    }
+
+    @Override
+    protected void writeFields(Car car, FieldWriter out) {
+        out.writeInt("numDoors", car.getNumDoors());
+        out.writeString("transmissionType", car.getTransmissionType());
+        out.writeDouble("engineSize", car.getEngineSize());
+    }
+
+    @Override
+    protected void renderFields(Car car, String[] cells, int offset) {
+        cells[offset] = String.valueOf(car.getNumDoors());
+        cells[offset + 1] = car.getTransmissionType();
+        cells[offset + 2] = String.format("%.1fL", car.getEngineSize());
+    }
+}
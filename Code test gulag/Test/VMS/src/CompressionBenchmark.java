@@ -0,0 +1,132 @@
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+/**
+ * Measures the I/O versus CPU trade-off of the compressed storage formats
+ *
+ * For each fleet size and format it reports the file size, the CPU time to write and to read
+ * (decompress) the file, and the projected end-to-end time on a disk of the given bandwidth,
+ * i.e. CPU time plus bytes / bandwidth.
+ * Usage: java CompressionBenchmark [diskMBPerSecond] [fleetSize...]
+ */
+public class CompressionBenchmark {
+    private static final String[] MAKES = {"Toyota", "Ford", "Honda", "Nissan", "Tesla", "BMW", "Kia"};
+    private static final String[] COLORS = {"Black", "White", "Silver", "Red", "Blue"};
+
+    public static void main(String[] args) throws IOException {
+        double diskMBPerSecond = args.length > 0 ? Double.parseDouble(args[0]) : 50;
+        List<Integer> sizes = new ArrayList<>();
+        for (int i = 1; i < args.length; i++) {
+            sizes.add(Integer.parseInt(args[i]));
+        }
+        if (sizes.isEmpty()) {
+            sizes.add(10_000);
+            sizes.add(100_000);
+            sizes.add(500_000);
+        }
+
+        File file = File.createTempFile("vehicles-bench", ".json");
+        file.deleteOnExit();
+        JSONHandler handler = new JSONHandler(file.getPath());
+
+        Object[][] formats = {
+            {JSONHandler.Compression.NONE, -1},
+            {JSONHandler.Compression.GZIP, 1},
+            {JSONHandler.Compression.GZIP, 6},
+            {JSONHandler.Compression.GZIP, 9},
+            {JSONHandler.Compression.DEFLATE, 1},
+            {JSONHandler.Compression.DEFLATE, 6},
+        };
+
+        System.out.printf("Projected times assume a disk of %.0f MB/s%n", diskMBPerSecond);
+        for (int size : sizes) {
+            List<Vehicle> fleet = generateFleet(size);
+            System.out.printf("%nFleet of %,d vehicles%n", size);
+            System.out.printf("%-12s %12s %7s %10s %10s %12s %12s%n",
+                    "Format", "Bytes", "Ratio", "Write CPU", "Read CPU", "Save total", "Load total");
+
+            long plainBytes = 0;
+            for (Object[] format : formats) {
+                JSONHandler.Compression compression = (JSONHandler.Compression) format[0];
+                int level = (Integer) format[1];
+                handler.setCompression(compression, level);
+
+                // One untimed round to warm up, then the measured one
+                handler.saveVehicles(fleet);
+                readAll(file);
+
+                long start = System.nanoTime();
+                handler.saveVehicles(fleet);
+                long writeNanos = System.nanoTime() - start;
+
+                start = System.nanoTime();
+                readAll(file);
+                long readNanos = System.nanoTime() - start;
+
+                long bytes = file.length();
+                if (compression == JSONHandler.Compression.NONE) {
+                    plainBytes = bytes;
+                }
+                double ioMillis = bytes / (diskMBPerSecond * 1024 * 1024) * 1000;
+                String name = compression == JSONHandler.Compression.NONE
+                        ? "none" : compression.name().toLowerCase() + "-" + level;
+
+                System.out.printf("%-12s %,12d %6.1fx %8.1fms %8.1fms %10.1fms %10.1fms%n",
+                        name, bytes, (double) plainBytes / bytes,
+                        writeNanos / 1e6, readNanos / 1e6,
+                        writeNanos / 1e6 + ioMillis, readNanos / 1e6 + ioMillis);
+            }
+        }
+    }
+
+    /**
+     * Reads and decompresses a data file without parsing it
+     */
+    private static long readAll(File file) throws IOException {
+        long total = 0;
+        byte[] buffer = new byte[1 << 16];
+        try (InputStream in = JSONHandler.openDataInput(file)) {
+            int read;
+            while ((read = in.read(buffer)) != -1) {
+                total += read;
+            }
+        }
+        return total;
+    }
+
+    private static List<Vehicle> generateFleet(int size) {
+        Random random = new Random(42);
+        IdAllocator allocator = new IdAllocator(0);
+        List<Vehicle> fleet = new ArrayList<>(size);
+        for (int i = 0; i < size; i++) {
+            String id = allocator.nextId();
+            String make = MAKES[random.nextInt(MAKES.length)];
+            String model = "Model " + random.nextInt(500);
+            int year = 1990 + random.nextInt(35);
+            String color = COLORS[random.nextInt(COLORS.length)];
+            long priceCents = random.nextInt(10_000_000);
+
+            switch (i % 3) {
+                case 0:
+                    fleet.add(new Car(id, make, model, year, color, priceCents,
+                                      2 + random.nextInt(3), random.nextBoolean() ? "Automatic" : "Manual",
+                                      1 + random.nextInt(40) / 10.0));
+                    break;
+                case 1:
+                    fleet.add(new Truck(id, make, model, year, color, priceCents,
+                                        random.nextInt(5000) / 10.0, random.nextBoolean() ? "4WD" : "2WD",
+                                        random.nextBoolean()));
+                    break;
+                default:
+                    fleet.add(new Motorcycle(id, make, model, year, color, priceCents,
+                                             random.nextBoolean() ? "Sport" : "Cruiser",
+                                             125 + random.nextInt(1700), random.nextBoolean()));
+            }
+        }
+        return fleet;
+    }
+}
@@ -1,15 +1,34 @@
+import java.util.Arrays;
+import java.util.Collection;
 import java.util.List;
 import java.io.IOException;
 import java.util.Scanner;
+import java.util.function.Function;
 
 /**
  * Helper class for console operations including menu navigation and table display
  */
 public class ConsoleHelper {
+    // Rendered rows are reused across listings until the vehicle changes
+    private static final RowCache ROW_CACHE = new RowCache(Integer.getInteger("vms.rowCache", 100000));
+    
+    // Columns shown for every vehicle type, followed by the type-specific columns of its codec
+    private static final String[] COMMON_HEADERS = {"ID", "Type", "Make", "Model", "Year", "Color", "Price"};
+    private static final int COMMON_COLUMNS = COMMON_HEADERS.length;
+    
+    // Listings are rendered into this buffer and written in bulk
+    private static final ConsoleOutput OUTPUT = new ConsoleOutput();
+    
     /**
      * Clears the console (works in some terminals but not all)
+     * With a terminal screen installed the next frame simply replaces the current one.
      */
     public static void clearConsole() {
+        TerminalScreen screen = TerminalScreen.current();
+        if (screen != null) {
+            screen.beginFrame(false);
+            return;
+        }
         try {
             String os = System.getProperty("os.name").toLowerCase();
             
@@ -25,6 +44,18 @@ public class ConsoleHelper {
         }
     }
     
+    /**
+     * Starts a fresh screen for the next menu when the terminal can be redrawn in place
+     * The lines printed since the last input, such as the outcome of a command, are kept at the
+     * top. Without a terminal screen output keeps scrolling as before.
+     */
+    public static void newScreen() {
+        TerminalScreen screen = TerminalScreen.current();
+        if (screen != null) {
+            screen.beginFrame(true);
+        }
+    }
+    
     /**
      * Displays a menu with numeric selection
      * @param title The title of the menu
@@ -35,6 +66,7 @@ public class ConsoleHelper {
         Scanner scanner = new Scanner(System.in);
         
         while (true) {
+            newScreen();
             System.out.println("\n" + title);
             System.out.println("-".repeat(title.length()));
             
@@ -64,80 +96,76 @@ public class ConsoleHelper {
     
     /**
      * Converts a vehicle to a string array for table display
+     * Rows are cached per vehicle, so the returned array must not be modified
      * @param vehicle The vehicle to convert
      * @return String array of vehicle properties
      */
     public static String[] vehicleToStringArray(Vehicle vehicle) {
-        if (vehicle instanceof Car) {
-            Car car = (Car) vehicle;
-            return new String[] {
-                car.getId(),
-                "Car",
-                car.getMake(),
-                car.getModel(),
-                String.valueOf(car.getYear()),
-                car.getColor(),
-                String.format("$%.2f", car.getPrice()),
-                String.valueOf(car.getNumDoors()),
-                car.getTransmissionType(),
-                String.format("%.1fL", car.getEngineSize())
-            };
-        } else if (vehicle instanceof Truck) {
-            Truck truck = (Truck) vehicle;
-            return new String[] {
-                truck.getId(),
-                "Truck",
-                truck.getMake(),
-                truck.getModel(),
-                String.valueOf(truck.getYear()),
-                truck.getColor(),
-                String.format("$%.2f", truck.getPrice()),
-                String.format("%.1f", truck.getCargoCapacity()),
-                truck.getDriveType(),
-                truck.getHasTowPackage() ? "Yes" : "No"
-            };
-        } else if (vehicle instanceof Motorcycle) {
-            Motorcycle motorcycle = (Motorcycle) vehicle;
-            return new String[] {
-                motorcycle.getId(),
-                "Motorcycle",
-                motorcycle.getMake(),
-                motorcycle.getModel(),
-                String.valueOf(motorcycle.getYear()),
-                motorcycle.getColor(),
-                String.format("$%.2f", motorcycle.getPrice()),
-                motorcycle.getBikeType(),
-                String.valueOf(motorcycle.getEngineCC()) + "cc",
-                motorcycle.getHasFairing() ? "Yes" : "No"
-            };
+        String[] row = ROW_CACHE.get(vehicle);
+        if (row == null) {
+            row = renderRow(vehicle);
+            ROW_CACHE.put(vehicle, row);
         }
+        return row;
+    }
+    
+    /**
+     * Drops the cached row of a vehicle after it was replaced or deleted
+     * @param id The packed vehicle ID
+     */
+    public static void invalidateRow(long id) {
+        ROW_CACHE.invalidate(id);
+    }
+    
+    /**
+     * Formats the table cells of a vehicle
+     * @param vehicle The vehicle to convert
+     * @return String array of vehicle properties
+     */
+    private static String[] renderRow(Vehicle vehicle) {
+        VehicleCodec<?> codec = VehicleCodecs.of(vehicle);
+        String[] cells = new String[COMMON_COLUMNS + (codec != null ? codec.getFields().size() : 0)];
+        cells[0] = vehicle.getId();
+        cells[1] = codec != null ? codec.getTypeName() : "Unknown";
+        cells[2] = vehicle.getMake();
+        cells[3] = vehicle.getModel();
+        cells[4] = String.valueOf(vehicle.getYear());
+        cells[5] = vehicle.getColor();
+        cells[6] = Money.format(vehicle.getPriceCents());
         
-        return new String[] {
-            vehicle.getId(),
-            "Unknown",
-            vehicle.getMake(),
-            vehicle.getModel(),
-            String.valueOf(vehicle.getYear()),
-            vehicle.getColor(),
-            String.format("$%.2f", vehicle.getPrice())
-        };
+        // The vehicle's codec renders the type-specific cells
+        if (codec != null) {
+            codec.render(vehicle, cells, COMMON_COLUMNS);
+        }
+        return cells;
     }
     
     /**
      * Gets table headers based on vehicle type
-     * @param type The type of vehicle (car, truck, motorcycle) or null for general headers
+     * @param type The type name of a registered vehicle type (case-insensitive) or null for general headers
      * @return Array of header strings
      */
     public static String[] getVehicleTableHeaders(String type) {
-        if ("car".equalsIgnoreCase(type)) {
-            return new String[] {"ID", "Type", "Make", "Model", "Year", "Color", "Price", "Doors", "Transmission", "Engine"};
-        } else if ("truck".equalsIgnoreCase(type)) {
-            return new String[] {"ID", "Type", "Make", "Model", "Year", "Color", "Price", "Cargo Cap.", "Drive Type", "Tow Pkg"};
-        } else if ("motorcycle".equalsIgnoreCase(type)) {
-            return new String[] {"ID", "Type", "Make", "Model", "Year", "Color", "Price", "Bike Type", "Engine", "Fairing"};
-        } else {
-            return new String[] {"ID", "Type", "Make", "Model", "Year", "Color", "Price", "Spec 1", "Spec 2", "Spec 3"};
+        VehicleCodec<?> codec = VehicleCodecs.forName(type);
+        if (codec != null) {
+            List<VehicleCodec.Field> fields = codec.getFields();
+            String[] headers = Arrays.copyOf(COMMON_HEADERS, COMMON_COLUMNS + fields.size());
+            for (int i = 0; i < fields.size(); i++) {
+                headers[COMMON_COLUMNS + i] = fields.get(i).getHeader();
+            }
+            return headers;
+        }
+        
+        // General headers have as many spec columns as the widest type
+        int specs = 0;
+        for (VehicleCodec<?> registered : VehicleCodecs.all()) {
+            specs = Math.max(specs, registered.getFields().size());
+        }
+        String[] headers = Arrays.copyOf(COMMON_HEADERS, COMMON_COLUMNS + specs);
+        for (int i = 0; i < specs; i++) {
+            headers[COMMON_COLUMNS + i] = "Spec " + (i + 1);
         }
+        return headers;
     }
     
     /**
@@ -146,11 +174,41 @@ public class ConsoleHelper {
      * @param data Table data rows
      */
     public static void displayTable(String[] headers, List<String[]> data) {
-        if (data.isEmpty()) {
+        displayRows(headers, data, row -> row);
+    }
+    
+    /**
+     * Displays vehicles in a tabulated format without collecting their rows first
+     * @param headers Table headers
+     * @param vehicles The vehicles to list
+     */
+    public static void displayVehicles(String[] headers, Collection<? extends Vehicle> vehicles) {
+        displayRows(headers, vehicles, ConsoleHelper::vehicleToStringArray);
+    }
+    
+    /**
+     * Renders a table into the shared output buffer and writes it in bulk
+     * When stdout is not a terminal the rows are streamed raw, tab-separated without padding or
+     * borders, in a single pass; otherwise a first pass sizes the columns.
+     * @param headers Table headers
+     * @param items The items to list
+     * @param toRow Converts an item to its cells
+     */
+    private static <T> void displayRows(String[] headers, Collection<T> items, Function<? super T, String[]> toRow) {
+        if (items.isEmpty()) {
             System.out.println("No data to display");
             return;
         }
         
+        if (ConsoleOutput.isRaw()) {
+            appendRawRow(headers, headers.length);
+            for (T item : items) {
+                appendRawRow(toRow.apply(item), headers.length);
+            }
+            OUTPUT.flush();
+            return;
+        }
+        
         // Find the max width needed for each column
         int[] colWidths = new int[headers.length];
         
@@ -160,7 +218,8 @@ public class ConsoleHelper {
         }
         
         // Check data
-        for (String[] row : data) {
+        for (T item : items) {
+            String[] row = toRow.apply(item);
             for (int i = 0; i < row.length && i < colWidths.length; i++) {
                 if (row[i] != null && row[i].length() > colWidths[i]) {
                     colWidths[i] = row[i].length();
@@ -168,51 +227,74 @@ public class ConsoleHelper {
             }
         }
         
-        // Create top border
-        StringBuilder topBorder = new StringBuilder("+");
-        for (int width : colWidths) {
-            topBorder.append("-".repeat(width + 2)).append("+");
-        }
-        System.out.println(topBorder);
+        // Top border, header row and separator row
+        appendBorder(colWidths, '+');
+        appendPaddedRow(headers, colWidths);
+        appendBorder(colWidths, '|');
         
-        // Print header row
-        StringBuilder headerRow = new StringBuilder("|");
-        for (int i = 0; i < headers.length; i++) {
-            headerRow.append(" ").append(padRight(headers[i], colWidths[i])).append(" |");
+        // Data rows
+        for (T item : items) {
+            appendPaddedRow(toRow.apply(item), colWidths);
         }
-        System.out.println(headerRow);
         
-        // Print separator row
-        StringBuilder separatorRow = new StringBuilder("|");
+        // Bottom border (same as top border)
+        appendBorder(colWidths, '+');
+        OUTPUT.flush();
+    }
+    
+    private static void appendBorder(int[] colWidths, char edge) {
+        OUTPUT.append(edge);
         for (int width : colWidths) {
-            separatorRow.append("-").append("-".repeat(width)).append("-|");
+            OUTPUT.dashes(width + 2).append(edge);
         }
-        System.out.println(separatorRow);
-        
-        // Print data rows
-        for (String[] row : data) {
-            StringBuilder dataRow = new StringBuilder("|");
-            for (int i = 0; i < headers.length; i++) {
-                String value = i < row.length ? row[i] : "";
-                dataRow.append(" ").append(padRight(value, colWidths[i])).append(" |");
-            }
-            System.out.println(dataRow);
+        OUTPUT.newLine();
+    }
+    
+    private static void appendPaddedRow(String[] row, int[] colWidths) {
+        OUTPUT.append('|');
+        for (int i = 0; i < colWidths.length; i++) {
+            String value = i < row.length && row[i] != null ? row[i] : "";
+            OUTPUT.append(' ').append(value).spaces(colWidths[i] - value.length()).append(" |");
         }
-        
-        // Create bottom border (same as top border)
-        System.out.println(topBorder);
+        OUTPUT.newLine();
     }
     
     /**
-     * Pads a string with spaces to the right to achieve the specified length
-     * @param str String to pad
-     * @param length Desired length
-     * @return Padded string
+     * Appends a tab-separated row
+     * Tabs, line breaks and backslashes inside a cell are escaped as \t, \n, \r and \\, so every
+     * row stays one line with one cell per column.
      */
-    private static String padRight(String str, int length) {
-        if (str == null) {
-            str = "";
+    private static void appendRawRow(String[] row, int columns) {
+        for (int i = 0; i < columns; i++) {
+            if (i > 0) {
+                OUTPUT.append('\t');
+            }
+            if (i < row.length && row[i] != null) {
+                appendRawCell(row[i]);
+            }
+        }
+        OUTPUT.newLine();
+    }
+    
+    private static void appendRawCell(String value) {
+        for (int i = 0; i < value.length(); i++) {
+            char c = value.charAt(i);
+            switch (c) {
+                case '\t':
+                    OUTPUT.append("\\t");
+                    break;
+                case '\n':
+                    OUTPUT.append("\\n");
+                    break;
+                case '\r':
+                    OUTPUT.append("\\r");
+                    break;
+                case '\\':
+                    OUTPUT.append("\\\\");
+                    break;
+                default:
+                    OUTPUT.append(c);
+            }
         }
-        return str + " ".repeat(Math.max(0, length - str.length()));
     }
-}
\ No newline at end of file
+}
@@ -0,0 +1,142 @@
+import java.io.IOException;
+import java.io.PrintStream;
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.nio.charset.CharsetEncoder;
+import java.nio.charset.CodingErrorAction;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+
+/**
+ * Collects console output in one large reusable buffer and writes it to System.out in bulk
+ *
+ * Listings are appended here instead of being printed line by line, so a million rows cost a
+ * few hundred writes of a quarter megabyte each rather than a synchronised, possibly flushing
+ * println per row. Text is encoded into a reusable byte buffer, so nothing is allocated per line.
+ * Not thread-safe; the console is driven from one thread.
+ */
+public final class ConsoleOutput {
+    private static final int FLUSH_CHARS = 1 << 18;
+    private static final String SPACES = " ".repeat(256);
+    private static final String DASHES = "-".repeat(256);
+
+    private final StringBuilder text = new StringBuilder(FLUSH_CHARS + (1 << 12));
+    private final ByteBuffer bytes = ByteBuffer.allocate(FLUSH_CHARS);
+    private final CharsetEncoder encoder = StandardCharsets.UTF_8.newEncoder()
+            .onMalformedInput(CodingErrorAction.REPLACE)
+            .onUnmappableCharacter(CodingErrorAction.REPLACE);
+
+    /**
+     * Checks whether output should be streamed raw: unpadded, tab-separated and without borders
+     * That is the case when stdout is not a terminal, e.g. piped into another program or a file;
+     * -Dvms.rawOutput=true or false overrides the check.
+     * @return true for raw output
+     */
+    public static boolean isRaw() {
+        String setting = System.getProperty("vms.rawOutput");
+        return setting != null ? Boolean.parseBoolean(setting) : !isStdoutTerminal();
+    }
+
+    /**
+     * Checks stdout on its own; System.console() is also null when only stdin is redirected
+     * Where the descriptor cannot be inspected, this falls back to System.console().
+     */
+    private static boolean isStdoutTerminal() {
+        try {
+            Path out = Paths.get("/proc/self/fd/1");
+            if (Files.isSymbolicLink(out)) {
+                String target = Files.readSymbolicLink(out).toString();
+                return target.startsWith("/dev/pts/") || target.startsWith("/dev/tty") || target.equals("/dev/console");
+            }
+        } catch (IOException | UnsupportedOperationException | SecurityException e) {
+            // Fall through to the console check
+        }
+        return System.console() != null;
+    }
+
+    /**
+     * Appends text
+     * @param value The text
+     * @return This output
+     */
+    public ConsoleOutput append(CharSequence value) {
+        text.append(value);
+        return this;
+    }
+
+    /**
+     * Appends a character
+     * @param value The character
+     * @return This output
+     */
+    public ConsoleOutput append(char value) {
+        text.append(value);
+        return this;
+    }
+
+    /**
+     * Appends a run of spaces
+     * @param count Number of spaces
+     * @return This output
+     */
+    public ConsoleOutput spaces(int count) {
+        return repeat(SPACES, count);
+    }
+
+    /**
+     * Appends a run of dashes
+     * @param count Number of dashes
+     * @return This output
+     */
+    public ConsoleOutput dashes(int count) {
+        return repeat(DASHES, count);
+    }
+
+    /**
+     * Ends the current line, writing the buffer out once it is full
+     */
+    public void newLine() {
+        text.append('\n');
+        if (text.length() >= FLUSH_CHARS) {
+            write();
+        }
+    }
+
+    /**
+     * Writes everything buffered and flushes System.out
+     */
+    public void flush() {
+        write();
+        System.out.flush();
+    }
+
+    private ConsoleOutput repeat(String run, int count) {
+        for (int left = count; left > 0; left -= run.length()) {
+            text.append(run, 0, Math.min(left, run.length()));
+        }
+        return this;
+    }
+
+    private void write() {
+        if (text.length() == 0) {
+            return;
+        }
+        PrintStream out = System.out;
+        CharBuffer chars = CharBuffer.wrap(text);
+        encoder.reset();
+        while (true) {
+            boolean done = !encoder.encode(chars, bytes, true).isOverflow();
+            if (done) {
+                encoder.flush(bytes);
+            }
+            out.write(bytes.array(), 0, bytes.position());
+            bytes.clear();
+            if (done) {
+                break;
+            }
+        }
+        text.setLength(0);
+    }
+}
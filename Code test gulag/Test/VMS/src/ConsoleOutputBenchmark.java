@@ -0,0 +1,91 @@
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+/**
+ * Compares listing the fleet with one println per row against the bulk-buffered table output
+ *
+ * The listings go to stdout and the timings to stderr, so run it with stdout redirected to a
+ * pipe or file, e.g. java ConsoleOutputBenchmark 1000000 | cat &gt; /dev/null
+ * Usage: java ConsoleOutputBenchmark [fleetSize]
+ */
+public class ConsoleOutputBenchmark {
+    public static void main(String[] args) {
+        int fleetSize = args.length > 0 ? Integer.parseInt(args[0]) : 1_000_000;
+        List<Vehicle> fleet = generateFleet(fleetSize, new Random(5));
+        String[] headers = ConsoleHelper.getVehicleTableHeaders(null);
+
+        // Render every row once so all three runs read cached rows
+        List<String[]> rows = new ArrayList<>(fleetSize);
+        for (Vehicle vehicle : fleet) {
+            rows.add(ConsoleHelper.vehicleToStringArray(vehicle));
+        }
+
+        long start = System.nanoTime();
+        printPerRow(headers, rows);
+        double perRow = (System.nanoTime() - start) / 1e6;
+
+        System.setProperty("vms.rawOutput", "false");
+        start = System.nanoTime();
+        ConsoleHelper.displayTable(headers, rows);
+        double padded = (System.nanoTime() - start) / 1e6;
+
+        System.setProperty("vms.rawOutput", "true");
+        start = System.nanoTime();
+        ConsoleHelper.displayTable(headers, rows);
+        double raw = (System.nanoTime() - start) / 1e6;
+
+        System.err.printf("%,d rows%n", fleetSize);
+        System.err.printf("%-24s %10.0f ms%n", "println per row", perRow);
+        System.err.printf("%-24s %10.0f ms%n", "buffered table", padded);
+        System.err.printf("%-24s %10.0f ms%n", "buffered raw", raw);
+    }
+
+    /**
+     * The previous table output: a padded row built and printed per println
+     */
+    private static void printPerRow(String[] headers, List<String[]> rows) {
+        int[] widths = new int[headers.length];
+        for (int i = 0; i < headers.length; i++) {
+            widths[i] = headers[i].length();
+        }
+        for (String[] row : rows) {
+            for (int i = 0; i < row.length && i < widths.length; i++) {
+                widths[i] = Math.max(widths[i], row[i] != null ? row[i].length() : 0);
+            }
+        }
+        for (String[] row : rows) {
+            StringBuilder line = new StringBuilder("|");
+            for (int i = 0; i < headers.length; i++) {
+                String value = i < row.length && row[i] != null ? row[i] : "";
+                line.append(" ").append(value).append(" ".repeat(widths[i] - value.length())).append(" |");
+            }
+            System.out.println(line);
+        }
+        System.out.flush();
+    }
+
+    private static List<Vehicle> generateFleet(int size, Random random) {
+        IdAllocator allocator = new IdAllocator(1);
+        List<Vehicle> fleet = new ArrayList<>(size);
+        for (int i = 0; i < size; i++) {
+            long id = allocator.next();
+            int year = 1990 + random.nextInt(35);
+            long priceCents = random.nextInt(10_000_000);
+            switch (random.nextInt(3)) {
+                case 0:
+                    fleet.add(new Car(id, "Toyota", "Corolla", year, "Red", priceCents, 4, "Automatic",
+                                      1 + random.nextInt(40) / 10.0));
+                    break;
+                case 1:
+                    fleet.add(new Truck(id, "Ford", "F-150", year, "Blue", priceCents,
+                                        random.nextInt(5000) / 10.0, "4WD", random.nextBoolean()));
+                    break;
+                default:
+                    fleet.add(new Motorcycle(id, "Honda", "CBR", year, "Black", priceCents, "Sport",
+                                             125 + random.nextInt(1700), random.nextBoolean()));
+            }
+        }
+        return fleet;
+    }
+}
@@ -0,0 +1,99 @@
+import java.util.AbstractCollection;
+import java.util.Collection;
+import java.util.Iterator;
+import java.util.function.Consumer;
+import java.util.function.LongFunction;
+
+/**
+ * A reader's pin on one version of the fleet
+ *
+ * The pinned version never changes, however many writes follow, and reading it takes no locks,
+ * so a snapshot can be read on any thread while the fleet is being modified. Close it when done
+ * so the version can be reclaimed once no other reader holds it.
+ * Fleets that are not versioned, such as lazily loaded or off-heap ones, are read through the
+ * store's own view instead, which materialises vehicles as they are iterated. Such a snapshot is
+ * not pinned and must be read before the fleet is changed again.
+ */
+public final class FleetSnapshot extends AbstractCollection<Vehicle> implements AutoCloseable {
+    private FleetVersion version;
+    
+    // Store view and lookup when the fleet is not versioned
+    private Collection<Vehicle> view;
+    private LongFunction<Vehicle> lookup;
+    private boolean closed;
+
+    /**
+     * Constructor
+     * @param version The version to pin
+     */
+    public FleetSnapshot(FleetVersion version) {
+        this.version = version;
+    }
+
+    /**
+     * Constructor for a fleet without versions
+     * @param view The store's view of the fleet
+     * @param lookup Looks up a vehicle by packed ID
+     */
+    public FleetSnapshot(Collection<Vehicle> view, LongFunction<Vehicle> lookup) {
+        this.view = view;
+        this.lookup = lookup;
+    }
+
+    /**
+     * @return Number of the pinned version, or -1 if the fleet is not versioned
+     */
+    public long getVersionNumber() {
+        checkOpen();
+        return version != null ? version.getNumber() : -1;
+    }
+
+    /**
+     * Looks up a vehicle as of the pinned version
+     * @param id The packed ID
+     * @return The vehicle, or null if it did not exist in that version
+     */
+    public Vehicle get(long id) {
+        checkOpen();
+        return version != null ? version.get(id) : lookup.apply(id);
+    }
+
+    @Override
+    public int size() {
+        checkOpen();
+        return version != null ? version.size() : view.size();
+    }
+
+    @Override
+    public Iterator<Vehicle> iterator() {
+        checkOpen();
+        return version != null ? version.iterator() : view.iterator();
+    }
+
+    @Override
+    public void forEach(Consumer<? super Vehicle> action) {
+        checkOpen();
+        if (version != null) {
+            version.forEach(action);
+        } else {
+            view.forEach(action);
+        }
+    }
+
+    /**
+     * Releases the pinned version
+     */
+    @Override
+    public void close() {
+        closed = true;
+        version = null;
+        view = null;
+        lookup = null;
+    }
+
+    private void checkOpen() {
+        if (closed) {
+            throw new IllegalStateException("Snapshot is closed");
+        }
+    }
+}
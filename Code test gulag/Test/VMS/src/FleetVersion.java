@@ -0,0 +1,389 @@
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.NoSuchElementException;
+import java.util.function.Consumer;
+
+/**
+ * Immutable version of the fleet with structural sharing
+ *
+ * Vehicles sit in slots of a 32-way trie in insertion order, and a hash array mapped trie maps
+ * each ID to its slot. A change copies only the nodes on the paths to the changed slot and ID,
+ * about ten small arrays for a fleet of a million, and shares everything else with the previous
+ * version. Deleted slots are left empty and compacted away once they outnumber live vehicles.
+ * Nothing is freed explicitly: nodes only an old version uses become garbage when no reader
+ * holds that version any more.
+ */
+public final class FleetVersion implements Iterable<Vehicle> {
+    private static final int BITS = 5;
+    private static final int WIDTH = 1 << BITS;
+    private static final int MASK = WIDTH - 1;
+
+    // Empty slots tolerated before compaction, beyond the live count
+    private static final int MIN_COMPACT = 1024;
+
+    // Last level of the ID trie uses the 4 bits the previous 12 levels leave over
+    private static final int LAST_LEVEL = 12;
+
+    private static final FleetVersion EMPTY = new FleetVersion(0, new Object[WIDTH], 0, 0, 0, null);
+
+    /**
+     * Position of one ID in the slot trie
+     */
+    private static final class Leaf {
+        final long id;
+        final int slot;
+
+        Leaf(long id, int slot) {
+            this.id = id;
+            this.slot = slot;
+        }
+    }
+
+    /**
+     * Branch of the ID trie; children are Leaf or IdNode, packed by bitmap
+     * A node still owned by the build that created it may be changed in place; published
+     * nodes have no owner and are never changed.
+     */
+    private static final class IdNode {
+        int bitmap;
+        Object[] children;
+        Object owner;
+
+        IdNode(int bitmap, Object[] children, Object owner) {
+            this.bitmap = bitmap;
+            this.children = children;
+            this.owner = owner;
+        }
+    }
+
+    private final long number;
+    private final Object[] root;
+    private final int shift;
+    private final int slotCount;
+    private final int size;
+    private final Object ids;
+
+    private FleetVersion(long number, Object[] root, int shift, int slotCount, int size, Object ids) {
+        this.number = number;
+        this.root = root;
+        this.shift = shift;
+        this.slotCount = slotCount;
+        this.size = size;
+        this.ids = ids;
+    }
+
+    /**
+     * @return The empty fleet
+     */
+    public static FleetVersion empty() {
+        return EMPTY;
+    }
+
+    /**
+     * Builds a version holding the given vehicles, in order
+     * The slot trie is built bottom-up in one pass; a repeated ID keeps its first position and
+     * its last vehicle.
+     * @param vehicles The vehicles
+     * @return The version
+     */
+    public static FleetVersion of(Iterable<? extends Vehicle> vehicles) {
+        return of(vehicles, 0);
+    }
+
+    private static FleetVersion of(Iterable<? extends Vehicle> vehicles, long number) {
+        List<Object[]> nodes = new ArrayList<>();
+        Object owner = new Object();
+        Object ids = null;
+        int count = 0;
+        for (Vehicle vehicle : vehicles) {
+            long id = vehicle.getIdValue();
+            int existing = find(ids, id);
+            if (existing >= 0) {
+                nodes.get(existing >>> BITS)[existing & MASK] = vehicle;
+                continue;
+            }
+            if ((count & MASK) == 0) {
+                nodes.add(new Object[WIDTH]);
+            }
+            nodes.get(count >>> BITS)[count & MASK] = vehicle;
+            ids = put(ids, 0, hash(id), new Leaf(id, count), owner);
+            count++;
+        }
+        if (nodes.isEmpty()) {
+            return number == 0 ? EMPTY : new FleetVersion(number, EMPTY.root, 0, 0, 0, null);
+        }
+
+        // Group each level into parents of 32 until a single root remains
+        int shift = 0;
+        while (nodes.size() > 1) {
+            List<Object[]> parents = new ArrayList<>((nodes.size() + MASK) >>> BITS);
+            for (int i = 0; i < nodes.size(); i++) {
+                if ((i & MASK) == 0) {
+                    parents.add(new Object[WIDTH]);
+                }
+                parents.get(i >>> BITS)[i & MASK] = nodes.get(i);
+            }
+            nodes = parents;
+            shift += BITS;
+        }
+        release(ids, owner);
+        return new FleetVersion(number, nodes.get(0), shift, count, count, ids);
+    }
+
+    /**
+     * @return Number of this version; each change adds one
+     */
+    public long getNumber() {
+        return number;
+    }
+
+    /**
+     * @return Number of vehicles
+     */
+    public int size() {
+        return size;
+    }
+
+    /**
+     * Looks up a vehicle by ID
+     * @param id The packed ID
+     * @return The vehicle, or null if this version does not contain it
+     */
+    public Vehicle get(long id) {
+        int slot = find(ids, id);
+        return slot >= 0 ? (Vehicle) leafFor(slot)[slot & MASK] : null;
+    }
+
+    /**
+     * Returns a version with a vehicle added, or replaced if its ID is present
+     * @param vehicle The vehicle, which must not be modified afterwards
+     * @return The new version
+     */
+    public FleetVersion with(Vehicle vehicle) {
+        long id = vehicle.getIdValue();
+        int slot = find(ids, id);
+        if (slot >= 0) {
+            return new FleetVersion(number + 1, setSlot(root, shift, slot, vehicle), shift, slotCount, size, ids);
+        }
+
+        Object[] grown = root;
+        int grownShift = shift;
+        if (slotCount == 1 << (shift + BITS)) {
+            grown = new Object[WIDTH];
+            grown[0] = root;
+            grownShift += BITS;
+        }
+        return new FleetVersion(number + 1, setSlot(grown, grownShift, slotCount, vehicle), grownShift,
+                                slotCount + 1, size + 1, put(ids, 0, hash(id), new Leaf(id, slotCount), null));
+    }
+
+    /**
+     * Returns a version without a vehicle
+     * @param id The packed ID
+     * @return The new version, or this one if the ID is absent
+     */
+    public FleetVersion without(long id) {
+        int slot = find(ids, id);
+        if (slot < 0) {
+            return this;
+        }
+        FleetVersion next = new FleetVersion(number + 1, setSlot(root, shift, slot, null), shift, slotCount, size - 1,
+                                             remove(ids, 0, hash(id), id));
+        if (next.slotCount - next.size > Math.max(MIN_COMPACT, next.size)) {
+            return of(next, next.number);
+        }
+        return next;
+    }
+
+    @Override
+    public void forEach(Consumer<? super Vehicle> action) {
+        for (int base = 0; base < slotCount; base += WIDTH) {
+            Object[] leaf = leafFor(base);
+            int end = Math.min(WIDTH, slotCount - base);
+            for (int i = 0; i < end; i++) {
+                if (leaf[i] != null) {
+                    action.accept((Vehicle) leaf[i]);
+                }
+            }
+        }
+    }
+
+    @Override
+    public Iterator<Vehicle> iterator() {
+        return new Iterator<Vehicle>() {
+            private int index;
+            private Object[] leaf;
+            private Vehicle next = advance();
+
+            private Vehicle advance() {
+                while (index < slotCount) {
+                    if ((index & MASK) == 0 || leaf == null) {
+                        leaf = leafFor(index);
+                    }
+                    Vehicle vehicle = (Vehicle) leaf[index & MASK];
+                    index++;
+                    if (vehicle != null) {
+                        return vehicle;
+                    }
+                }
+                return null;
+            }
+
+            @Override
+            public boolean hasNext() {
+                return next != null;
+            }
+
+            @Override
+            public Vehicle next() {
+                if (next == null) {
+                    throw new NoSuchElementException();
+                }
+                Vehicle vehicle = next;
+                next = advance();
+                return vehicle;
+            }
+        };
+    }
+
+    private Object[] leafFor(int slot) {
+        Object[] node = root;
+        for (int level = shift; level > 0; level -= BITS) {
+            node = (Object[]) node[(slot >>> level) & MASK];
+        }
+        return node;
+    }
+
+    private static Object[] setSlot(Object[] node, int shift, int slot, Object value) {
+        Object[] copy = node.clone();
+        if (shift == 0) {
+            copy[slot & MASK] = value;
+        } else {
+            int child = (slot >>> shift) & MASK;
+            Object[] below = copy[child] != null ? (Object[]) copy[child] : new Object[WIDTH];
+            copy[child] = setSlot(below, shift - BITS, slot, value);
+        }
+        return copy;
+    }
+
+    /**
+     * Spreads IDs over the trie; a bijection, so distinct IDs never share a full hash
+     */
+    private static long hash(long id) {
+        long h = (id ^ (id >>> 32)) * 0x9E3779B97F4A7C15L;
+        return h ^ (h >>> 29);
+    }
+
+    private static int index(long hash, int level) {
+        return level < LAST_LEVEL ? (int) (hash >>> (59 - BITS * level)) & MASK : (int) hash & 15;
+    }
+
+    private static int find(Object node, long id) {
+        long hash = hash(id);
+        for (int level = 0; node != null; level++) {
+            if (node instanceof Leaf) {
+                Leaf leaf = (Leaf) node;
+                return leaf.id == id ? leaf.slot : -1;
+            }
+            IdNode branch = (IdNode) node;
+            int bit = 1 << index(hash, level);
+            if ((branch.bitmap & bit) == 0) {
+                return -1;
+            }
+            node = branch.children[Integer.bitCount(branch.bitmap & (bit - 1))];
+        }
+        return -1;
+    }
+
+    private static Object put(Object node, int level, long hash, Leaf leaf, Object owner) {
+        if (node == null) {
+            return leaf;
+        }
+        if (node instanceof Leaf) {
+            Leaf existing = (Leaf) node;
+            if (existing.id == leaf.id) {
+                return leaf;
+            }
+            // Two IDs share the path so far; push both one level down
+            Object split = put(new IdNode(0, new Object[0], owner), level, hash(existing.id), existing, owner);
+            return put(split, level, hash, leaf, owner);
+        }
+
+        IdNode branch = (IdNode) node;
+        boolean owned = owner != null && branch.owner == owner;
+        int bit = 1 << index(hash, level);
+        int position = Integer.bitCount(branch.bitmap & (bit - 1));
+        if ((branch.bitmap & bit) == 0) {
+            Object[] children = new Object[branch.children.length + 1];
+            System.arraycopy(branch.children, 0, children, 0, position);
+            children[position] = leaf;
+            System.arraycopy(branch.children, position, children, position + 1, branch.children.length - position);
+            if (owned) {
+                branch.bitmap |= bit;
+                branch.children = children;
+                return branch;
+            }
+            return new IdNode(branch.bitmap | bit, children, owner);
+        }
+        Object child = put(branch.children[position], level + 1, hash, leaf, owner);
+        if (owned) {
+            branch.children[position] = child;
+            return branch;
+        }
+        Object[] children = branch.children.clone();
+        children[position] = child;
+        return new IdNode(branch.bitmap, children, owner);
+    }
+
+    /**
+     * Freezes the nodes a build created, before the version is published
+     */
+    private static void release(Object node, Object owner) {
+        if (node instanceof IdNode && ((IdNode) node).owner == owner) {
+            IdNode branch = (IdNode) node;
+            branch.owner = null;
+            for (Object child : branch.children) {
+                release(child, owner);
+            }
+        }
+    }
+
+    private static Object remove(Object node, int level, long hash, long id) {
+        if (node == null) {
+            return null;
+        }
+        if (node instanceof Leaf) {
+            return ((Leaf) node).id == id ? null : node;
+        }
+
+        IdNode branch = (IdNode) node;
+        int bit = 1 << index(hash, level);
+        if ((branch.bitmap & bit) == 0) {
+            return branch;
+        }
+        int position = Integer.bitCount(branch.bitmap & (bit - 1));
+        Object child = branch.children[position];
+        Object updated = remove(child, level + 1, hash, id);
+        if (updated == child) {
+            return branch;
+        }
+        if (updated == null) {
+            if (branch.children.length == 1) {
+                return null;
+            }
+            Object[] children = new Object[branch.children.length - 1];
+            System.arraycopy(branch.children, 0, children, 0, position);
+            System.arraycopy(branch.children, position + 1, children, position, children.length - position);
+            // A branch left with a single leaf collapses into it
+            return children.length == 1 && children[0] instanceof Leaf
+                    ? children[0] : new IdNode(branch.bitmap & ~bit, children, null);
+        }
+        if (branch.children.length == 1 && updated instanceof Leaf) {
+            return updated;
+        }
+        Object[] children = branch.children.clone();
+        children[position] = updated;
+        return new IdNode(branch.bitmap, children, null);
+    }
+}
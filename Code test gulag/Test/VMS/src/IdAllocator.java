@@ -0,0 +1,80 @@
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Lock-free allocator for 64-bit vehicle IDs
+ *
+ * Layout (most significant first): 1 unused sign bit, 41 bits of milliseconds since
+ * 2024-01-01 UTC, 10 bits of node number and 12 bits of sequence. Timestamp and sequence
+ * live in a single AtomicLong that only ever moves forward, so IDs from one allocator are
+ * unique and increasing even if the clock steps backwards or more than 4096 IDs are taken
+ * within one millisecond (the allocator then borrows from the next millisecond).
+ */
+public class IdAllocator {
+    private static final long EPOCH_MILLIS = 1704067200000L;
+    private static final int NODE_BITS = 10;
+    private static final int SEQUENCE_BITS = 12;
+    private static final long MAX_NODE = (1L << NODE_BITS) - 1;
+    private static final long SEQUENCE_MASK = (1L << SEQUENCE_BITS) - 1;
+
+    private static final IdAllocator DEFAULT = new IdAllocator(defaultNode());
+
+    private final long node;
+    // (millis since epoch << SEQUENCE_BITS) | sequence of the last ID handed out
+    private final AtomicLong state = new AtomicLong();
+
+    /**
+     * Constructor with an explicit node number
+     * @param node Node number in the range 0-1023, distinct per concurrently writing process
+     */
+    public IdAllocator(long node) {
+        if (node < 0 || node > MAX_NODE) {
+            throw new IllegalArgumentException("Node must be between 0 and " + MAX_NODE);
+        }
+        this.node = node;
+    }
+
+    /**
+     * Returns the process-wide allocator
+     * The node number comes from the vms.node system property, or is picked at random
+     * @return The shared allocator
+     */
+    public static IdAllocator getDefault() {
+        return DEFAULT;
+    }
+
+    private static long defaultNode() {
+        Long configured = Long.getLong("vms.node");
+        if (configured != null) {
+            return configured & MAX_NODE;
+        }
+        return ThreadLocalRandom.current().nextLong(MAX_NODE + 1);
+    }
+
+    /**
+     * Allocates the next ID
+     * @return A packed ID, unique for this allocator
+     */
+    public long next() {
+        while (true) {
+            long current = state.get();
+            long now = System.currentTimeMillis() - EPOCH_MILLIS;
+            long candidate = (current >>> SEQUENCE_BITS) < now ? now << SEQUENCE_BITS : current + 1;
+
+            if (state.compareAndSet(current, candidate)) {
+                long millis = candidate >>> SEQUENCE_BITS;
+                return (millis << (NODE_BITS + SEQUENCE_BITS))
+                        | (node << SEQUENCE_BITS)
+                        | (candidate & SEQUENCE_MASK);
+            }
+        }
+    }
+
+    /**
+     * Allocates the next ID as text
+     * @return The ID formatted by VehicleId
+     */
+    public String nextId() {
+        return VehicleId.format(next());
+    }
+}
@@ -0,0 +1,77 @@
+import java.util.Arrays;
+import java.util.UUID;
+import java.util.concurrent.CountDownLatch;
+import java.util.function.LongSupplier;
+
+/**
+ * Compares IdAllocator with the previous UUID-based ID generation under concurrent inserts
+ * Usage: java IdAllocatorBenchmark [threads] [idsPerThread]
+ */
+public class IdAllocatorBenchmark {
+
+    public static void main(String[] args) throws InterruptedException {
+        int threads = args.length > 0 ? Integer.parseInt(args[0]) : Runtime.getRuntime().availableProcessors();
+        int idsPerThread = args.length > 1 ? Integer.parseInt(args[1]) : 500_000;
+
+        IdAllocator allocator = new IdAllocator(1);
+        LongSupplier uuid = () -> Long.parseLong(UUID.randomUUID().toString().substring(0, 8), 16);
+
+        System.out.println("Threads: " + threads + ", IDs per thread: " + idsPerThread);
+
+        // Warm up both paths before measuring
+        run("warm-up", uuid, threads, idsPerThread / 10, false);
+        run("warm-up", allocator::next, threads, idsPerThread / 10, false);
+
+        run("UUID (8 hex chars)", uuid, threads, idsPerThread, true);
+        run("IdAllocator", allocator::next, threads, idsPerThread, true);
+    }
+
+    private static void run(String name, LongSupplier generator, int threads, int idsPerThread, boolean report)
+            throws InterruptedException {
+        long[][] ids = new long[threads][idsPerThread];
+        CountDownLatch start = new CountDownLatch(1);
+        CountDownLatch done = new CountDownLatch(threads);
+
+        for (int t = 0; t < threads; t++) {
+            long[] out = ids[t];
+            Thread worker = new Thread(() -> {
+                try {
+                    start.await();
+                    for (int i = 0; i < out.length; i++) {
+                        out[i] = generator.getAsLong();
+                    }
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                } finally {
+                    done.countDown();
+                }
+            });
+            worker.start();
+        }
+
+        long begin = System.nanoTime();
+        start.countDown();
+        done.await();
+        long elapsed = System.nanoTime() - begin;
+
+        if (!report) {
+            return;
+        }
+
+        // Count duplicates across all threads
+        long[] all = new long[threads * idsPerThread];
+        for (int t = 0; t < threads; t++) {
+            System.arraycopy(ids[t], 0, all, t * idsPerThread, idsPerThread);
+        }
+        Arrays.sort(all);
+        int collisions = 0;
+        for (int i = 1; i < all.length; i++) {
+            if (all[i] == all[i - 1]) {
+                collisions++;
+            }
+        }
+
+        System.out.printf("%-20s %8.1f ns/id  %10.0f ids/s  %d collisions%n",
+                name, (double) elapsed / all.length, all.length / (elapsed / 1e9), collisions);
+    }
+}
@@ -1,12 +1,55 @@
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.BufferedWriter;
 import java.io.File;
-import java.io.FileReader;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
 import java.io.FileWriter;
 import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.Reader;
+import java.io.Writer;
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.ClosedWatchServiceException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.nio.file.StandardWatchEventKinds;
+import java.nio.file.WatchEvent;
+import java.nio.file.WatchKey;
+import java.nio.file.WatchService;
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
 import java.util.HashMap;
+import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
-import java.util.UUID;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.function.BooleanSupplier;
+import java.util.function.Consumer;
+import java.util.function.Predicate;
+import java.util.function.Supplier;
+import java.util.function.UnaryOperator;
+import java.util.stream.Collectors;
+import java.util.stream.IntStream;
+import java.util.zip.Deflater;
+import java.util.zip.DeflaterOutputStream;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.GZIPOutputStream;
+import java.util.zip.InflaterInputStream;
 
 /**
  * JSONHandler class - Handles loading and saving vehicle data to a JSON file
@@ -14,10 +57,94 @@ import java.util.UUID;
  * 
  * This version doesn't depend on external JSON libraries to avoid classpath issues
  */
-public class JSONHandler {
+public class JSONHandler implements VehicleStore {
+    /**
+     * Compression applied when writing data files
+     * Reading always detects the format from the file's magic bytes
+     */
+    public enum Compression {
+        NONE, GZIP, DEFLATE;
+        
+        /**
+         * Parses a compression name, case-insensitively
+         * @param name "none", "gzip" or "deflate"
+         * @return The compression, NONE for unknown names
+         */
+        public static Compression fromName(String name) {
+            for (Compression compression : values()) {
+                if (compression.name().equalsIgnoreCase(name)) {
+                    return compression;
+                }
+            }
+            return NONE;
+        }
+    }
+    
+    /**
+     * Layout of records inside a data file
+     * JSON_ARRAY is a single top-level array; NDJSON holds one object per line, which allows
+     * appends and parallel parsing. Reading detects the layout from the first character.
+     */
+    public enum Format {
+        JSON_ARRAY, NDJSON;
+        
+        /**
+         * Parses a format name, case-insensitively
+         * @param name "json" or "ndjson"
+         * @return The format, JSON_ARRAY for unknown names
+         */
+        public static Format fromName(String name) {
+            return "ndjson".equalsIgnoreCase(name) ? NDJSON : JSON_ARRAY;
+        }
+    }
+    
     // Fixed path to better handle file location
     private final String dataFilePath;
     
+    private Format format = Format.JSON_ARRAY;
+    
+    private Compression compression = Compression.NONE;
+    private int compressionLevel = Deflater.DEFAULT_COMPRESSION;
+    
+    // Sharded layout, or null when the fleet lives in the single data file
+    private ShardLayout shardLayout;
+    private ExecutorService shardExecutor;
+    
+    // Why writes are refused, or null; set when a shard could not be loaded, so its vehicles are not dropped
+    private volatile String readOnlyReason;
+    
+    // Fleet as last loaded or saved through the VehicleStore methods, in file order, and indexed by packed ID
+    private final List<Vehicle> storedVehicles = new ArrayList<>();
+    private final LongVehicleMap storedIndex = new LongVehicleMap();
+    private boolean storedLoaded;
+    
+    // Batches larger than this rewrite the journal epoch instead of journaling every record
+    private static final int MAX_JOURNALED_BATCH = 1024;
+    
+    // Coordination with other processes using the same file, or null when this process owns it
+    private SharedDataFile shared;
+    
+    // Vehicles changed by other processes since the last poll (null value = deleted)
+    private final Map<Long, Vehicle> pendingExternal = new LinkedHashMap<>();
+    
+    // Set when another process rewrote the file before this one caught up
+    private boolean pendingReload;
+    
+    // Bumped whenever storedVehicles changes, so a background diff can tell it went stale
+    private long storedVersion;
+    
+    // Quiet period after the last file event before a watched file is reloaded
+    private static final long RELOAD_DELAY_MILLIS = 250;
+    
+    // Watches the data file for replacement by other programs, or null when not watching
+    private WatchService watchService;
+    
+    // Modification time and size of the data file as last written or reloaded by this process
+    private volatile long knownStamp;
+    
+    // Uncompressed bytes appended to the data file since it was last rewritten in full
+    private volatile long appendedBytes;
+    
     /**
      * Default constructor - always tries to use the src folder for the data file
      */
@@ -40,8 +167,8 @@ public class JSONHandler {
             }
         }
         
-        // Check if the file exists, if not create it
-        if (!dataFile.exists()) {
+        // Check if the file exists, if not create it (unless the fleet lives in shards)
+        if (!dataFile.exists() && !hasShardManifest(dataFile)) {
             try {
                 if (createEmptyJsonFile(dataFile)) {
                     System.out.println("Created new data file at: " + dataFile.getAbsolutePath());
@@ -64,6 +191,26 @@ public class JSONHandler {
         
         this.dataFilePath = dataFile.getAbsolutePath();
         System.out.println("Using data file path: " + this.dataFilePath);
+        
+        // Opt into line-delimited files with -Dvms.format=ndjson
+        this.format = Format.fromName(System.getProperty("vms.format", "json"));
+        
+        // Opt into compressed writes with -Dvms.compression=gzip|deflate and -Dvms.compressionLevel=1..9
+        setCompression(Compression.fromName(System.getProperty("vms.compression", "none")),
+                       Integer.getInteger("vms.compressionLevel", Deflater.DEFAULT_COMPRESSION));
+        
+        // Opt into the sharded layout with -Dvms.shards=N (and optionally -Dvms.shardBy=type)
+        int shards = Integer.getInteger("vms.shards", 0);
+        String shardBy = System.getProperty("vms.shardBy", "hash");
+        if (shards > 0 || "type".equalsIgnoreCase(shardBy)) {
+            enableSharding(ShardLayout.Partition.fromName(shardBy), shards);
+        }
+        detectSharding();
+        
+        // Opt into multi-process access with -Dvms.shared=true
+        if (Boolean.getBoolean("vms.shared")) {
+            enableSharedAccess();
+        }
     }
     
     /**
@@ -76,7 +223,7 @@ public class JSONHandler {
         }
         
         File file = new File(filePath);
-        if (!file.exists()) {
+        if (!file.exists() && !hasShardManifest(file)) {
             try {
                 createEmptyJsonFile(file);
                 System.out.println("Created new data file at specified path: " + file.getAbsolutePath());
@@ -88,6 +235,11 @@ public class JSONHandler {
         
         this.dataFilePath = file.getAbsolutePath();
         System.out.println("Using custom data file: " + this.dataFilePath);
+        detectSharding();
+        
+        if (Boolean.getBoolean("vms.shared")) {
+            enableSharedAccess();
+        }
     }
     
     /**
@@ -130,71 +282,465 @@ public class JSONHandler {
      * @return true if successful, false otherwise
      */
     public boolean saveVehicles(List<Vehicle> vehicles) {
-        StringBuilder jsonBuilder = new StringBuilder();
-        jsonBuilder.append("[");
+        if (shardLayout != null) {
+            return saveAllShards(vehicles);
+        }
+        
+        try {
+            writeVehicleFile(new File(dataFilePath), vehicles);
+            return true;
+        } catch (IOException e) {
+            System.err.println("Error writing to file " + dataFilePath + ": " + e.getMessage());
+            e.printStackTrace();
+            return false;
+        } catch (Exception e) {
+            System.err.println("Error saving vehicles: " + e.getMessage());
+            e.printStackTrace();
+            return false;
+        }
+    }
+    
+    /**
+     * Persists a change to a single vehicle
+     * In the sharded layout only the shard holding the vehicle is rewritten
+     * @param vehicles The full list of vehicles after the change
+     * @param changed The vehicle that was added, updated or deleted
+     * @return true if successful, false otherwise
+     */
+    public boolean saveVehicle(List<Vehicle> vehicles, Vehicle changed) {
+        if (shardLayout == null) {
+            return saveVehicles(vehicles);
+        }
+        
+        int shard = shardLayout.shardOf(changed);
+        List<Vehicle> shardVehicles = new ArrayList<>();
+        for (Vehicle vehicle : vehicles) {
+            if (shardLayout.shardOf(vehicle) == shard) {
+                shardVehicles.add(vehicle);
+            }
+        }
         
         try {
+            writeVehicleFile(shardLayout.getShardFile(shard), shardVehicles);
+            return true;
+        } catch (IOException e) {
+            System.err.println("Error writing shard " + shardLayout.getShardFile(shard) + ": " + e.getMessage());
+            return false;
+        }
+    }
+    
+    /**
+     * Persists a newly added vehicle
+     * With the NDJSON format the record is appended to its file (a new gzip member for gzip
+     * files) instead of rewriting it; otherwise this falls back to saveVehicle
+     * @param vehicles The full list of vehicles after the addition
+     * @param added The vehicle that was added
+     * @return true if successful, false otherwise
+     */
+    public boolean appendVehicle(List<Vehicle> vehicles, Vehicle added) {
+        if (format == Format.NDJSON && readOnlyReason == null) {
+            File target = shardLayout != null
+                    ? shardLayout.getShardFile(shardLayout.shardOf(added))
+                    : new File(dataFilePath);
+            try {
+                if (canAppend(target)) {
+                    StringBuilder line = new StringBuilder(256);
+                    appendVehicleJson(line, added);
+                    line.append('\n');
+                    
+                    OutputStream out = new FileOutputStream(target, true);
+                    if (compression == Compression.GZIP) {
+                        out = new GZIPOutputStream(out);
+                    }
+                    try (Writer writer = new OutputStreamWriter(out, StandardCharsets.UTF_8)) {
+                        writer.append(line);
+                    }
+                    if (target.getPath().equals(dataFilePath)) {
+                        knownStamp = fileStamp(target);
+                        appendedBytes += line.length();
+                    }
+                    return true;
+                }
+            } catch (IOException e) {
+                System.err.println("Error appending to " + target + ", rewriting instead: " + e.getMessage());
+            }
+        }
+        return saveVehicle(vehicles, added);
+    }
+    
+    /**
+     * Checks whether a record can be appended to a file in place
+     * The file must already be NDJSON, compressed the same way as new writes, and not deflate
+     * (a zlib stream cannot be extended, whereas gzip allows concatenated members)
+     */
+    private boolean canAppend(File file) throws IOException {
+        if (!file.exists() || file.length() == 0 || compression == Compression.DEFLATE) {
+            return false;
+        }
+        return detectCompression(file) == compression && detectFormat(file) == Format.NDJSON;
+    }
+    
+    /**
+     * Detects whether a data file holds a JSON array or NDJSON
+     * @param file The file to check (compressed or not)
+     * @return NDJSON if the first non-blank character opens an object, JSON_ARRAY otherwise
+     * @throws IOException If the file cannot be read
+     */
+    public static Format detectFormat(File file) throws IOException {
+        try (InputStream in = openDataInput(file)) {
+            int b;
+            while ((b = in.read()) != -1) {
+                if (!Character.isWhitespace(b)) {
+                    return b == '{' ? Format.NDJSON : Format.JSON_ARRAY;
+                }
+            }
+        }
+        return Format.JSON_ARRAY;
+    }
+    
+    /**
+     * Sets the layout used for subsequent writes
+     * @param format The record layout
+     */
+    public void setFormat(Format format) {
+        this.format = format;
+    }
+    
+    /**
+     * @return The layout used for writes
+     */
+    public Format getFormat() {
+        return format;
+    }
+    
+    /**
+     * Rewrites the stored fleet in another layout, e.g. to convert a JSON array file to NDJSON
+     * @param target The layout to convert to
+     * @return true if successful, false otherwise
+     */
+    public boolean convertDataFile(Format target) {
+        List<Vehicle> vehicles = loadVehicles();
+        setFormat(target);
+        return saveVehicles(vehicles);
+    }
+    
+    /**
+     * Writes a point-in-time copy of a fleet in the configured format and compression
+     * loadVehicles falls back to it when the data file cannot be read.
+     * @param vehicles The vehicles, which must not change while they are written
+     * @param wrap Wraps the raw file stream, e.g. to throttle it
+     * @throws IOException If writing fails
+     */
+    public void writeSnapshot(Iterable<? extends Vehicle> vehicles, UnaryOperator<OutputStream> wrap)
+            throws IOException {
+        writeVehicleFile(getSnapshotFile(), vehicles, wrap);
+    }
+    
+    /**
+     * @return The file holding the last snapshot of the fleet, next to the data file
+     */
+    public File getSnapshotFile() {
+        return new File(dataFilePath + ".snapshot");
+    }
+    
+    /**
+     * @return Bytes appended to the data file since it was last rewritten in full
+     */
+    public long getAppendedBytes() {
+        return appendedBytes;
+    }
+    
+    /**
+     * Rewrites the data file in full to fold in the records appended to it
+     * The stored fleet is copied under the lock, written to a side file without it, and swapped in
+     * only if nothing was stored meanwhile, so writers are held up for the copy and the rename
+     * but never for the write itself.
+     * @param wrap Wraps the raw file stream, e.g. to throttle it
+     * @return true if the data file was replaced, false if it changed meanwhile or is sharded
+     * @throws IOException If writing fails
+     */
+    public boolean compactDataFile(UnaryOperator<OutputStream> wrap) throws IOException {
+        if (shardLayout != null) {
+            return false;
+        }
+        List<Vehicle> vehicles;
+        long version;
+        synchronized (this) {
+            ensureStoredLoaded();
+            vehicles = new ArrayList<>(storedVehicles);
+            version = storedVersion;
+        }
+        
+        File dataFile = new File(dataFilePath);
+        File compacted = new File(dataFilePath + ".compact");
+        writeVehicleFile(compacted, vehicles, wrap);
+        
+        synchronized (this) {
+            SharedDataFile.LockedWork<Boolean> swap = () -> {
+                if (shared != null) {
+                    sync();
+                }
+                if (version != storedVersion || !storedLoaded) {
+                    return false;
+                }
+                replaceFile(compacted, dataFile);
+                knownStamp = fileStamp(dataFile);
+                appendedBytes = 0;
+                return true;
+            };
+            boolean swapped = shared != null ? shared.locked(true, swap) : swap.run();
+            if (!swapped) {
+                Files.deleteIfExists(compacted.toPath());
+            }
+            return swapped;
+        }
+    }
+    
+    /**
+     * @return Bytes in the shared change journal, or 0 when access is not shared
+     */
+    public long getJournalBytes() {
+        SharedDataFile current = shared;
+        return current != null ? current.getJournalLength() : 0;
+    }
+    
+    /**
+     * Empties the shared change journal once this process has merged it
+     * Processes that have read the whole journal carry on without reloading.
+     * @return Bytes of journal dropped
+     * @throws IOException If the journal cannot be reset
+     */
+    public synchronized long compactJournal() throws IOException {
+        if (shared == null) {
+            return 0;
+        }
+        return shared.locked(true, () -> {
+            sync();
+            return shared.compactJournal();
+        });
+    }
+    
+    /**
+     * Streams a list of vehicles to a file as a JSON array, compressed if configured
+     * The file is written through a temporary file and a rename, so readers never see a partial write
+     * @param file The file to write
+     * @param vehicles List of vehicles to write
+     * @throws IOException If writing fails
+     */
+    private void writeVehicleFile(File file, List<Vehicle> vehicles) throws IOException {
+        writeVehicleFile(file, vehicles, UnaryOperator.identity());
+    }
+    
+    /**
+     * Streams vehicles to a file as writeVehicleFile does, passing the file stream through a wrapper
+     * @param file The file to write
+     * @param vehicles The vehicles to write
+     * @param wrap Wraps the raw file stream, e.g. to throttle it
+     * @throws IOException If writing fails
+     */
+    private void writeVehicleFile(File file, Iterable<? extends Vehicle> vehicles, UnaryOperator<OutputStream> wrap)
+            throws IOException {
+        if (readOnlyReason != null) {
+            throw new IOException("the fleet is read-only because " + readOnlyReason);
+        }
+        File temp = new File(file.getPath() + ".tmp");
+        
+        try (Writer writer = new BufferedWriter(new OutputStreamWriter(
+                openCompressedOutput(wrap.apply(new FileOutputStream(temp))), StandardCharsets.UTF_8), 1 << 16)) {
+            StringBuilder jsonBuilder = new StringBuilder(256);
+            boolean ndjson = format == Format.NDJSON;
+            if (!ndjson) {
+                writer.write("[");
+            }
+            
             boolean first = true;
-            // Convert each vehicle to a JSON object
+            // Convert each vehicle to a JSON object, reusing one builder per record
             for (Vehicle vehicle : vehicles) {
-                if (!first) {
+                jsonBuilder.setLength(0);
+                if (!first && !ndjson) {
                     jsonBuilder.append(",");
                 }
                 first = false;
-                
-                jsonBuilder.append("{");
-                
-                // Common vehicle properties
-                appendJsonProperty(jsonBuilder, "id", vehicle.getId(), true);
-                appendJsonProperty(jsonBuilder, "make", vehicle.getMake(), false);
-                appendJsonProperty(jsonBuilder, "model", vehicle.getModel(), false);
-                appendJsonProperty(jsonBuilder, "year", vehicle.getYear(), false);
-                appendJsonProperty(jsonBuilder, "color", vehicle.getColor(), false);
-                appendJsonProperty(jsonBuilder, "price", vehicle.getPrice(), false);
-                
-                // Determine vehicle type and add specific properties
-                if (vehicle instanceof Car) {
-                    Car car = (Car) vehicle;
-                    appendJsonProperty(jsonBuilder, "type", "Car", false);
-                    appendJsonProperty(jsonBuilder, "numDoors", car.getNumDoors(), false);
-                    appendJsonProperty(jsonBuilder, "transmissionType", car.getTransmissionType(), false);
-                    appendJsonProperty(jsonBuilder, "engineSize", car.getEngineSize(), false);
-                } else if (vehicle instanceof Truck) {
-                    Truck truck = (Truck) vehicle;
-                    appendJsonProperty(jsonBuilder, "type", "Truck", false);
-                    appendJsonProperty(jsonBuilder, "cargoCapacity", truck.getCargoCapacity(), false);
-                    appendJsonProperty(jsonBuilder, "driveType", truck.getDriveType(), false);
-                    appendJsonProperty(jsonBuilder, "hasTowPackage", truck.getHasTowPackage(), false);
-                } else if (vehicle instanceof Motorcycle) {
-                    Motorcycle motorcycle = (Motorcycle) vehicle;
-                    appendJsonProperty(jsonBuilder, "type", "Motorcycle", false);
-                    appendJsonProperty(jsonBuilder, "bikeType", motorcycle.getBikeType(), false);
-                    appendJsonProperty(jsonBuilder, "engineCC", motorcycle.getEngineCC(), false);
-                    appendJsonProperty(jsonBuilder, "hasFairing", motorcycle.getHasFairing(), false);
+                appendVehicleJson(jsonBuilder, vehicle);
+                if (ndjson) {
+                    jsonBuilder.append('\n');
                 }
-                
-                // Close the JSON object
-                jsonBuilder.append("}");
+                writer.append(jsonBuilder);
             }
             
             // Close the JSON array
-            jsonBuilder.append("]");
-            
-            // Write JSON string to file
-            try (FileWriter file = new FileWriter(dataFilePath)) {
-                file.write(jsonBuilder.toString());
-                file.flush();
-                return true;
-            } catch (IOException e) {
-                System.err.println("Error writing to file " + dataFilePath + ": " + e.getMessage());
-                e.printStackTrace();
-                return false;
+            if (!ndjson) {
+                writer.write("]");
             }
-            
-        } catch (Exception e) {
-            System.err.println("Error saving vehicles: " + e.getMessage());
-            e.printStackTrace();
-            return false;
+        }
+        
+        replaceFile(temp, file);
+        if (file.getPath().equals(dataFilePath)) {
+            knownStamp = fileStamp(file);
+            appendedBytes = 0;
+        }
+    }
+    
+    /**
+     * Wraps a file stream in the configured compressor
+     * @param out The raw file stream
+     * @return The stream to write uncompressed bytes to
+     * @throws IOException If the compressor cannot be created
+     */
+    private OutputStream openCompressedOutput(OutputStream out) throws IOException {
+        OutputStream buffered = new BufferedOutputStream(out, 1 << 16);
+        final int level = compressionLevel;
+        switch (compression) {
+            case GZIP:
+                return new GZIPOutputStream(buffered, 1 << 16) {
+                    {
+                        def.setLevel(level);
+                    }
+                };
+            case DEFLATE:
+                Deflater deflater = new Deflater(level);
+                return new DeflaterOutputStream(buffered, deflater, 1 << 16) {
+                    @Override
+                    public void close() throws IOException {
+                        try {
+                            super.close();
+                        } finally {
+                            deflater.end();
+                        }
+                    }
+                };
+            default:
+                return buffered;
+        }
+    }
+    
+    /**
+     * Opens a data file for reading, decompressing it if it starts with gzip or zlib magic bytes
+     * @param file The file to read
+     * @return Stream of uncompressed bytes
+     * @throws IOException If the file cannot be opened
+     */
+    public static InputStream openDataInput(File file) throws IOException {
+        BufferedInputStream in = new BufferedInputStream(new FileInputStream(file), 1 << 16);
+        try {
+            switch (detectCompression(in)) {
+                case GZIP:
+                    return new GZIPInputStream(in, 1 << 16);
+                case DEFLATE:
+                    return new InflaterInputStream(in);
+                default:
+                    return in;
+            }
+        } catch (IOException e) {
+            in.close();
+            throw e;
+        }
+    }
+    
+    /**
+     * Detects the compression of a data file from its magic bytes
+     * @param file The file to check
+     * @return The detected compression, NONE for plain JSON
+     * @throws IOException If the file cannot be read
+     */
+    public static Compression detectCompression(File file) throws IOException {
+        try (BufferedInputStream in = new BufferedInputStream(new FileInputStream(file), 2)) {
+            return detectCompression(in);
+        }
+    }
+    
+    private static Compression detectCompression(BufferedInputStream in) throws IOException {
+        in.mark(2);
+        int first = in.read();
+        int second = in.read();
+        in.reset();
+        
+        if (first == 0x1f && second == 0x8b) {
+            return Compression.GZIP;
+        }
+        // zlib header: deflate method, and the two bytes form a multiple of 31
+        if (first >= 0 && second >= 0 && (first & 0x0f) == 8 && ((first << 8) | second) % 31 == 0) {
+            return Compression.DEFLATE;
+        }
+        return Compression.NONE;
+    }
+    
+    /**
+     * Sets the compression used for subsequent writes
+     * @param compression The compression format
+     * @param level Compression level from 1 (fastest) to 9 (smallest), or -1 for the default
+     */
+    public void setCompression(Compression compression, int level) {
+        if (level != Deflater.DEFAULT_COMPRESSION && (level < Deflater.BEST_SPEED || level > Deflater.BEST_COMPRESSION)) {
+            throw new IllegalArgumentException("Compression level must be between 1 and 9");
+        }
+        this.compression = compression;
+        this.compressionLevel = level;
+    }
+    
+    /**
+     * @return The compression used for writes
+     */
+    public Compression getCompression() {
+        return compression;
+    }
+    
+    /**
+     * Appends a single vehicle as a JSON object
+     * @param jsonBuilder The StringBuilder to append to
+     * @param vehicle The vehicle to convert
+     */
+    private void appendVehicleJson(StringBuilder jsonBuilder, Vehicle vehicle) {
+        jsonBuilder.append("{");
+        
+        // Common vehicle properties
+        appendJsonProperty(jsonBuilder, "id", vehicle.getId(), true);
+        appendJsonProperty(jsonBuilder, "make", vehicle.getMake(), false);
+        appendJsonProperty(jsonBuilder, "model", vehicle.getModel(), false);
+        appendJsonProperty(jsonBuilder, "year", vehicle.getYear(), false);
+        appendJsonProperty(jsonBuilder, "color", vehicle.getColor(), false);
+        jsonBuilder.append(",\"price\":");
+        Money.appendDecimal(jsonBuilder, vehicle.getPriceCents());
+        
+        // The vehicle's codec writes the type-specific properties
+        VehicleCodec<?> codec = VehicleCodecs.of(vehicle);
+        if (codec != null) {
+            appendJsonProperty(jsonBuilder, "type", codec.getTypeName(), false);
+            codec.write(vehicle, new JsonFieldWriter(jsonBuilder));
+        }
+        
+        // Close the JSON object
+        jsonBuilder.append("}");
+    }
+    
+    /**
+     * Appends the type-specific properties written by a codec to a JSON object
+     */
+    private final class JsonFieldWriter implements VehicleCodec.FieldWriter {
+        private final StringBuilder builder;
+        
+        JsonFieldWriter(StringBuilder builder) {
+            this.builder = builder;
+        }
+        
+        @Override
+        public void writeInt(String name, int value) {
+            builder.append(",\"").append(name).append("\":").append(value);
+        }
+        
+        @Override
+        public void writeDouble(String name, double value) {
+            builder.append(",\"").append(name).append("\":").append(value);
+        }
+        
+        @Override
+        public void writeString(String name, String value) {
+            appendJsonProperty(builder, name, value, false);
+        }
+        
+        @Override
+        public void writeBoolean(String name, boolean value) {
+            builder.append(",\"").append(name).append("\":").append(value);
         }
     }
     
@@ -257,8 +803,57 @@ public class JSONHandler {
      * @return List of vehicles loaded from file
      */
     public List<Vehicle> loadVehicles() {
-        List<Vehicle> vehicles = new ArrayList<>();
+        if (shardLayout != null) {
+            return loadAllShards();
+        }
         File dataFile = new File(dataFilePath);
+        File snapshot = getSnapshotFile();
+        if (!snapshot.exists() || !dataFile.exists() || dataFile.length() == 0) {
+            return loadVehicleFile(dataFile);
+        }
+        
+        try {
+            return readVehicleFile(dataFile);
+        } catch (IOException e) {
+            System.err.println("Error reading data file: " + e.getMessage());
+        }
+        return recoverFromSnapshot(dataFile, snapshot);
+    }
+    
+    /**
+     * Restores the data file from the last snapshot after it could not be read
+     * The unreadable file is kept next to it with a .corrupt suffix. With shared access the file
+     * is left for the next full write to replace.
+     * @param dataFile The unreadable data file
+     * @param snapshot The snapshot file
+     * @return The vehicles in the snapshot
+     */
+    private List<Vehicle> recoverFromSnapshot(File dataFile, File snapshot) {
+        System.err.println("Recovering from snapshot " + snapshot.getPath() + "; changes saved after it are lost");
+        List<Vehicle> vehicles = loadVehicleFile(snapshot);
+        if (shared != null) {
+            // Other processes may be reading the file; the next full write replaces it
+            return vehicles;
+        }
+        File corrupt = new File(dataFile.getPath() + ".corrupt");
+        try {
+            Files.move(dataFile.toPath(), corrupt.toPath(), StandardCopyOption.REPLACE_EXISTING);
+            writeVehicleFile(dataFile, vehicles);
+            System.err.println("Unreadable data file kept as " + corrupt.getPath());
+        } catch (IOException e) {
+            System.err.println("Error restoring data file from snapshot: " + e.getMessage());
+        }
+        return vehicles;
+    }
+    
+    /**
+     * Loads vehicles from a single JSON array file
+     * @param dataFile The file to read
+     * @return List of vehicles loaded from the file
+     */
+    private List<Vehicle> loadVehicleFile(File dataFile) {
+        List<Vehicle> vehicles = new ArrayList<>();
+        String dataFilePath = dataFile.getPath();
         
         // Create empty file if it doesn't exist
         if (!dataFile.exists()) {
@@ -293,91 +888,7 @@ public class JSONHandler {
         }
         
         try {
-            // Read the file content
-            StringBuilder contentBuilder = new StringBuilder();
-            try (FileReader reader = new FileReader(dataFilePath)) {
-                char[] buffer = new char[1024];
-                int charsRead;
-                while ((charsRead = reader.read(buffer)) != -1) {
-                    contentBuilder.append(buffer, 0, charsRead);
-                }
-            }
-            
-            String jsonContent = contentBuilder.toString().trim();
-            System.out.println("Reading vehicles from: " + dataFilePath);
-            
-            // Basic validation - must be a JSON array
-            if (!jsonContent.startsWith("[") || !jsonContent.endsWith("]")) {
-                System.err.println("Error: Data file does not contain a valid JSON array");
-                return vehicles;
-            }
-            
-            // Empty array case
-            if (jsonContent.equals("[]")) {
-                return vehicles;
-            }
-            
-            // Parse the JSON array content
-            List<Map<String, Object>> vehicleList = parseJsonArray(jsonContent);
-            System.out.println("Found " + vehicleList.size() + " vehicles in data file");
-            
-            // Process each vehicle
-            for (Map<String, Object> jsonVehicle : vehicleList) {
-                try {
-                    String type = (String) jsonVehicle.get("type");
-                    
-                    if (type == null) {
-                        System.err.println("Warning: Vehicle missing type information, skipping");
-                        continue;
-                    }
-                    
-                    // Extract common properties with null checks
-                    String id = jsonVehicle.get("id") != null ? (String) jsonVehicle.get("id") : generateUniqueId();
-                    String make = jsonVehicle.get("make") != null ? (String) jsonVehicle.get("make") : "";
-                    String model = jsonVehicle.get("model") != null ? (String) jsonVehicle.get("model") : "";
-                    
-                    // Safe conversion to Java primitives
-                    int year = safeParseInt(jsonVehicle.get("year"), 0);
-                    String color = jsonVehicle.get("color") != null ? (String) jsonVehicle.get("color") : "";
-                    double price = safeParseDouble(jsonVehicle.get("price"), 0.0);
-                    
-                    // Create appropriate vehicle type based on "type" field
-                    if ("Car".equals(type)) {
-                        int numDoors = safeParseInt(jsonVehicle.get("numDoors"), 0);
-                        String transmissionType = jsonVehicle.get("transmissionType") != null ? 
-                                                (String) jsonVehicle.get("transmissionType") : "";
-                        double engineSize = safeParseDouble(jsonVehicle.get("engineSize"), 0.0);
-                        
-                        vehicles.add(new Car(id, make, model, year, color, price, 
-                                            numDoors, transmissionType, engineSize));
-                        
-                    } else if ("Truck".equals(type)) {
-                        double cargoCapacity = safeParseDouble(jsonVehicle.get("cargoCapacity"), 0.0);
-                        String driveType = jsonVehicle.get("driveType") != null ? 
-                                         (String) jsonVehicle.get("driveType") : "";
-                        boolean hasTowPackage = safeParseBool(jsonVehicle.get("hasTowPackage"), false);
-                        
-                        vehicles.add(new Truck(id, make, model, year, color, price,
-                                              cargoCapacity, driveType, hasTowPackage));
-                        
-                    } else if ("Motorcycle".equals(type)) {
-                        String bikeType = jsonVehicle.get("bikeType") != null ? 
-                                        (String) jsonVehicle.get("bikeType") : "";
-                        int engineCC = safeParseInt(jsonVehicle.get("engineCC"), 0);
-                        boolean hasFairing = safeParseBool(jsonVehicle.get("hasFairing"), false);
-                        
-                        vehicles.add(new Motorcycle(id, make, model, year, color, price,
-                                                   bikeType, engineCC, hasFairing));
-                    } else {
-                        System.err.println("Unknown vehicle type: " + type);
-                    }
-                } catch (Exception e) {
-                    System.err.println("Error processing vehicle: " + e.getMessage());
-                    e.printStackTrace();
-                    // Continue to next vehicle instead of aborting the entire loading process
-                }
-            }
-            
+            return readVehicleFile(dataFile);
         } catch (IOException e) {
             System.err.println("Error reading data file: " + e.getMessage());
             e.printStackTrace();
@@ -390,79 +901,265 @@ public class JSONHandler {
     }
     
     /**
-     * Parse a JSON array string into a list of maps
-     * @param jsonArrayString The JSON array string
-     * @return List of maps representing JSON objects
+     * Reads a data file in any supported layout and compression
+     * Invalid records are reported and skipped, but a file that cannot be read or parsed fails.
+     * @param dataFile The file to read
+     * @return List of vehicles loaded from the file
+     * @throws IOException If the file cannot be read or holds neither a JSON array nor NDJSON
      */
-    private List<Map<String, Object>> parseJsonArray(String jsonArrayString) {
-        List<Map<String, Object>> result = new ArrayList<>();
-        
-        // Remove the outer brackets and split by objects
-        String content = jsonArrayString.substring(1, jsonArrayString.length() - 1).trim();
-        
-        // Empty array case
-        if (content.isEmpty()) {
-            return result;
-        }
-        
-        // Split the content into individual JSON objects
-        List<String> objectStrings = splitJsonObjects(content);
-        
-        // Parse each JSON object
-        for (String objString : objectStrings) {
-            if (!objString.isEmpty()) {
-                Map<String, Object> jsonObject = parseJsonObject(objString);
-                result.add(jsonObject);
+    private List<Vehicle> readVehicleFile(File dataFile) throws IOException {
+        List<Vehicle> vehicles;
+        String dataFilePath = dataFile.getPath();
+        try {
+            // Plain NDJSON files are parsed in parallel straight from memory-mapped chunks
+            if (dataFile.length() < Integer.MAX_VALUE && detectCompression(dataFile) == Compression.NONE
+                    && detectFormat(dataFile) == Format.NDJSON) {
+                System.out.println("Reading vehicles from: " + dataFilePath);
+                vehicles = loadNdjsonMapped(dataFile);
+                System.out.println("Found " + vehicles.size() + " vehicles in data file");
+                return vehicles;
+            }
+            
+            // Read the file content, decompressing transparently
+            CharBuffer content = readChars(dataFile);
+            char[] chars = content.array();
+            int from = 0;
+            int to = content.limit();
+            while (from < to && Character.isWhitespace(chars[from])) {
+                from++;
+            }
+            while (to > from && Character.isWhitespace(chars[to - 1])) {
+                to--;
+            }
+            System.out.println("Reading vehicles from: " + dataFilePath);
+            
+            // Line-delimited content (e.g. compressed NDJSON)
+            if (from < to && chars[from] == '{') {
+                vehicles = parseNdjson(chars, from, to);
+                System.out.println("Found " + vehicles.size() + " vehicles in data file");
+                return vehicles;
+            }
+            
+            // Basic validation - must be a JSON array
+            if (from == to || chars[from] != '[' || chars[to - 1] != ']') {
+                throw new IOException("Data file " + dataFilePath + " does not contain a valid JSON array");
             }
+            
+            // Build vehicles directly from the text; invalid records are reported and skipped
+            vehicles = new VehicleJsonReader().readArray(chars, from, to);
+            System.out.println("Found " + vehicles.size() + " vehicles in data file");
+            return vehicles;
+        } catch (RuntimeException e) {
+            throw new IOException("Unexpected error reading " + dataFilePath + ": " + e.getMessage(), e);
         }
-        
-        return result;
     }
     
     /**
-     * Split a string containing multiple JSON objects into individual object strings
-     * @param content String containing multiple JSON objects separated by commas
-     * @return List of individual JSON object strings
+     * Parses a single vehicle from its JSON object text
+     * @param objectJson The JSON object, including the outer braces
+     * @return The vehicle, or null if it cannot be created
      */
-    private List<String> splitJsonObjects(String content) {
-        List<String> result = new ArrayList<>();
-        
+    public Vehicle parseVehicle(String objectJson) {
+        char[] chars = objectJson.toCharArray();
+        return new VehicleJsonReader().readObject(chars, 0, chars.length);
+    }
+    
+    /**
+     * Converts a single vehicle to its JSON object text
+     * @param vehicle The vehicle to convert
+     * @return The JSON object
+     */
+    public String toJson(Vehicle vehicle) {
+        StringBuilder builder = new StringBuilder();
+        appendVehicleJson(builder, vehicle);
+        return builder.toString();
+    }
+    
+    /**
+     * Parses NDJSON text, splitting it at line boundaries into chunks that are parsed in parallel
+     * @param chars The text
+     * @param from Start of the text
+     * @param to End of the text (exclusive)
+     * @return List of vehicles in file order
+     */
+    private List<Vehicle> parseNdjson(char[] chars, int from, int to) {
+        int[] bounds = chunkBoundaries(to - from, position -> chars[from + position] == '\n');
+        return IntStream.range(0, bounds.length - 1)
+                .parallel()
+                .mapToObj(chunk -> {
+                    List<Vehicle> vehicles = new ArrayList<>();
+                    new VehicleJsonReader().readLines(chars, from + bounds[chunk], from + bounds[chunk + 1], vehicles);
+                    return vehicles;
+                })
+                .flatMap(List::stream)
+                .collect(Collectors.toList());
+    }
+    
+    /**
+     * Maps an uncompressed NDJSON file and decodes and parses its chunks in parallel
+     * @param file The NDJSON file
+     * @return List of vehicles in file order
+     * @throws IOException If the file cannot be mapped
+     */
+    private List<Vehicle> loadNdjsonMapped(File file) throws IOException {
+        try (FileChannel channel = FileChannel.open(file.toPath(), StandardOpenOption.READ)) {
+            MappedByteBuffer mapped = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+            int[] bounds = chunkBoundaries((int) channel.size(), position -> mapped.get(position) == '\n');
+            return IntStream.range(0, bounds.length - 1)
+                    .parallel()
+                    .mapToObj(chunk -> {
+                        // Decoding from a heap copy takes the decoder's array fast path
+                        byte[] bytes = new byte[bounds[chunk + 1] - bounds[chunk]];
+                        mapped.duplicate().position(bounds[chunk]).get(bytes);
+                        CharBuffer text = StandardCharsets.UTF_8.decode(ByteBuffer.wrap(bytes));
+                        List<Vehicle> vehicles = new ArrayList<>();
+                        new VehicleJsonReader().readLines(text.array(), text.arrayOffset() + text.position(),
+                                                          text.arrayOffset() + text.limit(), vehicles);
+                        return vehicles;
+                    })
+                    .flatMap(List::stream)
+                    .collect(Collectors.toList());
+        }
+    }
+    
+    /**
+     * Streams the stored vehicles one at a time without holding the fleet on the heap
+     * Each file is read through a small buffer and split into its top-level objects, so JSON
+     * arrays and NDJSON, compressed or not, are handled alike. Invalid records are reported
+     * and skipped.
+     * @param action Receives each vehicle, in file order and shard by shard
+     * @return Number of vehicles read
+     * @throws IOException If a file cannot be read or is malformed
+     */
+    public long streamVehicles(Consumer<Vehicle> action) throws IOException {
+        if (shardLayout == null) {
+            return streamVehicleFile(new File(dataFilePath), action);
+        }
+        long count = 0;
+        try {
+            for (int i = 0; i < shardLayout.getShardCount(); i++) {
+                File shardFile = shardLayout.getShardFile(i);
+                if (!shardFile.exists()) {
+                    throw new IOException("Shard " + shardFile.getPath() + " is missing");
+                }
+                count += streamVehicleFile(shardFile, action);
+            }
+        } catch (IOException e) {
+            refuseWrites(e.getMessage());
+            throw e;
+        }
+        return count;
+    }
+    
+    private static long streamVehicleFile(File file, Consumer<Vehicle> action) throws IOException {
+        if (!file.exists() || file.length() == 0) {
+            return 0;
+        }
+        System.out.println("Reading vehicles from: " + file.getPath());
+        VehicleJsonReader parser = new VehicleJsonReader();
+        char[] buffer = new char[1 << 16];
+        char[] record = new char[1 << 10];
+        int recordLength = 0;
         int depth = 0;
-        int startIndex = 0;
         boolean inString = false;
-        boolean escaped = false;
+        boolean escape = false;
+        long count = 0;
         
-        for (int i = 0; i < content.length(); i++) {
-            char c = content.charAt(i);
-            
-            if (inString) {
-                if (c == '\\' && !escaped) {
-                    escaped = true;
-                } else if (c == '"' && !escaped) {
-                    inString = false;
-                } else {
-                    escaped = false;
+        try (Reader reader = new InputStreamReader(openDataInput(file), StandardCharsets.UTF_8)) {
+            int read;
+            while ((read = reader.read(buffer)) != -1) {
+                for (int i = 0; i < read; i++) {
+                    char c = buffer[i];
+                    if (depth == 0) {
+                        // Between records only array punctuation and whitespace may appear
+                        if (c == '{') {
+                            depth = 1;
+                            recordLength = 0;
+                        } else if (c != '[' && c != ']' && c != ',' && !Character.isWhitespace(c)) {
+                            throw new IOException("Unexpected '" + c + "' between records in " + file.getPath());
+                        } else {
+                            continue;
+                        }
+                    } else if (inString) {
+                        if (escape) {
+                            escape = false;
+                        } else if (c == '\\') {
+                            escape = true;
+                        } else if (c == '"') {
+                            inString = false;
+                        }
+                    } else if (c == '"') {
+                        inString = true;
+                    } else if (c == '{') {
+                        depth++;
+                    } else if (c == '}') {
+                        depth--;
+                    }
+                    
+                    if (recordLength == record.length) {
+                        record = Arrays.copyOf(record, record.length * 2);
+                    }
+                    record[recordLength++] = c;
+                    if (depth == 0) {
+                        Vehicle vehicle = parser.readObject(record, 0, recordLength);
+                        if (vehicle != null) {
+                            action.accept(vehicle);
+                            count++;
+                        }
+                    }
                 }
-            } else {
-                if (c == '"') {
-                    inString = true;
-                } else if (c == '{') {
-                    depth++;
-                } else if (c == '}') {
-                    depth--;
-                } else if (c == ',' && depth == 0) {
-                    result.add(content.substring(startIndex, i).trim());
-                    startIndex = i + 1;
+            }
+        }
+        if (depth != 0) {
+            throw new IOException("Unterminated record at the end of " + file.getPath());
+        }
+        System.out.println("Found " + count + " vehicles in data file");
+        return count;
+    }
+    
+    /**
+     * Reads a data file into a character buffer, decompressing transparently
+     * @param file The file to read
+     * @return Buffer holding the text in its backing array, from 0 to its limit
+     * @throws IOException If the file cannot be read
+     */
+    private static CharBuffer readChars(File file) throws IOException {
+        // UTF-8 never decodes to more chars than bytes, so plain files fit without growing
+        char[] chars = new char[(int) Math.min(Math.max(file.length() + 1, 1 << 12), Integer.MAX_VALUE - 8)];
+        int length = 0;
+        try (Reader reader = new InputStreamReader(openDataInput(file), StandardCharsets.UTF_8)) {
+            int read;
+            while ((read = reader.read(chars, length, chars.length - length)) != -1) {
+                length += read;
+                if (length == chars.length) {
+                    chars = Arrays.copyOf(chars, chars.length * 2);
                 }
             }
         }
-        
-        // Add the last object
-        if (startIndex < content.length()) {
-            result.add(content.substring(startIndex).trim());
+        return CharBuffer.wrap(chars, 0, length);
+    }
+    
+    /**
+     * Splits a range into roughly equal chunks that each end just after a line break
+     * @param length Total length of the content
+     * @param isNewline Tests whether the content has a line break at a position
+     * @return Chunk boundaries, starting with 0 and ending with length
+     */
+    private static int[] chunkBoundaries(int length, java.util.function.IntPredicate isNewline) {
+        int chunks = Math.max(1, Math.min(Runtime.getRuntime().availableProcessors() * 4, length / (1 << 16)));
+        List<Integer> bounds = new ArrayList<>();
+        bounds.add(0);
+        for (int i = 1; i < chunks; i++) {
+            int position = Math.max((int) ((long) length * i / chunks), bounds.get(bounds.size() - 1));
+            while (position < length && !isNewline.test(position)) {
+                position++;
+            }
+            if (position < length && position + 1 > bounds.get(bounds.size() - 1)) {
+                bounds.add(position + 1);
+            }
         }
-        
-        return result;
+        bounds.add(length);
+        return bounds.stream().mapToInt(Integer::intValue).toArray();
     }
     
     /**
@@ -626,44 +1323,891 @@ public class JSONHandler {
     }
     
     /**
-     * Safely parses a double from a JSON value
-     * @param value The JSON value to parse
-     * @param defaultValue The default value to return if parsing fails
-     * @return The parsed double or the default value
+     * Loads every stored vehicle and remembers them for later single-vehicle writes
+     * @return List of vehicles
      */
-    private double safeParseDouble(Object value, double defaultValue) {
-        if (value == null) {
-            return defaultValue;
+    @Override
+    public synchronized List<Vehicle> loadAll() {
+        pendingExternal.clear();
+        pendingReload = false;
+        return loadStored();
+    }
+    
+    /**
+     * Inserts or replaces a vehicle; new vehicles are appended when the format allows it
+     * With shared access the write is refused if another process changed the vehicle first.
+     * @param vehicle The vehicle to store
+     * @return true if successful, false otherwise
+     */
+    @Override
+    public synchronized boolean upsert(Vehicle vehicle) {
+        long id = vehicle.getIdValue();
+        return writeShared(Collections.singletonList(vehicle), Collections.emptyList(), () -> {
+            ensureStoredLoaded();
+            Vehicle old = storedIndex.get(id);
+            applyStored(Collections.singletonMap(id, vehicle));
+            if (old == null ? appendVehicle(storedVehicles, vehicle) : saveVehicle(storedVehicles, vehicle)) {
+                return true;
+            }
+            // Keep the refused vehicle out of the next write
+            applyStored(Collections.singletonMap(id, old));
+            return false;
+        }, () -> Collections.singletonList(new SharedDataFile.Change(id, toJson(vehicle))));
+    }
+    
+    /**
+     * Deletes a vehicle, rewriting only its shard in the sharded layout
+     * @param id The packed vehicle ID
+     * @return true if the vehicle existed and was deleted, false otherwise
+     */
+    @Override
+    public synchronized boolean delete(long id) {
+        return writeShared(Collections.emptyList(), Collections.singletonList(id), () -> {
+            ensureStoredLoaded();
+            Vehicle removed = storedIndex.get(id);
+            if (removed == null) {
+                return false;
+            }
+            applyStored(Collections.singletonMap(id, null));
+            if (saveVehicle(storedVehicles, removed)) {
+                return true;
+            }
+            applyStored(Collections.singletonMap(id, removed));
+            return false;
+        }, () -> Collections.singletonList(new SharedDataFile.Change(id, null)));
+    }
+    
+    /**
+     * Applies all changes in memory, then writes the fleet once
+     * If the write fails the changes are undone in memory as well.
+     * @param upserts Vehicles to insert or replace
+     * @param deletes Packed IDs of vehicles to delete
+     * @return true if successful, false otherwise
+     */
+    @Override
+    public synchronized boolean batch(List<Vehicle> upserts, List<Long> deletes) {
+        return writeShared(upserts, deletes, () -> {
+            ensureStoredLoaded();
+            // Previous entries of every touched ID, so a failed write leaves the stored fleet as it was
+            Map<Long, Vehicle> changes = new LinkedHashMap<>();
+            Map<Long, Vehicle> previous = new HashMap<>();
+            for (Vehicle vehicle : upserts) {
+                changes.put(vehicle.getIdValue(), vehicle);
+            }
+            for (long id : deletes) {
+                changes.put(id, null);
+            }
+            for (long id : changes.keySet()) {
+                previous.put(id, storedIndex.get(id));
+            }
+            applyStored(changes);
+            if (saveVehicles(storedVehicles)) {
+                return true;
+            }
+            applyStored(previous);
+            return false;
+        }, () -> {
+            if (upserts.size() + deletes.size() > MAX_JOURNALED_BATCH) {
+                return null;
+            }
+            List<SharedDataFile.Change> changes = new ArrayList<>();
+            for (Vehicle vehicle : upserts) {
+                changes.add(new SharedDataFile.Change(vehicle.getIdValue(), toJson(vehicle)));
+            }
+            for (long id : deletes) {
+                changes.add(new SharedDataFile.Change(id, null));
+            }
+            return changes;
+        });
+    }
+    
+    /**
+     * Streams vehicles matching a type and a filter, loading the data file on first use
+     * @param type Vehicle type name, or null for all types
+     * @param filter Additional condition, or null
+     * @param action Receives each match
+     */
+    @Override
+    public void scan(String type, Predicate<Vehicle> filter, Consumer<Vehicle> action) {
+        List<Vehicle> snapshot;
+        synchronized (this) {
+            ensureStoredLoaded();
+            snapshot = new ArrayList<>(storedVehicles);
+        }
+        for (Vehicle vehicle : snapshot) {
+            if ((type == null || type.equals(VehicleCodecs.typeNameOf(vehicle)))
+                    && (filter == null || filter.test(vehicle))) {
+                action.accept(vehicle);
+            }
+        }
+    }
+    
+    /**
+     * Replaces the stored fleet
+     * @param vehicles The vehicles to store
+     * @return true if successful, false otherwise
+     */
+    @Override
+    public synchronized boolean saveAll(List<Vehicle> vehicles) {
+        return writeShared(null, null, () -> {
+            replaceStored(vehicles);
+            return saveVehicles(vehicles);
+        }, () -> null);
+    }
+    
+    /**
+     * Stops the shard I/O threads, if any were started, and releases the lock file
+     */
+    @Override
+    public synchronized void close() {
+        if (shardExecutor != null) {
+            shardExecutor.shutdown();
+            shardExecutor = null;
+        }
+        if (shared != null) {
+            shared.close();
+            shared = null;
+        }
+        stopWatching();
+    }
+    
+    private void ensureStoredLoaded() {
+        if (!storedLoaded) {
+            loadStored();
+        }
+    }
+    
+    /**
+     * Reads the data file into the stored fleet, under the shared lock when other processes use it
+     * @return List of vehicles
+     */
+    private List<Vehicle> loadStored() {
+        List<Vehicle> vehicles = null;
+        if (shared != null) {
+            try {
+                vehicles = shared.locked(false, () -> {
+                    List<Vehicle> loaded = loadVehicles();
+                    shared.markSeen();
+                    return loaded;
+                });
+            } catch (IOException e) {
+                System.err.println("Error locking " + dataFilePath + ", reading it unlocked: " + e.getMessage());
+            }
+        }
+        if (vehicles == null) {
+            vehicles = loadVehicles();
+        }
+        replaceStored(vehicles);
+        storedVersion++;
+        return vehicles;
+    }
+    
+    /**
+     * Makes a list of vehicles the stored fleet
+     * @param vehicles The vehicles, which the stored fleet copies
+     */
+    private void replaceStored(List<Vehicle> vehicles) {
+        storedVehicles.clear();
+        storedVehicles.addAll(vehicles);
+        storedIndex.clear();
+        for (Vehicle vehicle : vehicles) {
+            storedIndex.put(vehicle.getIdValue(), vehicle);
+        }
+        storedLoaded = true;
+    }
+    
+    /**
+     * Applies changes to the stored fleet
+     * New vehicles are appended; replacements and removals are done in one pass over the list
+     * instead of a search per vehicle.
+     * @param changes Vehicles by ID, with null values for deletions
+     */
+    private void applyStored(Map<Long, Vehicle> changes) {
+        boolean replaced = false;
+        for (Map.Entry<Long, Vehicle> change : changes.entrySet()) {
+            Vehicle updated = change.getValue();
+            Vehicle old = updated != null ? storedIndex.put(change.getKey(), updated) : storedIndex.remove(change.getKey());
+            if (old == updated) {
+                // Nothing to remove or add, or an instance edited in place that is already in the list
+                continue;
+            }
+            if (old == null) {
+                storedVehicles.add(updated);
+            } else {
+                replaced = true;
+            }
+        }
+        if (replaced) {
+            storedVehicles.removeIf(vehicle -> storedIndex.get(vehicle.getIdValue()) == null);
+            storedVehicles.replaceAll(vehicle -> storedIndex.get(vehicle.getIdValue()));
+        }
+    }
+    
+    /**
+     * Lets several processes load and save the same data file
+     * Loads take a shared lock and writes an exclusive one on a lock file next to the data file.
+     * Each write is recorded in a journal, so other processes can tell they are stale with a
+     * single header read and merge only the changed records (see pollExternalChanges).
+     * Writes to a vehicle another process changed since the last poll are refused.
+     * Only the VehicleStore methods take part; the other save methods write unlocked, so lazy and
+     * off-heap fleets, which use them, turn sharing off again.
+     * @return true if shared access is enabled
+     */
+    public synchronized boolean enableSharedAccess() {
+        if (shared == null) {
+            shared = SharedDataFile.open(new File(dataFilePath));
+            storedLoaded = false;
+        }
+        return shared != null;
+    }
+    
+    /**
+     * Stops coordinating with other processes and releases the lock file
+     */
+    public synchronized void disableSharedAccess() {
+        if (shared != null) {
+            shared.close();
+            shared = null;
+        }
+    }
+    
+    /**
+     * @return true if other processes may write the data file concurrently
+     */
+    public boolean isSharedAccess() {
+        return shared != null;
+    }
+    
+    /**
+     * Collects the vehicles other processes changed since the last call, through the shared
+     * journal or a watched reload
+     * Costs at most a single read of the lock file header when nothing changed.
+     * @return Changed vehicles by ID, with null values for deleted vehicles, or null if another
+     *         process rewrote the file and loadAll must be called to reload it in full
+     */
+    public synchronized Map<Long, Vehicle> pollExternalChanges() {
+        if (shared != null && (!pendingExternal.isEmpty() || pendingReload || shared.isStale())) {
+            try {
+                shared.locked(false, () -> {
+                    sync();
+                    return null;
+                });
+            } catch (IOException e) {
+                System.err.println("Error reading changes to " + dataFilePath + ": " + e.getMessage());
+            }
+        }
+        if (pendingReload) {
+            return null;
+        }
+        if (pendingExternal.isEmpty()) {
+            return Collections.emptyMap();
+        }
+        Map<Long, Vehicle> changes = new LinkedHashMap<>(pendingExternal);
+        pendingExternal.clear();
+        return changes;
+    }
+    
+    /**
+     * Merges the journal entries other processes wrote into the stored fleet
+     * Must be called with the lock held.
+     * @throws IOException If the journal cannot be read
+     */
+    private void sync() throws IOException {
+        if (!storedLoaded) {
+            // The next load reads the whole file anyway
+            return;
+        }
+        List<SharedDataFile.Change> changes = shared.readChanges();
+        if (changes == null || !changes.isEmpty()) {
+            storedVersion++;
+        }
+        if (changes == null) {
+            pendingExternal.clear();
+            pendingReload = true;
+            storedLoaded = false;
+            return;
+        }
+        Map<Long, Vehicle> parsed = new LinkedHashMap<>();
+        for (SharedDataFile.Change change : changes) {
+            Vehicle vehicle = null;
+            if (change.getJson() != null) {
+                vehicle = parseVehicle(change.getJson());
+                if (vehicle == null) {
+                    continue;
+                }
+            }
+            parsed.put(change.getId(), vehicle);
+        }
+        applyStored(parsed);
+        pendingExternal.putAll(parsed);
+    }
+    
+    /**
+     * Runs a write, under the exclusive lock and after a conflict check when access is shared
+     * @param upserts Vehicles the write inserts or replaces, or null if it replaces the whole fleet
+     * @param deletes Packed IDs of vehicles the write deletes, or null if it replaces the whole fleet
+     * @param write The write
+     * @param journal Supplies the journal entries for the write, or null to start a new epoch
+     * @return true if the write succeeded
+     */
+    private boolean writeShared(List<Vehicle> upserts, List<Long> deletes, BooleanSupplier write,
+                                Supplier<List<SharedDataFile.Change>> journal) {
+        storedVersion++;
+        if (shared == null) {
+            return write.getAsBoolean();
+        }
+        try {
+            return shared.locked(true, () -> {
+                sync();
+                String conflict = findConflict(upserts, deletes);
+                if (conflict != null) {
+                    System.err.println("Not saved: " + conflict + ". Reload and try again.");
+                    return false;
+                }
+                if (!write.getAsBoolean()) {
+                    return false;
+                }
+                List<SharedDataFile.Change> changes = journal.get();
+                if (changes != null) {
+                    shared.recordChanges(changes);
+                } else {
+                    shared.recordRewrite();
+                }
+                return true;
+            });
+        } catch (IOException e) {
+            System.err.println("Error locking " + dataFilePath + ": " + e.getMessage());
+            return false;
+        }
+    }
+    
+    /**
+     * Starts reloading the data file in the background whenever another program replaces or edits it
+     * The new file is parsed and diffed against the stored fleet by ID and content hash off the
+     * caller's thread; only the changed vehicles are queued, and pollExternalChanges hands them
+     * over together. Writes made by this process are recognised and not reloaded.
+     * Only the single-file layout can be watched.
+     * @return true if the file is being watched
+     */
+    public synchronized boolean startWatching() {
+        if (watchService != null) {
+            return true;
+        }
+        if (shardLayout != null) {
+            System.err.println("Watching is not supported for the sharded layout");
+            return false;
         }
         
-        if (value instanceof Number) {
-            return ((Number) value).doubleValue();
+        Path file = new File(dataFilePath).toPath();
+        WatchService service;
+        try {
+            service = file.getFileSystem().newWatchService();
+            file.getParent().register(service, StandardWatchEventKinds.ENTRY_CREATE,
+                                      StandardWatchEventKinds.ENTRY_MODIFY);
+        } catch (IOException e) {
+            System.err.println("Error watching " + dataFilePath + ": " + e.getMessage());
+            return false;
         }
+        watchService = service;
+        knownStamp = fileStamp(file.toFile());
         
+        Thread thread = new Thread(() -> watchLoop(service, file.getFileName()), "data-file-watcher");
+        thread.setDaemon(true);
+        thread.start();
+        return true;
+    }
+    
+    /**
+     * Stops watching the data file
+     */
+    public synchronized void stopWatching() {
+        if (watchService != null) {
+            try {
+                watchService.close();
+            } catch (IOException e) {
+                System.err.println("Error closing file watcher: " + e.getMessage());
+            }
+            watchService = null;
+        }
+    }
+    
+    /**
+     * Waits for events on the data file and reloads it once they have settled
+     * @param service The watch service
+     * @param fileName Name of the data file within the watched directory
+     */
+    private void watchLoop(WatchService service, Path fileName) {
         try {
-            return Double.parseDouble(value.toString());
-        } catch (NumberFormatException e) {
-            System.err.println("Error parsing double: " + e.getMessage());
-            return defaultValue;
+            while (true) {
+                boolean changed = isDataFileEvent(service.take(), fileName);
+                // A file may be written in several steps; wait for a quiet period before reading it
+                WatchKey key;
+                while ((key = service.poll(RELOAD_DELAY_MILLIS, TimeUnit.MILLISECONDS)) != null) {
+                    changed |= isDataFileEvent(key, fileName);
+                }
+                if (changed) {
+                    reloadChanged();
+                }
+            }
+        } catch (InterruptedException | ClosedWatchServiceException e) {
+            // Stopped
+        } catch (RuntimeException e) {
+            System.err.println("File watcher stopped: " + e.getMessage());
         }
     }
     
+    private static boolean isDataFileEvent(WatchKey key, Path fileName) {
+        boolean matched = false;
+        for (WatchEvent<?> event : key.pollEvents()) {
+            matched |= event.kind() == StandardWatchEventKinds.OVERFLOW || fileName.equals(event.context());
+        }
+        key.reset();
+        return matched;
+    }
+    
     /**
-     * Safely parses a boolean from a JSON value
-     * @param value The JSON value to parse
-     * @param defaultValue The default value to return if parsing fails
-     * @return The parsed boolean or the default value
+     * Reloads the data file if another program changed it, queueing the changed vehicles
+     * The file is parsed and diffed without holding this handler's lock; if the stored fleet
+     * changed meanwhile the diff is redone against the new state.
      */
-    private boolean safeParseBool(Object value, boolean defaultValue) {
-        if (value == null) {
-            return defaultValue;
+    private void reloadChanged() {
+        File file = new File(dataFilePath);
+        long stamp = fileStamp(file);
+        // Missing while being replaced, or last written by this process
+        if (!file.exists() || stamp == knownStamp) {
+            return;
+        }
+        
+        List<Vehicle> reloaded = null;
+        if (shared != null) {
+            try {
+                reloaded = shared.locked(false, this::loadVehicles);
+            } catch (IOException e) {
+                System.err.println("Error locking " + dataFilePath + ", reading it unlocked: " + e.getMessage());
+            }
+        }
+        if (reloaded == null) {
+            reloaded = loadVehicles();
+        }
+        
+        while (true) {
+            List<Vehicle> stored;
+            long version;
+            synchronized (this) {
+                if (!storedLoaded) {
+                    knownStamp = stamp;
+                    return;
+                }
+                stored = new ArrayList<>(storedVehicles);
+                version = storedVersion;
+            }
+            
+            Map<Long, Vehicle> changes = diffByContent(stored, reloaded);
+            synchronized (this) {
+                if (version != storedVersion) {
+                    continue;
+                }
+                applyStored(changes);
+                pendingExternal.putAll(changes);
+                storedVersion++;
+                knownStamp = stamp;
+                return;
+            }
+        }
+    }
+    
+    /**
+     * Compares two versions of the fleet by ID and content hash
+     * @param before The previous fleet
+     * @param after The new fleet
+     * @return Added and changed vehicles from after by ID, with null values for deleted IDs
+     */
+    private Map<Long, Vehicle> diffByContent(List<Vehicle> before, List<Vehicle> after) {
+        LongVehicleMap previous = new LongVehicleMap(before.size());
+        for (Vehicle vehicle : before) {
+            previous.put(vehicle.getIdValue(), vehicle);
+        }
+        Map<Long, Vehicle> changes = new LinkedHashMap<>();
+        for (Vehicle vehicle : after) {
+            Vehicle old = previous.remove(vehicle.getIdValue());
+            if (old == null || contentHash(old) != contentHash(vehicle)) {
+                changes.put(vehicle.getIdValue(), vehicle);
+            }
+        }
+        for (Vehicle vehicle : before) {
+            if (previous.remove(vehicle.getIdValue()) != null) {
+                changes.put(vehicle.getIdValue(), null);
+            }
+        }
+        return changes;
+    }
+    
+    /**
+     * 64-bit FNV-1a hash of a vehicle's JSON record
+     */
+    private long contentHash(Vehicle vehicle) {
+        StringBuilder json = new StringBuilder(256);
+        appendVehicleJson(json, vehicle);
+        long hash = 0xcbf29ce484222325L;
+        for (int i = 0; i < json.length(); i++) {
+            hash = (hash ^ json.charAt(i)) * 0x100000001b3L;
+        }
+        return hash;
+    }
+    
+    private static long fileStamp(File file) {
+        return file.lastModified() * 31 + file.length();
+    }
+    
+    /**
+     * Checks a write against the changes other processes made since the last poll
+     * @return Description of the conflict, or null if there is none
+     */
+    private String findConflict(List<Vehicle> upserts, List<Long> deletes) {
+        if (pendingReload) {
+            return "the data file was rewritten by another process";
+        }
+        if (pendingExternal.isEmpty()) {
+            return null;
+        }
+        if (upserts == null) {
+            return pendingExternal.size() + " vehicle(s) were changed by another process";
         }
+        for (Vehicle vehicle : upserts) {
+            if (pendingExternal.containsKey(vehicle.getIdValue())) {
+                return "vehicle " + vehicle.getId() + " was changed by another process";
+            }
+        }
+        for (long id : deletes) {
+            if (pendingExternal.containsKey(id)) {
+                return "vehicle " + VehicleId.format(id) + " was changed by another process";
+            }
+        }
+        return null;
+    }
+    
+    /**
+     * @return Absolute path of the single data file
+     */
+    public String getDataFilePath() {
+        return dataFilePath;
+    }
+    
+    /**
+     * @return true if the fleet is stored in the sharded layout
+     */
+    public boolean isSharded() {
+        return shardLayout != null;
+    }
+    
+    /**
+     * Switches to the sharded layout, stored in a directory next to the data file
+     * An existing single-file fleet, or a sharded fleet with a different layout, is migrated
+     * automatically. The new shards are written to a temporary directory and swapped in only once
+     * all of them are written, and the old fleet is only removed after that; if anything cannot
+     * be read or written the old fleet is left untouched and stays in use. A migrated single file
+     * is kept with a .migrated suffix.
+     * @param partition How vehicles are assigned to shards
+     * @param shardCount Number of shards when partitioning by ID hash
+     */
+    public void enableSharding(ShardLayout.Partition partition, int shardCount) {
+        File dataFile = new File(dataFilePath);
+        File shardDir = getShardDirectory(dataFile);
+        ShardLayout layout = new ShardLayout(shardDir, partition, shardCount);
         
-        if (value instanceof Boolean) {
-            return (Boolean) value;
+        List<Vehicle> toMigrate = null;
+        ShardLayout previous = null;
+        
+        if (layout.getManifestFile().exists()) {
+            previous = readManifest(shardDir);
+            if (previous == null) {
+                System.err.println("Unreadable shard manifest " + layout.getManifestFile() + ", staying with single file");
+                return;
+            }
+            if (previous.matches(partition.name(), layout.getShardCount())) {
+                shardLayout = previous;
+                System.out.println("Using sharded data directory: " + shardDir.getAbsolutePath());
+                return;
+            }
         }
         
-        return Boolean.parseBoolean(value.toString());
+        try {
+            if (previous != null) {
+                // Re-shard from the layout recorded in the manifest
+                toMigrate = readShards(previous);
+            } else if (dataFile.exists() && dataFile.length() > 0) {
+                toMigrate = readVehicleFile(dataFile);
+            } else {
+                toMigrate = new ArrayList<>();
+            }
+        } catch (IOException e) {
+            System.err.println("Error reading the fleet to migrate, keeping the current layout: " + e.getMessage());
+            shardLayout = previous;
+            return;
+        }
+        
+        File tempDir = new File(shardDir.getPath() + ".tmp");
+        File oldDir = new File(shardDir.getPath() + ".old");
+        try {
+            deleteDirectory(tempDir);
+            if (!tempDir.mkdirs()) {
+                throw new IOException("Cannot create " + tempDir);
+            }
+            ShardLayout staged = new ShardLayout(tempDir, partition, shardCount);
+            writeShards(staged, toMigrate);
+            writeAtomically(staged.getManifestFile(), staged.toManifestJson());
+            
+            // Swap the complete new layout in, then drop the old one
+            deleteDirectory(oldDir);
+            if (shardDir.exists()) {
+                Files.move(shardDir.toPath(), oldDir.toPath());
+            }
+            try {
+                Files.move(tempDir.toPath(), shardDir.toPath());
+            } catch (IOException e) {
+                if (oldDir.exists()) {
+                    Files.move(oldDir.toPath(), shardDir.toPath());
+                }
+                throw e;
+            }
+        } catch (IOException e) {
+            System.err.println("Shard migration failed, keeping the current layout: " + e.getMessage());
+            deleteDirectory(tempDir);
+            shardLayout = previous;
+            return;
+        }
+        
+        shardLayout = layout;
+        deleteDirectory(oldDir);
+        if (previous == null && dataFile.exists()) {
+            dataFile.renameTo(new File(dataFilePath + ".migrated"));
+        }
+        System.out.println("Migrated " + toMigrate.size() + " vehicles to " + layout.getShardCount()
+                           + " shards in " + shardDir.getAbsolutePath());
+        System.out.println("Using sharded data directory: " + shardDir.getAbsolutePath());
+    }
+    
+    /**
+     * Picks up a sharded layout left by an earlier run, so the fleet is found without repeating
+     * the -Dvms.shards options
+     */
+    private void detectSharding() {
+        File shardDir = getShardDirectory(new File(dataFilePath));
+        if (shardLayout != null || !new File(shardDir, ShardLayout.MANIFEST_FILE).exists()) {
+            return;
+        }
+        ShardLayout recorded = readManifest(shardDir);
+        if (recorded == null) {
+            System.err.println("Unreadable shard manifest in " + shardDir + ", using the single data file");
+            return;
+        }
+        shardLayout = recorded;
+        System.out.println("Using sharded data directory: " + shardDir.getAbsolutePath());
+    }
+    
+    /**
+     * @param dataFile The single data file
+     * @return The directory its sharded layout is kept in
+     */
+    private static File getShardDirectory(File dataFile) {
+        String baseName = dataFile.getName().replaceFirst("\\.json$", "");
+        return new File(dataFile.getAbsoluteFile().getParentFile(), baseName + ".shards");
+    }
+    
+    private static boolean hasShardManifest(File dataFile) {
+        return new File(getShardDirectory(dataFile), ShardLayout.MANIFEST_FILE).exists();
+    }
+    
+    /**
+     * Deletes a directory and the files in it, if it exists
+     * @param directory The directory
+     */
+    private static void deleteDirectory(File directory) {
+        File[] files = directory.listFiles();
+        if (files != null) {
+            for (File file : files) {
+                file.delete();
+            }
+        }
+        directory.delete();
+    }
+    
+    /**
+     * Reads the layout recorded in a shard manifest
+     * @param shardDir The shard directory
+     * @return The recorded layout, or null if the manifest cannot be read
+     */
+    private ShardLayout readManifest(File shardDir) {
+        try {
+            String content = new String(Files.readAllBytes(new File(shardDir, ShardLayout.MANIFEST_FILE).toPath()),
+                                        StandardCharsets.UTF_8).trim();
+            Map<String, Object> manifest = parseJsonObject(content);
+            String partition = manifest.get("partition") != null ? manifest.get("partition").toString() : "hash";
+            int shardCount = safeParseInt(manifest.get("shardCount"), 0);
+            return new ShardLayout(shardDir, ShardLayout.Partition.fromName(partition), shardCount);
+        } catch (IOException | IllegalArgumentException e) {
+            return null;
+        }
+    }
+    
+    /**
+     * Loads every shard concurrently and concatenates them in shard order
+     * If any shard is missing or unreadable, no vehicles are returned and writes are refused from
+     * then on, since a save would replace the files with a fleet lacking that shard's vehicles.
+     * @return List of all vehicles, or an empty list if a shard could not be loaded
+     */
+    private List<Vehicle> loadAllShards() {
+        try {
+            return readShards(shardLayout);
+        } catch (IOException e) {
+            refuseWrites(e.getMessage());
+            return new ArrayList<>();
+        }
+    }
+    
+    /**
+     * Makes the fleet read-only after part of it could not be loaded
+     * @param reason What failed
+     */
+    private void refuseWrites(String reason) {
+        readOnlyReason = reason;
+        System.err.println(reason + "; the fleet is read-only until the shard is restored and the program restarted");
+    }
+    
+    /**
+     * @return true if writes are refused because part of the fleet could not be loaded
+     */
+    public boolean isReadOnly() {
+        return readOnlyReason != null;
+    }
+    
+    /**
+     * Loads every shard of a layout concurrently, failing if any shard cannot be read in full
+     * @param layout The layout to read
+     * @return List of all vehicles, in shard order
+     * @throws IOException If a shard is missing or unreadable
+     */
+    private List<Vehicle> readShards(ShardLayout layout) throws IOException {
+        List<Future<List<Vehicle>>> results = new ArrayList<>();
+        for (int i = 0; i < layout.getShardCount(); i++) {
+            File shardFile = layout.getShardFile(i);
+            results.add(getShardExecutor(layout).submit(() -> readVehicleFile(shardFile)));
+        }
+        
+        List<Vehicle> vehicles = new ArrayList<>();
+        for (Future<List<Vehicle>> result : results) {
+            try {
+                vehicles.addAll(result.get());
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new IOException("Interrupted while loading shards");
+            } catch (ExecutionException e) {
+                throw new IOException("Error loading shard: " + e.getCause().getMessage(), e.getCause());
+            }
+        }
+        return vehicles;
+    }
+    
+    /**
+     * Partitions the fleet and writes every shard concurrently
+     * @param vehicles List of all vehicles
+     * @return true if every shard was written
+     */
+    private boolean saveAllShards(List<Vehicle> vehicles) {
+        try {
+            writeShards(shardLayout, vehicles);
+            return true;
+        } catch (IOException e) {
+            System.err.println(e.getMessage());
+            return false;
+        }
+    }
+    
+    /**
+     * Partitions the fleet and writes every shard of a layout concurrently
+     * @param layout The layout to write
+     * @param vehicles List of all vehicles
+     * @throws IOException If any shard cannot be written
+     */
+    private void writeShards(ShardLayout layout, List<Vehicle> vehicles) throws IOException {
+        List<List<Vehicle>> shards = new ArrayList<>();
+        for (int i = 0; i < layout.getShardCount(); i++) {
+            shards.add(new ArrayList<>());
+        }
+        for (Vehicle vehicle : vehicles) {
+            shards.get(layout.shardOf(vehicle)).add(vehicle);
+        }
+        
+        List<Future<?>> results = new ArrayList<>();
+        for (int i = 0; i < shards.size(); i++) {
+            File shardFile = layout.getShardFile(i);
+            List<Vehicle> shardVehicles = shards.get(i);
+            results.add(getShardExecutor(layout).submit(() -> {
+                writeVehicleFile(shardFile, shardVehicles);
+                return null;
+            }));
+        }
+        
+        IOException failure = null;
+        for (Future<?> result : results) {
+            try {
+                result.get();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new IOException("Interrupted while writing shards");
+            } catch (ExecutionException e) {
+                if (failure == null) {
+                    failure = new IOException("Error writing shard: " + e.getCause().getMessage(), e.getCause());
+                }
+            }
+        }
+        if (failure != null) {
+            throw failure;
+        }
+    }
+    
+    /**
+     * Writes a file through a temporary file and a rename, so readers never see a partial write
+     * @param file The file to write
+     * @param content The content to write
+     * @throws IOException If writing fails
+     */
+    private void writeAtomically(File file, String content) throws IOException {
+        File temp = new File(file.getPath() + ".tmp");
+        Files.write(temp.toPath(), content.getBytes(StandardCharsets.UTF_8));
+        replaceFile(temp, file);
+    }
+    
+    /**
+     * Moves a fully written temporary file over its target, atomically where supported
+     * @param temp The temporary file
+     * @param file The target file
+     * @throws IOException If the move fails
+     */
+    private void replaceFile(File temp, File file) throws IOException {
+        try {
+            Files.move(temp.toPath(), file.toPath(), StandardCopyOption.REPLACE_EXISTING,
+                       StandardCopyOption.ATOMIC_MOVE);
+        } catch (IOException e) {
+            Files.move(temp.toPath(), file.toPath(), StandardCopyOption.REPLACE_EXISTING);
+        }
+    }
+    
+    /**
+     * Returns the pool used for shard I/O, creating it on first use
+     * @param layout The layout the pool is sized for
+     * @return The executor
+     */
+    private synchronized ExecutorService getShardExecutor(ShardLayout layout) {
+        if (shardExecutor == null) {
+            int threads = Math.max(1, Math.min(layout.getShardCount(), Runtime.getRuntime().availableProcessors()));
+            shardExecutor = Executors.newFixedThreadPool(threads, runnable -> {
+                Thread thread = new Thread(runnable, "shard-io");
+                thread.setDaemon(true);
+                return thread;
+            });
+        }
+        return shardExecutor;
     }
     
     /**
@@ -671,6 +2215,6 @@ public class JSONHandler {
      * @return A unique ID string
      */
     public String generateUniqueId() {
-        return UUID.randomUUID().toString().substring(0, 8);
+        return IdAllocator.getDefault().nextId();
     }
 }
\ No newline at end of file
@@ -0,0 +1,350 @@
+import java.math.BigDecimal;
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.sql.Types;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.function.Consumer;
+import java.util.function.Predicate;
+
+/**
+ * Vehicle store backed by an SQL database through JDBC
+ *
+ * Written for an embedded H2 database in file mode (e.g. jdbc:h2:./vehicles), which needs
+ * only the H2 jar on the classpath; no driver is bundled with the project. All vehicle types
+ * share one table, with a nullable column for each type-specific field of the registered
+ * codecs. Writes use prepared statements, and batches run as one JDBC batch in a single
+ * transaction.
+ */
+public class JdbcVehicleStore implements VehicleStore {
+    // Columns shared by every vehicle type, in parameter order
+    private static final String[] COMMON_COLUMNS = {"id", "type", "make", "model", "model_year", "color", "price"};
+
+    private static final String[] SCHEMA = {
+        "CREATE TABLE IF NOT EXISTS vehicles ("
+            + "id BIGINT PRIMARY KEY, "
+            + "type VARCHAR(16) NOT NULL, "
+            + "make VARCHAR(255), "
+            + "model VARCHAR(255), "
+            + "model_year INT, "
+            + "color VARCHAR(64), "
+            + "price DECIMAL(17, 2))",
+        // Type scans are served in price order straight from this index
+        "CREATE INDEX IF NOT EXISTS vehicles_type_price ON vehicles (type, price)",
+        "CREATE INDEX IF NOT EXISTS vehicles_make ON vehicles (make)"
+    };
+
+    private final Connection connection;
+    // Statement parameter index of each type-specific column, one column per codec field name
+    private final Map<String, Integer> fieldParameters = new LinkedHashMap<>();
+    private final String columns;
+    private final PreparedStatement upsertStatement;
+    private final PreparedStatement deleteStatement;
+
+    private JdbcVehicleStore(Connection connection) throws SQLException {
+        this.connection = connection;
+        StringBuilder columnList = new StringBuilder(String.join(", ", COMMON_COLUMNS));
+        try (Statement statement = connection.createStatement()) {
+            for (String ddl : SCHEMA) {
+                statement.execute(ddl);
+            }
+
+            // Type-specific columns come from the registered codecs, so new types add their own
+            for (VehicleCodec<?> codec : VehicleCodecs.all()) {
+                for (VehicleCodec.Field field : codec.getFields()) {
+                    if (fieldParameters.containsKey(field.getName())) {
+                        continue;
+                    }
+                    statement.execute("ALTER TABLE vehicles ADD COLUMN IF NOT EXISTS "
+                            + field.getName() + " " + sqlType(field.getKind()));
+                    fieldParameters.put(field.getName(), COMMON_COLUMNS.length + fieldParameters.size() + 1);
+                    columnList.append(", ").append(field.getName());
+                }
+            }
+        }
+        this.columns = columnList.toString();
+
+        int parameterCount = COMMON_COLUMNS.length + fieldParameters.size();
+        this.upsertStatement = connection.prepareStatement("MERGE INTO vehicles (" + columns + ") KEY (id) VALUES ("
+                + String.join(", ", Collections.nCopies(parameterCount, "?")) + ")");
+        this.deleteStatement = connection.prepareStatement("DELETE FROM vehicles WHERE id = ?");
+    }
+
+    /**
+     * Connects to a database and creates the schema if needed
+     * @param url JDBC URL, e.g. jdbc:h2:./vehicles
+     * @return The store, or null if the database (or its driver) is not available
+     */
+    public static JdbcVehicleStore open(String url) {
+        try {
+            return new JdbcVehicleStore(DriverManager.getConnection(url));
+        } catch (SQLException e) {
+            System.err.println("Error opening database " + url + ": " + e.getMessage());
+            return null;
+        }
+    }
+
+    @Override
+    public synchronized List<Vehicle> loadAll() {
+        List<Vehicle> vehicles = new ArrayList<>();
+        scan(null, null, vehicles::add);
+        return vehicles;
+    }
+
+    @Override
+    public synchronized boolean upsert(Vehicle vehicle) {
+        try {
+            bindVehicle(upsertStatement, vehicle);
+            upsertStatement.executeUpdate();
+            return true;
+        } catch (SQLException e) {
+            System.err.println("Error saving vehicle " + vehicle.getId() + ": " + e.getMessage());
+            return false;
+        }
+    }
+
+    @Override
+    public synchronized boolean delete(long id) {
+        try {
+            deleteStatement.setLong(1, id);
+            return deleteStatement.executeUpdate() > 0;
+        } catch (SQLException e) {
+            System.err.println("Error deleting vehicle " + VehicleId.format(id) + ": " + e.getMessage());
+            return false;
+        }
+    }
+
+    @Override
+    public synchronized boolean batch(List<Vehicle> upserts, List<Long> deletes) {
+        return inTransaction(() -> {
+            for (Vehicle vehicle : upserts) {
+                bindVehicle(upsertStatement, vehicle);
+                upsertStatement.addBatch();
+            }
+            upsertStatement.executeBatch();
+            for (long id : deletes) {
+                deleteStatement.setLong(1, id);
+                deleteStatement.addBatch();
+            }
+            deleteStatement.executeBatch();
+        });
+    }
+
+    @Override
+    public synchronized void scan(String type, Predicate<Vehicle> filter, Consumer<Vehicle> action) {
+        String sql = "SELECT " + columns + " FROM vehicles"
+                + (type != null ? " WHERE type = ? ORDER BY price" : " ORDER BY id");
+        try (PreparedStatement statement = connection.prepareStatement(sql)) {
+            if (type != null) {
+                statement.setString(1, type);
+            }
+            statement.setFetchSize(1000);
+            try (ResultSet rows = statement.executeQuery()) {
+                while (rows.next()) {
+                    Vehicle vehicle = readVehicle(rows);
+                    if (vehicle != null && (filter == null || filter.test(vehicle))) {
+                        action.accept(vehicle);
+                    }
+                }
+            }
+        } catch (SQLException e) {
+            System.err.println("Error reading vehicles: " + e.getMessage());
+        }
+    }
+
+    @Override
+    public synchronized boolean saveAll(List<Vehicle> vehicles) {
+        return inTransaction(() -> {
+            try (Statement statement = connection.createStatement()) {
+                statement.executeUpdate("DELETE FROM vehicles");
+            }
+            for (Vehicle vehicle : vehicles) {
+                bindVehicle(upsertStatement, vehicle);
+                upsertStatement.addBatch();
+            }
+            upsertStatement.executeBatch();
+        });
+    }
+
+    @Override
+    public synchronized void close() {
+        try {
+            upsertStatement.close();
+            deleteStatement.close();
+            connection.close();
+        } catch (SQLException e) {
+            System.err.println("Error closing database: " + e.getMessage());
+        }
+    }
+
+    private interface SqlWork {
+        void run() throws SQLException;
+    }
+
+    /**
+     * Runs work in one transaction, rolling back if any statement fails
+     */
+    private boolean inTransaction(SqlWork work) {
+        try {
+            connection.setAutoCommit(false);
+            try {
+                work.run();
+                connection.commit();
+                return true;
+            } catch (SQLException e) {
+                connection.rollback();
+                System.err.println("Error writing vehicles, changes rolled back: " + e.getMessage());
+                return false;
+            } finally {
+                connection.setAutoCommit(true);
+            }
+        } catch (SQLException e) {
+            System.err.println("Error writing vehicles: " + e.getMessage());
+            return false;
+        }
+    }
+
+    private static String sqlType(VehicleCodec.Kind kind) {
+        switch (kind) {
+            case INT:
+                return "INT";
+            case DOUBLE:
+                return "DOUBLE";
+            case BOOLEAN:
+                return "BOOLEAN";
+            default:
+                return "VARCHAR(255)";
+        }
+    }
+
+    private void bindVehicle(PreparedStatement statement, Vehicle vehicle) throws SQLException {
+        VehicleCodec<?> codec = VehicleCodecs.of(vehicle);
+        if (codec == null) {
+            throw new SQLException("Unknown vehicle type: " + vehicle.getClass().getName());
+        }
+
+        statement.setLong(1, vehicle.getIdValue());
+        statement.setString(2, codec.getTypeName());
+        statement.setString(3, vehicle.getMake());
+        statement.setString(4, vehicle.getModel());
+        statement.setInt(5, vehicle.getYear());
+        statement.setString(6, vehicle.getColor());
+        statement.setBigDecimal(7, BigDecimal.valueOf(vehicle.getPriceCents(), 2));
+        for (int parameter : fieldParameters.values()) {
+            statement.setNull(parameter, Types.NULL);
+        }
+
+        SQLException[] failure = new SQLException[1];
+        codec.write(vehicle, new VehicleCodec.FieldWriter() {
+            @Override
+            public void writeInt(String name, int value) {
+                try {
+                    statement.setInt(fieldParameters.get(name), value);
+                } catch (SQLException e) {
+                    failure[0] = e;
+                }
+            }
+
+            @Override
+            public void writeDouble(String name, double value) {
+                try {
+                    statement.setDouble(fieldParameters.get(name), value);
+                } catch (SQLException e) {
+                    failure[0] = e;
+                }
+            }
+
+            @Override
+            public void writeString(String name, String value) {
+                try {
+                    statement.setString(fieldParameters.get(name), value);
+                } catch (SQLException e) {
+                    failure[0] = e;
+                }
+            }
+
+            @Override
+            public void writeBoolean(String name, boolean value) {
+                try {
+                    statement.setBoolean(fieldParameters.get(name), value);
+                } catch (SQLException e) {
+                    failure[0] = e;
+                }
+            }
+        });
+        if (failure[0] != null) {
+            throw failure[0];
+        }
+    }
+
+    private static Vehicle readVehicle(ResultSet row) throws SQLException {
+        String type = row.getString(2);
+        VehicleCodec<?> codec = VehicleCodecs.forName(type);
+        if (codec == null) {
+            System.err.println("Warning: Unknown vehicle type: " + type);
+            return null;
+        }
+
+        // The column holds exact cents, so read it as a decimal rather than a double
+        BigDecimal price = row.getBigDecimal(7);
+        long priceCents = price != null ? price.movePointRight(2).longValue() : 0;
+        SQLException[] failure = new SQLException[1];
+        Vehicle vehicle = codec.read(row.getLong(1), row.getString(3), row.getString(4),
+                row.getInt(5), row.getString(6), priceCents, new VehicleCodec.FieldReader() {
+            @Override
+            public int readInt(String name, int defaultValue) {
+                try {
+                    int value = row.getInt(name);
+                    return row.wasNull() ? defaultValue : value;
+                } catch (SQLException e) {
+                    failure[0] = e;
+                    return defaultValue;
+                }
+            }
+
+            @Override
+            public double readDouble(String name, double defaultValue) {
+                try {
+                    double value = row.getDouble(name);
+                    return row.wasNull() ? defaultValue : value;
+                } catch (SQLException e) {
+                    failure[0] = e;
+                    return defaultValue;
+                }
+            }
+
+            @Override
+            public String readString(String name, String defaultValue) {
+                try {
+                    String value = row.getString(name);
+                    return value != null ? value : defaultValue;
+                } catch (SQLException e) {
+                    failure[0] = e;
+                    return defaultValue;
+                }
+            }
+
+            @Override
+            public boolean readBoolean(String name, boolean defaultValue) {
+                try {
+                    boolean value = row.getBoolean(name);
+                    return row.wasNull() ? defaultValue : value;
+                } catch (SQLException e) {
+                    failure[0] = e;
+                    return defaultValue;
+                }
+            }
+        });
+        if (failure[0] != null) {
+            throw failure[0];
+        }
+        return vehicle;
+    }
+}
@@ -0,0 +1,391 @@
+import java.io.BufferedOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.RandomAccessFile;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.AbstractCollection;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.Set;
+
+/**
+ * Lazily materialised view of a single-file fleet
+ *
+ * Startup only reads (or builds) a VehicleOffsetIndex. A Vehicle is parsed from its byte range
+ * the first time it is accessed and kept in a bounded LRU cache. Added and modified vehicles are
+ * pinned until the next save, which copies the bytes of untouched records straight from the old
+ * file and only serialises the changed ones.
+ */
+public class LazyVehicleStore {
+    private final File dataFile;
+    private final JSONHandler jsonHandler;
+    private final int cacheSize;
+
+    private VehicleOffsetIndex index;
+    private final LinkedHashMap<Long, Vehicle> cache;
+
+    // Changes since the last save; dirty vehicles are never evicted
+    private final LinkedHashMap<Long, Vehicle> dirty = new LinkedHashMap<>();
+    private final Set<Long> deleted = new HashSet<>();
+    
+    // Records a view materialises per read of the data file
+    private static final int VIEW_BATCH = 1024;
+
+    /**
+     * Opens a lazy store over a data file
+     * @param dataFile The JSON array data file
+     * @param jsonHandler Handler used to parse and serialise single records
+     * @param cacheSize Maximum number of clean vehicles kept in memory
+     * @return The store, or null if the file cannot be indexed
+     */
+    public static LazyVehicleStore open(File dataFile, JSONHandler jsonHandler, int cacheSize) {
+        try {
+            if (JSONHandler.detectCompression(dataFile) != JSONHandler.Compression.NONE) {
+                System.err.println("Data file is compressed, lazy loading disabled");
+                return null;
+            }
+            VehicleOffsetIndex index = VehicleOffsetIndex.open(dataFile);
+            if (index == null) {
+                System.err.println("Data file has records without valid IDs, lazy loading disabled");
+                return null;
+            }
+            System.out.println("Indexed " + index.size() + " vehicles in " + dataFile.getPath());
+            return new LazyVehicleStore(dataFile, jsonHandler, cacheSize, index);
+        } catch (IOException e) {
+            System.err.println("Error indexing data file: " + e.getMessage());
+            return null;
+        }
+    }
+
+    private LazyVehicleStore(File dataFile, JSONHandler jsonHandler, int cacheSize, VehicleOffsetIndex index) {
+        this.dataFile = dataFile;
+        this.jsonHandler = jsonHandler;
+        this.cacheSize = cacheSize;
+        this.index = index;
+        this.cache = new LinkedHashMap<Long, Vehicle>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<Long, Vehicle> eldest) {
+                return size() > LazyVehicleStore.this.cacheSize;
+            }
+        };
+    }
+
+    /**
+     * Returns a vehicle, materialising it from the data file if needed
+     * @param id The packed vehicle ID
+     * @return The vehicle or null
+     */
+    public synchronized Vehicle get(long id) {
+        Vehicle vehicle = dirty.get(id);
+        if (vehicle != null) {
+            return vehicle;
+        }
+        if (deleted.contains(id)) {
+            return null;
+        }
+
+        vehicle = cache.get(id);
+        if (vehicle == null) {
+            int position = index.positionOf(id);
+            if (position < 0) {
+                return null;
+            }
+            try (RandomAccessFile source = new RandomAccessFile(dataFile, "r")) {
+                vehicle = readRecord(source, position);
+            } catch (IOException e) {
+                System.err.println("Error reading data file " + dataFile + ": " + e.getMessage());
+                return null;
+            }
+            if (vehicle != null) {
+                cache.put(id, vehicle);
+            }
+        }
+        return vehicle;
+    }
+
+    /**
+     * Checks whether a vehicle exists without materialising it
+     * @param id The packed vehicle ID
+     * @return true if the vehicle exists
+     */
+    public synchronized boolean contains(long id) {
+        return dirty.containsKey(id) || (!deleted.contains(id) && index.positionOf(id) >= 0);
+    }
+
+    /**
+     * Records an added or modified vehicle
+     * @param vehicle The vehicle
+     */
+    public synchronized void put(Vehicle vehicle) {
+        long id = vehicle.getIdValue();
+        deleted.remove(id);
+        cache.remove(id);
+        dirty.put(id, vehicle);
+    }
+
+    /**
+     * Records a deletion
+     * @param id The packed vehicle ID
+     * @return true if the vehicle existed
+     */
+    public synchronized boolean remove(long id) {
+        if (!contains(id)) {
+            return false;
+        }
+        dirty.remove(id);
+        cache.remove(id);
+        if (index.positionOf(id) >= 0) {
+            deleted.add(id);
+        }
+        return true;
+    }
+
+    /**
+     * Materialises every vehicle, in file order followed by new vehicles
+     * Vehicles read here are not added to the cache, so a full listing does not evict the working set.
+     * @return List of all vehicles
+     */
+    public synchronized List<Vehicle> getAll() {
+        List<Vehicle> vehicles = new ArrayList<>(index.size() + dirty.size());
+        readClean(0, index.size(), vehicles);
+        vehicles.addAll(dirty.values());
+        return vehicles;
+    }
+
+    /**
+     * Returns a read-only view that materialises the vehicles as it is iterated, in the order of getAll
+     * Records are read a batch at a time, so only one batch is held on the heap, and are not
+     * added to the cache. The view must not be used across changes to the store.
+     * @return The view
+     */
+    public Collection<Vehicle> asCollection() {
+        return new AbstractCollection<Vehicle>() {
+            @Override
+            public Iterator<Vehicle> iterator() {
+                return new Iterator<Vehicle>() {
+                    private final List<Vehicle> batch = new ArrayList<>(VIEW_BATCH);
+                    private int taken;
+                    
+                    // Next record of the data file, or -1 once the file is read and only new vehicles are left
+                    private int position;
+                    private boolean addedRead;
+
+                    @Override
+                    public boolean hasNext() {
+                        while (taken == batch.size()) {
+                            batch.clear();
+                            taken = 0;
+                            if (position >= 0) {
+                                position = readClean(position, VIEW_BATCH, batch);
+                            } else if (!addedRead) {
+                                addedRead = true;
+                                synchronized (LazyVehicleStore.this) {
+                                    batch.addAll(dirty.values());
+                                }
+                            } else {
+                                return false;
+                            }
+                        }
+                        return true;
+                    }
+
+                    @Override
+                    public Vehicle next() {
+                        if (!hasNext()) {
+                            throw new NoSuchElementException();
+                        }
+                        return batch.get(taken++);
+                    }
+                };
+            }
+
+            @Override
+            public int size() {
+                return LazyVehicleStore.this.size();
+            }
+        };
+    }
+
+    /**
+     * Reads clean, non-deleted records of the data file in file order
+     * @param from Position of the first record to read
+     * @param count Number of positions to read
+     * @param vehicles Receives the vehicles
+     * @return The position after the last one read, or -1 at the end of the file
+     */
+    private synchronized int readClean(int from, int count, List<Vehicle> vehicles) {
+        int to = Math.min(index.size(), from + count);
+        try (RandomAccessFile source = new RandomAccessFile(dataFile, "r")) {
+            readClean(source, from, to, vehicles);
+        } catch (IOException e) {
+            System.err.println("Error reading data file " + dataFile + ": " + e.getMessage());
+        }
+        return to < index.size() ? to : -1;
+    }
+
+    private void readClean(RandomAccessFile source, int from, int to, List<Vehicle> vehicles) {
+        for (int i = from; i < to; i++) {
+            long id = index.idAt(i);
+            if (deleted.contains(id) || dirty.containsKey(id)) {
+                continue;
+            }
+            Vehicle vehicle = cache.get(id);
+            if (vehicle == null) {
+                vehicle = readRecord(source, i);
+            }
+            if (vehicle != null) {
+                vehicles.add(vehicle);
+            }
+        }
+    }
+
+    /**
+     * Returns the number of vehicles without materialising them
+     * @return The fleet size
+     */
+    public synchronized int size() {
+        int count = index.size() - deleted.size();
+        for (Long id : dirty.keySet()) {
+            if (index.positionOf(id) < 0) {
+                count++;
+            }
+        }
+        return count;
+    }
+
+    /**
+     * Writes pending changes to the data file
+     * Untouched records are copied byte for byte, and the offset index is rebuilt while writing.
+     * @return true if successful
+     */
+    public synchronized boolean save() {
+        if (dirty.isEmpty() && deleted.isEmpty()) {
+            return true;
+        }
+
+        File temp = new File(dataFile.getPath() + ".tmp");
+        VehicleOffsetIndex newIndex = VehicleOffsetIndex.forWriting(index.size() + dirty.size());
+        Set<Long> written = new HashSet<>();
+
+        try (RandomAccessFile source = new RandomAccessFile(dataFile, "r");
+             OutputStream out = new BufferedOutputStream(new FileOutputStream(temp), 1 << 16)) {
+            long position = 0;
+            byte[] buffer = new byte[1024];
+            // NDJSON records are newline-terminated; array records are comma-separated
+            boolean ndjson = jsonHandler.getFormat() == JSONHandler.Format.NDJSON;
+            if (!ndjson) {
+                out.write('[');
+                position++;
+            }
+
+            for (int i = 0; i < index.size(); i++) {
+                long id = index.idAt(i);
+                if (deleted.contains(id)) {
+                    continue;
+                }
+
+                byte[] bytes;
+                int length;
+                Vehicle changed = dirty.get(id);
+                if (changed != null) {
+                    bytes = jsonHandler.toJson(changed).getBytes(StandardCharsets.UTF_8);
+                    length = bytes.length;
+                    written.add(id);
+                } else {
+                    length = index.lengthAt(i);
+                    if (buffer.length < length) {
+                        buffer = new byte[length];
+                    }
+                    source.seek(index.offsetAt(i));
+                    source.readFully(buffer, 0, length);
+                    bytes = buffer;
+                }
+
+                if (newIndex.size() > 0 && !ndjson) {
+                    out.write(',');
+                    position++;
+                }
+                newIndex.add(id, position, length);
+                out.write(bytes, 0, length);
+                position += length;
+                if (ndjson) {
+                    out.write('\n');
+                    position++;
+                }
+            }
+
+            for (Vehicle vehicle : dirty.values()) {
+                if (written.contains(vehicle.getIdValue())) {
+                    continue;
+                }
+                byte[] bytes = jsonHandler.toJson(vehicle).getBytes(StandardCharsets.UTF_8);
+                if (newIndex.size() > 0 && !ndjson) {
+                    out.write(',');
+                    position++;
+                }
+                newIndex.add(vehicle.getIdValue(), position, bytes.length);
+                out.write(bytes);
+                position += bytes.length;
+                if (ndjson) {
+                    out.write('\n');
+                    position++;
+                }
+            }
+
+            if (!ndjson) {
+                out.write(']');
+            }
+        } catch (IOException e) {
+            System.err.println("Error writing data file " + dataFile + ": " + e.getMessage());
+            temp.delete();
+            return false;
+        }
+
+        try {
+            Files.move(temp.toPath(), dataFile.toPath(), StandardCopyOption.REPLACE_EXISTING);
+        } catch (IOException e) {
+            System.err.println("Error replacing data file " + dataFile + ": " + e.getMessage());
+            return false;
+        }
+
+        newIndex.finish();
+        index = newIndex;
+        for (Vehicle vehicle : dirty.values()) {
+            cache.put(vehicle.getIdValue(), vehicle);
+        }
+        dirty.clear();
+        deleted.clear();
+
+        try {
+            index.save(dataFile);
+        } catch (IOException e) {
+            System.err.println("Could not save offset index: " + e.getMessage());
+        }
+        return true;
+    }
+
+    /**
+     * Parses the record at a position in the offset index
+     */
+    private Vehicle readRecord(RandomAccessFile source, int position) {
+        try {
+            byte[] bytes = new byte[index.lengthAt(position)];
+            source.seek(index.offsetAt(position));
+            source.readFully(bytes);
+            return jsonHandler.parseVehicle(new String(bytes, StandardCharsets.UTF_8));
+        } catch (IOException e) {
+            System.err.println("Error reading vehicle at offset " + index.offsetAt(position) + ": " + e.getMessage());
+            return null;
+        }
+    }
+}
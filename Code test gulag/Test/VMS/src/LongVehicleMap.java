@@ -0,0 +1,172 @@
+import java.util.Arrays;
+
+/**
+ * Open-addressing hash map from packed vehicle IDs to vehicles
+ * Keys are stored in a primitive long array with linear probing, so lookups need no
+ * String hashing and no boxing. Deletion uses backward shifting instead of tombstones.
+ */
+public class LongVehicleMap {
+    private static final float LOAD_FACTOR = 0.6f;
+
+    private long[] keys;
+    private Vehicle[] values;
+    private int size;
+    private int mask;
+    private int resizeThreshold;
+
+    public LongVehicleMap() {
+        this(16);
+    }
+
+    /**
+     * Constructor with an expected number of entries
+     * @param expectedSize Number of entries to size the table for
+     */
+    public LongVehicleMap(int expectedSize) {
+        int capacity = Integer.highestOneBit(Math.max(4, (int) (expectedSize / LOAD_FACTOR)) * 2 - 1);
+        allocate(capacity);
+    }
+
+    private void allocate(int capacity) {
+        keys = new long[capacity];
+        values = new Vehicle[capacity];
+        mask = capacity - 1;
+        resizeThreshold = (int) (capacity * LOAD_FACTOR);
+    }
+
+    /**
+     * Spreads the bits of a key so that sequential IDs do not cluster
+     */
+    private static int hash(long key) {
+        key ^= key >>> 33;
+        key *= 0xff51afd7ed558ccdL;
+        key ^= key >>> 33;
+        return (int) key;
+    }
+
+    /**
+     * Finds the slot holding a key
+     * @return The slot index, or -1 if the key is absent
+     */
+    private int indexOf(long key) {
+        int slot = hash(key) & mask;
+        while (values[slot] != null) {
+            if (keys[slot] == key) {
+                return slot;
+            }
+            slot = (slot + 1) & mask;
+        }
+        return -1;
+    }
+
+    /**
+     * Looks up a vehicle by packed ID
+     * @param key The packed ID
+     * @return The vehicle or null
+     */
+    public Vehicle get(long key) {
+        int slot = indexOf(key);
+        return slot < 0 ? null : values[slot];
+    }
+
+    /**
+     * Checks whether an ID is present
+     * @param key The packed ID
+     * @return true if the map holds the ID
+     */
+    public boolean containsKey(long key) {
+        return indexOf(key) >= 0;
+    }
+
+    /**
+     * Associates a vehicle with an ID
+     * @param key The packed ID
+     * @param value The vehicle (must not be null)
+     * @return The previous vehicle for the ID, or null
+     */
+    public Vehicle put(long key, Vehicle value) {
+        if (value == null) {
+            throw new IllegalArgumentException("Null values are not supported");
+        }
+
+        int slot = hash(key) & mask;
+        while (values[slot] != null) {
+            if (keys[slot] == key) {
+                Vehicle previous = values[slot];
+                values[slot] = value;
+                return previous;
+            }
+            slot = (slot + 1) & mask;
+        }
+
+        keys[slot] = key;
+        values[slot] = value;
+        if (++size > resizeThreshold) {
+            rehash(keys.length * 2);
+        }
+        return null;
+    }
+
+    /**
+     * Removes an ID from the map
+     * @param key The packed ID
+     * @return The removed vehicle, or null if the ID was absent
+     */
+    public Vehicle remove(long key) {
+        int slot = indexOf(key);
+        if (slot < 0) {
+            return null;
+        }
+
+        Vehicle removed = values[slot];
+        size--;
+
+        // Shift following entries of the probe chain back into the freed slot
+        int gap = slot;
+        int next = (gap + 1) & mask;
+        while (values[next] != null) {
+            int home = hash(keys[next]) & mask;
+            if (((next - home) & mask) >= ((next - gap) & mask)) {
+                keys[gap] = keys[next];
+                values[gap] = values[next];
+                gap = next;
+            }
+            next = (next + 1) & mask;
+        }
+        values[gap] = null;
+
+        return removed;
+    }
+
+    /**
+     * Removes all entries
+     */
+    public void clear() {
+        Arrays.fill(values, null);
+        size = 0;
+    }
+
+    /**
+     * @return Number of entries in the map
+     */
+    public int size() {
+        return size;
+    }
+
+    private void rehash(int newCapacity) {
+        long[] oldKeys = keys;
+        Vehicle[] oldValues = values;
+        allocate(newCapacity);
+
+        for (int i = 0; i < oldValues.length; i++) {
+            if (oldValues[i] != null) {
+                int slot = hash(oldKeys[i]) & mask;
+                while (values[slot] != null) {
+                    slot = (slot + 1) & mask;
+                }
+                keys[slot] = oldKeys[i];
+                values[slot] = oldValues[i];
+            }
+        }
+    }
+}
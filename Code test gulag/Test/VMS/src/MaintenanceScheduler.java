@@ -0,0 +1,305 @@
+import java.io.FilterOutputStream;
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.io.OutputStream;
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.function.LongSupplier;
+
+/**
+ * Runs storage maintenance such as compaction and snapshots off the request path
+ *
+ * Tasks run one at a time on a single low-priority daemon thread. Each task has a backlog,
+ * e.g. bytes appended since the last compaction, and runs once the backlog reaches its
+ * threshold, or once its interval has passed with any backlog at all. Everything a task writes
+ * goes through a shared token bucket, so maintenance never takes more than its share of disk
+ * bandwidth, and pausing the scheduler also stalls a task that is already running at its next
+ * write. Every run is measured: bytes written, CPU time, wall time, and time spent throttled.
+ */
+public class MaintenanceScheduler implements AutoCloseable {
+    private static final int CHUNK_BYTES = 64 << 10;
+
+    /**
+     * Work done by a task
+     */
+    public interface Job {
+        /**
+         * Runs the task once
+         * @param context Throttles the task's writes
+         * @throws IOException If the task fails; it is retried when next due
+         */
+        void run(Context context) throws IOException;
+    }
+
+    /**
+     * Handed to a running job to throttle its I/O
+     */
+    public final class Context {
+        private long bytesWritten;
+        private long throttledNanos;
+
+        private Context() {
+        }
+
+        /**
+         * Wraps a stream so writes to it are rate-limited, held while paused, and counted
+         * @param out The stream to write to
+         * @return The throttled stream
+         */
+        public OutputStream throttle(OutputStream out) {
+            return new FilterOutputStream(out) {
+                @Override
+                public void write(int b) throws IOException {
+                    acquire(1);
+                    out.write(b);
+                }
+
+                @Override
+                public void write(byte[] b, int off, int len) throws IOException {
+                    while (len > 0) {
+                        int chunk = Math.min(len, CHUNK_BYTES);
+                        acquire(chunk);
+                        out.write(b, off, chunk);
+                        off += chunk;
+                        len -= chunk;
+                    }
+                }
+            };
+        }
+
+        private void acquire(int bytes) throws IOException {
+            long start = System.nanoTime();
+            try {
+                awaitTokens(bytes);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new InterruptedIOException("Maintenance stopped");
+            }
+            throttledNanos += System.nanoTime() - start;
+            bytesWritten += bytes;
+        }
+    }
+
+    /**
+     * Cumulative cost of one task
+     */
+    public static final class TaskMetrics {
+        private final String name;
+        private final long backlog;
+        private final int runs;
+        private final int failures;
+        private final long bytesWritten;
+        private final long cpuNanos;
+        private final long wallNanos;
+        private final long throttledNanos;
+        private final long lastRunMillis;
+
+        TaskMetrics(Task task) {
+            this.name = task.name;
+            this.backlog = task.backlog.getAsLong();
+            this.runs = task.runs;
+            this.failures = task.failures;
+            this.bytesWritten = task.bytesWritten;
+            this.cpuNanos = task.cpuNanos;
+            this.wallNanos = task.wallNanos;
+            this.throttledNanos = task.throttledNanos;
+            this.lastRunMillis = task.lastRunMillis;
+        }
+
+        public String getName() { return name; }
+
+        /**
+         * @return Work currently waiting for the task, in the task's own unit
+         */
+        public long getBacklog() { return backlog; }
+
+        public int getRuns() { return runs; }
+
+        public int getFailures() { return failures; }
+
+        public long getBytesWritten() { return bytesWritten; }
+
+        public long getCpuNanos() { return cpuNanos; }
+
+        public long getWallNanos() { return wallNanos; }
+
+        /**
+         * @return Time spent waiting for the rate limit or a pause
+         */
+        public long getThrottledNanos() { return throttledNanos; }
+
+        /**
+         * @return When the task last finished, or 0 if it never ran
+         */
+        public long getLastRunMillis() { return lastRunMillis; }
+
+        @Override
+        public String toString() {
+            return String.format("%s: %d runs (%d failed), backlog %d, wrote %.1f MB, cpu %.0f ms, wall %.0f ms, "
+                    + "throttled %.0f ms", name, runs, failures, backlog, bytesWritten / 1e6, cpuNanos / 1e6,
+                    wallNanos / 1e6, throttledNanos / 1e6);
+        }
+    }
+
+    private static final class Task {
+        final String name;
+        final LongSupplier backlog;
+        final long threshold;
+        final long intervalMillis;
+        final Job job;
+
+        // Written by the maintenance thread only
+        volatile int runs;
+        volatile int failures;
+        volatile long bytesWritten;
+        volatile long cpuNanos;
+        volatile long wallNanos;
+        volatile long throttledNanos;
+        volatile long lastRunMillis;
+
+        Task(String name, LongSupplier backlog, long threshold, long intervalMillis, Job job) {
+            this.name = name;
+            this.backlog = backlog;
+            this.threshold = threshold;
+            this.intervalMillis = intervalMillis;
+            this.job = job;
+            this.lastRunMillis = System.currentTimeMillis();
+        }
+
+        boolean isDue(long now) {
+            long pending = backlog.getAsLong();
+            return pending >= threshold || (pending > 0 && intervalMillis > 0 && now - lastRunMillis >= intervalMillis);
+        }
+    }
+
+    private final List<Task> tasks = new CopyOnWriteArrayList<>();
+    private final ScheduledExecutorService executor;
+    private final ThreadMXBean threads = ManagementFactory.getThreadMXBean();
+
+    // Token bucket, holding at most one second's worth of bytes
+    private final long bytesPerSecond;
+    private long tokens;
+    private long refilledNanos = System.nanoTime();
+    private boolean paused;
+
+    /**
+     * Starts the scheduler
+     * @param bytesPerSecond Write bandwidth shared by all tasks
+     * @param checkIntervalMillis How often thresholds are checked
+     */
+    public MaintenanceScheduler(long bytesPerSecond, long checkIntervalMillis) {
+        this.bytesPerSecond = Math.max(CHUNK_BYTES, bytesPerSecond);
+        this.executor = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "maintenance");
+            thread.setDaemon(true);
+            thread.setPriority(Thread.MIN_PRIORITY);
+            return thread;
+        });
+        executor.scheduleWithFixedDelay(this::runDueTasks, checkIntervalMillis, checkIntervalMillis,
+                                        TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * Adds a task
+     * @param name Name shown in metrics
+     * @param backlog Reports how much work is waiting
+     * @param threshold Backlog at which the task runs
+     * @param intervalMillis Time after which any backlog is worked off, or 0 for no time trigger
+     * @param job The work
+     */
+    public void schedule(String name, LongSupplier backlog, long threshold, long intervalMillis, Job job) {
+        tasks.add(new Task(name, backlog, threshold, intervalMillis, job));
+    }
+
+    /**
+     * Holds all maintenance writes, including those of a running task, until resume
+     */
+    public synchronized void pause() {
+        paused = true;
+    }
+
+    /**
+     * Lets maintenance continue after pause
+     */
+    public synchronized void resume() {
+        paused = false;
+        notifyAll();
+    }
+
+    /**
+     * @return true while paused
+     */
+    public synchronized boolean isPaused() {
+        return paused;
+    }
+
+    /**
+     * @return Cost of every task so far
+     */
+    public List<TaskMetrics> getMetrics() {
+        List<TaskMetrics> metrics = new ArrayList<>();
+        for (Task task : tasks) {
+            metrics.add(new TaskMetrics(task));
+        }
+        return metrics;
+    }
+
+    /**
+     * Stops the maintenance thread, interrupting a running task
+     */
+    @Override
+    public void close() {
+        executor.shutdownNow();
+    }
+
+    private void runDueTasks() {
+        for (Task task : tasks) {
+            if (isPaused() || !task.isDue(System.currentTimeMillis())) {
+                continue;
+            }
+            Context context = new Context();
+            long cpuStart = threads.getCurrentThreadCpuTime();
+            long wallStart = System.nanoTime();
+            try {
+                task.job.run(context);
+                task.runs++;
+            } catch (IOException | RuntimeException e) {
+                task.failures++;
+                System.err.println("Maintenance task " + task.name + " failed: " + e.getMessage());
+            } finally {
+                task.cpuNanos += threads.getCurrentThreadCpuTime() - cpuStart;
+                task.wallNanos += System.nanoTime() - wallStart;
+                task.bytesWritten += context.bytesWritten;
+                task.throttledNanos += context.throttledNanos;
+                task.lastRunMillis = System.currentTimeMillis();
+            }
+            if (Thread.currentThread().isInterrupted()) {
+                return;
+            }
+        }
+    }
+
+    private synchronized void awaitTokens(long bytes) throws InterruptedException {
+        while (true) {
+            while (paused) {
+                wait();
+            }
+            long now = System.nanoTime();
+            long elapsed = Math.min(now - refilledNanos, 1_000_000_000L);
+            tokens = Math.min(bytesPerSecond, tokens + elapsed * bytesPerSecond / 1_000_000_000L);
+            refilledNanos = now;
+            if (tokens >= bytes) {
+                tokens -= bytes;
+                return;
+            }
+            long waitNanos = (bytes - tokens) * 1_000_000_000L / bytesPerSecond;
+            wait(Math.max(1, waitNanos / 1_000_000));
+        }
+    }
+}
@@ -0,0 +1,175 @@
+/**
+ * Fixed-point money amounts held as a long number of cents
+ *
+ * Amounts add exactly with integer arithmetic, and formatting writes digits directly
+ * instead of going through String.format.
+ */
+public final class Money {
+    // Longest output: '$', '-', 17 integer digits, '.', 2 fraction digits
+    private static final int MAX_CHARS = 22;
+
+    private Money() {
+    }
+
+    /**
+     * Converts a decimal amount to cents, rounding to the nearest cent
+     * @param amount The amount in currency units
+     * @return The amount in cents; NaN converts to 0
+     */
+    public static long toCents(double amount) {
+        return Math.round(amount * 100);
+    }
+
+    /**
+     * Converts cents to a decimal amount
+     * @param cents The amount in cents
+     * @return The amount in currency units
+     */
+    public static double toDouble(long cents) {
+        return cents / 100.0;
+    }
+
+    /**
+     * Formats an amount as currency, e.g. 123456 as "$1234.56"
+     * Matches String.format("$%.2f") for every amount.
+     * @param cents The amount in cents
+     * @return The formatted amount
+     */
+    public static String format(long cents) {
+        char[] chars = new char[MAX_CHARS];
+        int start = writeDecimal(chars, cents);
+        chars[--start] = '$';
+        return new String(chars, start, MAX_CHARS - start);
+    }
+
+    /**
+     * Appends an amount as a plain decimal with two fraction digits, e.g. "-12.05"
+     * Used for stored values, where it reads back as the same JSON number.
+     * @param builder The builder to append to
+     * @param cents The amount in cents
+     */
+    public static void appendDecimal(StringBuilder builder, long cents) {
+        // Work on the negative magnitude so Long.MIN_VALUE needs no special case
+        long value = cents < 0 ? cents : -cents;
+        if (cents < 0) {
+            builder.append('-');
+        }
+        builder.append(-(value / 100)).append('.');
+        int fraction = (int) -(value % 100);
+        if (fraction < 10) {
+            builder.append('0');
+        }
+        builder.append(fraction);
+    }
+
+    /**
+     * Formats an amount as a plain decimal, e.g. for prompts
+     * @param cents The amount in cents
+     * @return The amount with two fraction digits
+     */
+    public static String toDecimalString(long cents) {
+        char[] chars = new char[MAX_CHARS];
+        int start = writeDecimal(chars, cents);
+        return new String(chars, start, MAX_CHARS - start);
+    }
+
+    /**
+     * Parses an amount such as "1234.5", "$1234.56" or "-3"
+     * Digits beyond the cents are rounded half up; exponents fall back to double parsing.
+     * @param text The amount
+     * @return The amount in cents
+     * @throws NumberFormatException If the text is not an amount
+     */
+    public static long parse(String text) {
+        char[] chars = text.trim().toCharArray();
+        return parse(chars, 0, chars.length);
+    }
+
+    /**
+     * Parses an amount from part of a buffer without creating a string, as parse(String) does
+     * @param chars The buffer
+     * @param from Start of the amount
+     * @param to End of the amount (exclusive)
+     * @return The amount in cents
+     * @throws NumberFormatException If the characters are not an amount
+     */
+    public static long parse(char[] chars, int from, int to) {
+        int i = from < to && chars[from] == '$' ? from + 1 : from;
+        boolean negative = i < to && chars[i] == '-';
+        if (negative || (i < to && chars[i] == '+')) {
+            i++;
+        }
+        for (int j = i; j < to; j++) {
+            if (chars[j] == 'e' || chars[j] == 'E') {
+                int start = i - (negative ? 1 : 0);
+                return toCents(Double.parseDouble(new String(chars, start, to - start)));
+            }
+        }
+
+        long units = 0;
+        int digits = 0;
+        for (; i < to && isDigit(chars[i]); i++, digits++) {
+            units = Math.addExact(Math.multiplyExact(units, 10), chars[i] - '0');
+        }
+        long fraction = 0;
+        if (i < to && chars[i] == '.') {
+            int place = 0;
+            for (i++; i < to && isDigit(chars[i]); i++, place++, digits++) {
+                int digit = chars[i] - '0';
+                if (place < 2) {
+                    fraction = fraction * 10 + digit;
+                } else if (place == 2 && digit >= 5) {
+                    fraction++;
+                }
+            }
+            if (place == 1) {
+                fraction *= 10;
+            }
+        }
+        if (digits == 0 || i != to) {
+            throw new NumberFormatException("Invalid amount: " + new String(chars, from, to - from));
+        }
+
+        long cents = Math.addExact(Math.multiplyExact(units, 100), fraction);
+        return negative ? -cents : cents;
+    }
+
+    private static boolean isDigit(char c) {
+        return c >= '0' && c <= '9';
+    }
+
+    /**
+     * Sums the prices of vehicles exactly
+     * @param vehicles The vehicles
+     * @return Total price in cents
+     */
+    public static long totalCents(Iterable<? extends Vehicle> vehicles) {
+        long total = 0;
+        for (Vehicle vehicle : vehicles) {
+            total += vehicle.getPriceCents();
+        }
+        return total;
+    }
+
+    /**
+     * Writes an amount right-aligned at the end of a buffer
+     * @return Index of the first written character
+     */
+    private static int writeDecimal(char[] chars, long cents) {
+        int position = chars.length;
+        long value = cents < 0 ? cents : -cents;
+        for (int i = 0; i < 2; i++) {
+            chars[--position] = (char) ('0' - value % 10);
+            value /= 10;
+        }
+        chars[--position] = '.';
+        do {
+            chars[--position] = (char) ('0' - value % 10);
+            value /= 10;
+        } while (value != 0);
+        if (cents < 0) {
+            chars[--position] = '-';
+        }
+        return position;
+    }
+}
@@ -8,21 +8,26 @@ public class Motorcycle extends Vehicle {
     
     public Motorcycle(String id, String make, String model, int year, String color, double price, 
                      String bikeType, int engineCC, boolean hasFairing) {
-        super(id, make, model, year, color, price);
-        this.bikeType = bikeType;
+        this(VehicleId.parse(id), make, model, year, color, Money.toCents(price), bikeType, engineCC, hasFairing);
+    }
+    
+    public Motorcycle(long id, String make, String model, int year, String color, long priceCents, 
+                     String bikeType, int engineCC, boolean hasFairing) {
+        super(id, make, model, year, color, priceCents);
+        this.bikeType = StringPool.intern(bikeType);
         this.engineCC = engineCC;
         this.hasFairing = hasFairing;
     }
     
     // Getters and setters
     public String getBikeType() { return bikeType; }
-    public void setBikeType(String bikeType) { this.bikeType = bikeType; }
+    public void setBikeType(String bikeType) { this.bikeType = StringPool.intern(bikeType); touch(); }
     
     public int getEngineCC() { return engineCC; }
-    public void setEngineCC(int engineCC) { this.engineCC = engineCC; }
+    public void setEngineCC(int engineCC) { this.engineCC = engineCC; touch(); }
     
     public boolean getHasFairing() { return hasFairing; }
-    public void setHasFairing(boolean hasFairing) { this.hasFairing = hasFairing; }
+    public void setHasFairing(boolean hasFairing) { this.hasFairing = hasFairing; touch(); }
     
     @Override
     public String toString() {
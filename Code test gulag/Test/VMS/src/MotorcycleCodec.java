@@ -0,0 +1,38 @@
+/**
+ * Codec for motorcycles
+ */
+public class MotorcycleCodec extends VehicleCodec<Motorcycle> {
+
+    public MotorcycleCodec() {
+        super("Motorcycle", Motorcycle.class,
+              new Field("bikeType", "Bike type", "Bike Type", Kind.STRING,
+                        v -> ((Motorcycle) v).getBikeType(), (v, value) -> ((Motorcycle) v).setBikeType((String) value)),
+              new Field("engineCC", "Engine CC", "Engine", Kind.INT,
+                        v -> ((Motorcycle) v).getEngineCC(), (v, value) -> ((Motorcycle) v).setEngineCC((Integer) value)),
+              new Field("hasFairing", "Has fairing", "Fairing", Kind.BOOLEAN,
+                        v -> ((Motorcycle) v).getHasFairing(), (v, value) -> ((Motorcycle) v).setHasFairing((Boolean) value)));
+    }
+
+    @Override
+    public Motorcycle read(long id, String make, String model, int year, String color, long priceCents,
+                           FieldReader in) {
+        return new Motorcycle(id, make, model, year, color, priceCents,
+                              in.readString("bikeType", ""),
+                              in.readInt("engineCC", 0),
+                              in.readBoolean("hasFairing", false));
+    }
+
+    @Override
+    protected void writeFields(Motorcycle motorcycle, FieldWriter out) {
+        out.writeString("bikeType", motorcycle.getBikeType());
+        out.writeInt("engineCC", motorcycle.getEngineCC());
+        out.writeBoolean("hasFairing", motorcycle.getHasFairing());
+    }
+
+    @Override
+    protected void renderFields(Motorcycle motorcycle, String[] cells, int offset) {
+        cells[offset] = motorcycle.getBikeType();
+        cells[offset + 1] = String.valueOf(motorcycle.getEngineCC()) + "cc";
+        cells[offset + 2] = motorcycle.getHasFairing() ? "Yes" : "No";
+    }
+}
@@ -0,0 +1,88 @@
+import java.lang.management.GarbageCollectorMXBean;
+import java.lang.management.ManagementFactory;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+/**
+ * Compares heap use and GC work of a heap fleet with OffHeapVehicleStore
+ *
+ * Builds the same fleet both ways, then reports the live heap after a full collection, the GC
+ * time spent while building, and the time of a price scan over each representation.
+ * Run each mode in its own JVM for clean numbers.
+ * Usage: java OffHeapBenchmark [fleetSize] [heap|direct|mapped] [mappedFile]
+ */
+public class OffHeapBenchmark {
+
+    public static void main(String[] args) {
+        int fleetSize = args.length > 0 ? Integer.parseInt(args[0]) : 2_000_000;
+        String mode = args.length > 1 ? args[1] : "direct";
+        String mappedFile = args.length > 2 ? args[2] : "offheap-benchmark.bin";
+
+        long baseline = usedHeapAfterGc();
+        long gcBefore = gcMillis();
+        long start = System.nanoTime();
+
+        Random random = new Random(5);
+        IdAllocator allocator = new IdAllocator(1);
+        List<Vehicle> heapFleet = null;
+        OffHeapVehicleStore offHeap = null;
+        if (mode.equals("heap")) {
+            heapFleet = new ArrayList<>();
+        } else {
+            offHeap = OffHeapVehicleStore.open(mode.equals("mapped") ? new java.io.File(mappedFile) : null);
+            if (offHeap == null) {
+                return;
+            }
+        }
+        for (int i = 0; i < fleetSize; i++) {
+            Vehicle vehicle = new Car(allocator.next(), "Toyota", "Model " + random.nextInt(100_000),
+                                      1990 + random.nextInt(35), "Silver", random.nextInt(10_000_000),
+                                      4, "Automatic", 1 + random.nextInt(40) / 10.0);
+            if (heapFleet != null) {
+                heapFleet.add(vehicle);
+            } else {
+                offHeap.put(vehicle);
+            }
+        }
+        double buildMillis = (System.nanoTime() - start) / 1e6;
+        long buildGc = gcMillis() - gcBefore;
+        long retained = usedHeapAfterGc() - baseline;
+
+        long[] total = new long[1];
+        start = System.nanoTime();
+        for (int pass = 0; pass < 5; pass++) {
+            total[0] = 0;
+            if (heapFleet != null) {
+                for (Vehicle vehicle : heapFleet) {
+                    total[0] += vehicle.getPriceCents();
+                }
+            } else {
+                offHeap.forEach(cursor -> total[0] += cursor.getPriceCents());
+            }
+        }
+        double scanMillis = (System.nanoTime() - start) / 1e6 / 5;
+
+        System.out.printf("%-7s %,d vehicles: build %.0f ms (GC %d ms), retained heap %.1f MB, off-heap %.1f MB, "
+                + "price scan %.1f ms, total %s%n",
+                mode, fleetSize, buildMillis, buildGc, retained / 1e6,
+                offHeap != null ? offHeap.getAllocatedBytes() / 1e6 : 0.0, scanMillis, Money.format(total[0]));
+        if (offHeap != null) {
+            offHeap.close();
+        }
+    }
+
+    private static long usedHeapAfterGc() {
+        System.gc();
+        Runtime runtime = Runtime.getRuntime();
+        return runtime.totalMemory() - runtime.freeMemory();
+    }
+
+    private static long gcMillis() {
+        long total = 0;
+        for (GarbageCollectorMXBean bean : ManagementFactory.getGarbageCollectorMXBeans()) {
+            total += Math.max(0, bean.getCollectionTime());
+        }
+        return total;
+    }
+}
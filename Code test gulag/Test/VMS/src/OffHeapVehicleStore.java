@@ -0,0 +1,516 @@
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.util.AbstractList;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.function.Consumer;
+
+/**
+ * Fleet held outside the Java heap in fixed-layout records
+ *
+ * Each vehicle is one fixed-size record in a direct or file-mapped buffer: ID, price in cents,
+ * type tag and year as primitives, then references into a string arena for make, model and
+ * color, then one 8-byte slot per type-specific field in codec order. The heap only holds the
+ * buffers themselves and a primitive ID-to-row table, so GC work does not grow with the fleet.
+ * Records are kept dense: a deletion moves the last record into the freed row.
+ *
+ * Vehicles handed out by get() are detached copies that callers change and put() back. Scans
+ * can instead use a Cursor, a single reusable view that reads fields straight from a record.
+ * The store only holds the fleet in memory; the JSON data file is still rewritten in full from
+ * asList() whenever a change is saved.
+ */
+public class OffHeapVehicleStore {
+    // Record layout; string fields hold arena references, -1 for null
+    private static final int ID = 0;
+    private static final int PRICE = 8;
+    private static final int TYPE = 16;
+    private static final int YEAR = 20;
+    private static final int MAKE = 24;
+    private static final int MODEL = 32;
+    private static final int COLOR = 40;
+    private static final int SPECS = 48;
+
+    private static final int ROWS_PER_CHUNK_SHIFT = 15;
+    private static final int ROWS_PER_CHUNK = 1 << ROWS_PER_CHUNK_SHIFT;
+    private static final int STRING_CHUNK_BYTES = 1 << 20;
+
+    // Distinct strings pooled in the arena; beyond this new values are stored without pooling
+    private static final int STRING_POOL_LIMIT = 1 << 16;
+
+    private final int rowBytes;
+    private final List<ByteBuffer> rowChunks = new ArrayList<>();
+    private final List<ByteBuffer> stringChunks = new ArrayList<>();
+    private final Map<String, Long> stringRefs = new HashMap<>();
+    private final RowTable rows = new RowTable();
+    private int size;
+
+    // Backing file for file-mapped storage, or null for direct buffers
+    private final File backingFile;
+    private final FileChannel channel;
+    private long mappedBytes;
+
+    /**
+     * Opens a store in direct buffers, or mapped from a scratch file if one is given
+     * A file-backed store lets the OS page records out instead of keeping them resident.
+     * The file is scratch space for this process; it is truncated on open and deleted on close.
+     * @param backingFile The scratch file, or null for direct buffers
+     * @return The store, or null if the file cannot be opened
+     */
+    public static OffHeapVehicleStore open(File backingFile) {
+        if (backingFile == null) {
+            return new OffHeapVehicleStore(null, null);
+        }
+        try {
+            RandomAccessFile file = new RandomAccessFile(backingFile, "rw");
+            file.setLength(0);
+            return new OffHeapVehicleStore(backingFile, file.getChannel());
+        } catch (IOException e) {
+            System.err.println("Error opening off-heap file " + backingFile + ": " + e.getMessage());
+            return null;
+        }
+    }
+
+    private OffHeapVehicleStore(File backingFile, FileChannel channel) {
+        this.backingFile = backingFile;
+        this.channel = channel;
+        int slots = 0;
+        for (VehicleCodec<?> codec : VehicleCodecs.all()) {
+            slots = Math.max(slots, codec.getFields().size());
+        }
+        this.rowBytes = SPECS + 8 * slots;
+    }
+
+    /**
+     * Returns the number of vehicles
+     * @return The fleet size
+     */
+    public synchronized int size() {
+        return size;
+    }
+
+    /**
+     * Checks whether a vehicle is stored
+     * @param id The packed vehicle ID
+     * @return true if the ID is present
+     */
+    public synchronized boolean contains(long id) {
+        return rows.get(id) >= 0;
+    }
+
+    /**
+     * Materialises a vehicle
+     * @param id The packed vehicle ID
+     * @return A detached copy of the vehicle, or null if absent
+     */
+    public synchronized Vehicle get(long id) {
+        int row = rows.get(id);
+        return row < 0 ? null : new Cursor().moveTo(row).toVehicle();
+    }
+
+    /**
+     * Stores a vehicle, replacing the record with the same ID
+     * @param vehicle The vehicle
+     */
+    public synchronized void put(Vehicle vehicle) {
+        VehicleCodec<?> codec = VehicleCodecs.of(vehicle);
+        int row = rows.get(vehicle.getIdValue());
+        if (row < 0) {
+            row = size;
+            if ((row >>> ROWS_PER_CHUNK_SHIFT) == rowChunks.size()) {
+                rowChunks.add(allocate(ROWS_PER_CHUNK * rowBytes));
+            }
+            rows.put(vehicle.getIdValue(), row);
+            size++;
+        }
+
+        ByteBuffer chunk = rowChunks.get(row >>> ROWS_PER_CHUNK_SHIFT);
+        int base = (row & (ROWS_PER_CHUNK - 1)) * rowBytes;
+        chunk.putLong(base + ID, vehicle.getIdValue());
+        chunk.putLong(base + PRICE, vehicle.getPriceCents());
+        chunk.putInt(base + TYPE, codec.getTag());
+        chunk.putInt(base + YEAR, vehicle.getYear());
+        chunk.putLong(base + MAKE, storeString(vehicle.getMake()));
+        chunk.putLong(base + MODEL, storeString(vehicle.getModel()));
+        chunk.putLong(base + COLOR, storeString(vehicle.getColor()));
+        List<VehicleCodec.Field> fields = codec.getFields();
+        codec.write(vehicle, new VehicleCodec.FieldWriter() {
+            private int slot(String name) {
+                for (int i = 0; i < fields.size(); i++) {
+                    if (fields.get(i).getName().equals(name)) {
+                        return base + SPECS + 8 * i;
+                    }
+                }
+                throw new IllegalStateException("Field " + name + " is not in the schema of " + codec.getTypeName());
+            }
+
+            @Override
+            public void writeInt(String name, int value) {
+                chunk.putLong(slot(name), value);
+            }
+
+            @Override
+            public void writeDouble(String name, double value) {
+                chunk.putLong(slot(name), Double.doubleToRawLongBits(value));
+            }
+
+            @Override
+            public void writeString(String name, String value) {
+                chunk.putLong(slot(name), storeString(value));
+            }
+
+            @Override
+            public void writeBoolean(String name, boolean value) {
+                chunk.putLong(slot(name), value ? 1 : 0);
+            }
+        });
+    }
+
+    /**
+     * Removes a vehicle, moving the last record into its row
+     * @param id The packed vehicle ID
+     * @return true if the vehicle was present
+     */
+    public synchronized boolean remove(long id) {
+        int row = rows.remove(id);
+        if (row < 0) {
+            return false;
+        }
+        int last = --size;
+        if (row != last) {
+            ByteBuffer from = rowChunks.get(last >>> ROWS_PER_CHUNK_SHIFT);
+            ByteBuffer to = rowChunks.get(row >>> ROWS_PER_CHUNK_SHIFT);
+            int fromBase = (last & (ROWS_PER_CHUNK - 1)) * rowBytes;
+            int toBase = (row & (ROWS_PER_CHUNK - 1)) * rowBytes;
+            for (int offset = 0; offset < rowBytes; offset += 8) {
+                to.putLong(toBase + offset, from.getLong(fromBase + offset));
+            }
+            rows.put(to.getLong(toBase + ID), row);
+        }
+        return true;
+    }
+
+    /**
+     * Materialises every vehicle in row order
+     * @return Detached copies of all vehicles
+     */
+    public synchronized List<Vehicle> getAll() {
+        List<Vehicle> vehicles = new ArrayList<>(size);
+        Cursor cursor = new Cursor();
+        for (int row = 0; row < size; row++) {
+            vehicles.add(cursor.moveTo(row).toVehicle());
+        }
+        return vehicles;
+    }
+
+    /**
+     * Returns a read-only list that materialises each vehicle when it is accessed
+     * Used to stream the fleet into a writer without holding it on the heap.
+     * The list must not be used across changes to the store.
+     * @return The list view
+     */
+    public List<Vehicle> asList() {
+        return new AbstractList<Vehicle>() {
+            private final Cursor cursor = new Cursor();
+
+            @Override
+            public Vehicle get(int index) {
+                synchronized (OffHeapVehicleStore.this) {
+                    if (index < 0 || index >= size) {
+                        throw new IndexOutOfBoundsException("Row " + index + " of " + size);
+                    }
+                    return cursor.moveTo(index).toVehicle();
+                }
+            }
+
+            @Override
+            public int size() {
+                return OffHeapVehicleStore.this.size();
+            }
+        };
+    }
+
+    /**
+     * Visits every record with a single reusable cursor
+     * The cursor is only valid inside the callback.
+     * @param action Called once per record
+     */
+    public synchronized void forEach(Consumer<Cursor> action) {
+        Cursor cursor = new Cursor();
+        for (int row = 0; row < size; row++) {
+            action.accept(cursor.moveTo(row));
+        }
+    }
+
+    /**
+     * Returns the bytes of record and string storage in use outside the heap
+     * @return Allocated off-heap bytes
+     */
+    public synchronized long getAllocatedBytes() {
+        long bytes = 0;
+        for (ByteBuffer chunk : rowChunks) {
+            bytes += chunk.capacity();
+        }
+        for (ByteBuffer chunk : stringChunks) {
+            bytes += chunk.capacity();
+        }
+        return bytes;
+    }
+
+    /**
+     * Releases the storage and deletes the backing file, if any
+     */
+    public synchronized void close() {
+        rowChunks.clear();
+        stringChunks.clear();
+        stringRefs.clear();
+        rows.clear();
+        size = 0;
+        if (channel != null) {
+            try {
+                channel.close();
+            } catch (IOException e) {
+                System.err.println("Error closing off-heap file: " + e.getMessage());
+            }
+            // Mapped regions stay valid until collected; on some platforms the delete only succeeds then
+            if (!backingFile.delete()) {
+                backingFile.deleteOnExit();
+            }
+        }
+    }
+
+    /**
+     * A reusable view of one record
+     * Reads fields directly from storage; only toVehicle() creates heap objects.
+     */
+    public final class Cursor {
+        private ByteBuffer chunk;
+        private int base;
+
+        private Cursor() {
+        }
+
+        Cursor moveTo(int row) {
+            chunk = rowChunks.get(row >>> ROWS_PER_CHUNK_SHIFT);
+            base = (row & (ROWS_PER_CHUNK - 1)) * rowBytes;
+            return this;
+        }
+
+        public long getIdValue() { return chunk.getLong(base + ID); }
+
+        public long getPriceCents() { return chunk.getLong(base + PRICE); }
+
+        public int getTypeTag() { return chunk.getInt(base + TYPE); }
+
+        public int getYear() { return chunk.getInt(base + YEAR); }
+
+        public String getMake() { return StringPool.intern(loadString(chunk.getLong(base + MAKE))); }
+
+        public String getModel() { return loadString(chunk.getLong(base + MODEL)); }
+
+        public String getColor() { return StringPool.intern(loadString(chunk.getLong(base + COLOR))); }
+
+        /**
+         * Creates a heap copy of the record
+         * @return The vehicle
+         */
+        public Vehicle toVehicle() {
+            VehicleCodec<?> codec = VehicleCodecs.byTag(getTypeTag());
+            List<VehicleCodec.Field> fields = codec.getFields();
+            return codec.read(getIdValue(), getMake(), getModel(), getYear(), getColor(),
+                              getPriceCents(), new VehicleCodec.FieldReader() {
+                private long slot(String name) {
+                    for (int i = 0; i < fields.size(); i++) {
+                        if (fields.get(i).getName().equals(name)) {
+                            return chunk.getLong(base + SPECS + 8 * i);
+                        }
+                    }
+                    throw new IllegalStateException("Field " + name + " is not in the schema of " + codec.getTypeName());
+                }
+
+                @Override
+                public int readInt(String name, int defaultValue) {
+                    return (int) slot(name);
+                }
+
+                @Override
+                public double readDouble(String name, double defaultValue) {
+                    return Double.longBitsToDouble(slot(name));
+                }
+
+                @Override
+                public String readString(String name, String defaultValue) {
+                    return StringPool.intern(loadString(slot(name)));
+                }
+
+                @Override
+                public boolean readBoolean(String name, boolean defaultValue) {
+                    return slot(name) != 0;
+                }
+            });
+        }
+    }
+
+    /**
+     * Copies a string into the arena
+     * Unpooled values are not reclaimed when their record is overwritten or removed.
+     * @return The arena reference, or -1 for null
+     */
+    private long storeString(String value) {
+        if (value == null) {
+            return -1;
+        }
+        Long pooled = stringRefs.get(value);
+        if (pooled != null) {
+            return pooled;
+        }
+
+        byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+        int needed = 4 + bytes.length;
+        ByteBuffer chunk = stringChunks.isEmpty() ? null : stringChunks.get(stringChunks.size() - 1);
+        if (chunk == null || chunk.remaining() < needed) {
+            chunk = allocate(Math.max(STRING_CHUNK_BYTES, needed));
+            stringChunks.add(chunk);
+        }
+        long ref = ((long) (stringChunks.size() - 1) << 32) | chunk.position();
+        chunk.putInt(bytes.length);
+        chunk.put(bytes);
+
+        if (stringRefs.size() < STRING_POOL_LIMIT) {
+            stringRefs.put(value, ref);
+        }
+        return ref;
+    }
+
+    private String loadString(long ref) {
+        if (ref < 0) {
+            return null;
+        }
+        ByteBuffer chunk = stringChunks.get((int) (ref >>> 32));
+        int offset = (int) ref;
+        int length = chunk.getInt(offset);
+        byte[] bytes = new byte[length];
+        chunk.get(offset + 4, bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+
+    /**
+     * Allocates a chunk of storage, either a direct buffer or the next region of the backing file
+     */
+    private ByteBuffer allocate(int bytes) {
+        ByteBuffer buffer;
+        if (channel == null) {
+            buffer = ByteBuffer.allocateDirect(bytes);
+        } else {
+            try {
+                buffer = channel.map(FileChannel.MapMode.READ_WRITE, mappedBytes, bytes);
+                mappedBytes += bytes;
+            } catch (IOException e) {
+                throw new IllegalStateException("Cannot grow off-heap file " + backingFile + ": " + e.getMessage(), e);
+            }
+        }
+        return buffer.order(ByteOrder.nativeOrder());
+    }
+
+    /**
+     * Open-addressing table from packed IDs to rows, in primitive arrays
+     * Deletion shifts entries back instead of leaving tombstones, as in LongVehicleMap.
+     */
+    private static final class RowTable {
+        private long[] keys;
+        // Row + 1, so that 0 marks an empty slot
+        private int[] values;
+        private int size;
+        private int mask;
+
+        RowTable() {
+            allocate(16);
+        }
+
+        private void allocate(int capacity) {
+            keys = new long[capacity];
+            values = new int[capacity];
+            mask = capacity - 1;
+        }
+
+        private static int hash(long key) {
+            key ^= key >>> 33;
+            key *= 0xff51afd7ed558ccdL;
+            key ^= key >>> 33;
+            return (int) key;
+        }
+
+        int get(long key) {
+            int slot = hash(key) & mask;
+            while (values[slot] != 0) {
+                if (keys[slot] == key) {
+                    return values[slot] - 1;
+                }
+                slot = (slot + 1) & mask;
+            }
+            return -1;
+        }
+
+        void put(long key, int row) {
+            int slot = hash(key) & mask;
+            while (values[slot] != 0) {
+                if (keys[slot] == key) {
+                    values[slot] = row + 1;
+                    return;
+                }
+                slot = (slot + 1) & mask;
+            }
+            keys[slot] = key;
+            values[slot] = row + 1;
+            if (++size > keys.length * 3 / 5) {
+                long[] oldKeys = keys;
+                int[] oldValues = values;
+                allocate(keys.length * 2);
+                size = 0;
+                for (int i = 0; i < oldKeys.length; i++) {
+                    if (oldValues[i] != 0) {
+                        put(oldKeys[i], oldValues[i] - 1);
+                    }
+                }
+            }
+        }
+
+        int remove(long key) {
+            int slot = hash(key) & mask;
+            while (values[slot] != 0 && keys[slot] != key) {
+                slot = (slot + 1) & mask;
+            }
+            if (values[slot] == 0) {
+                return -1;
+            }
+            int row = values[slot] - 1;
+            size--;
+
+            // Shift following entries of the probe chain back into the freed slot
+            int gap = slot;
+            int next = (gap + 1) & mask;
+            while (values[next] != 0) {
+                int home = hash(keys[next]) & mask;
+                if (((next - home) & mask) >= ((next - gap) & mask)) {
+                    keys[gap] = keys[next];
+                    values[gap] = values[next];
+                    gap = next;
+                }
+                next = (next + 1) & mask;
+            }
+            values[gap] = 0;
+            return row;
+        }
+
+        void clear() {
+            allocate(16);
+            size = 0;
+        }
+    }
+}
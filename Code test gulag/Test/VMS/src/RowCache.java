@@ -0,0 +1,68 @@
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Bounded LRU cache of rendered table rows, keyed by packed vehicle ID
+ * A row stays valid until the vehicle manager invalidates its ID, which it does for every add,
+ * update, delete and reload. Each entry also remembers the modification stamp of the instance
+ * it was rendered from, so a row is not reused for an instance with unsaved edits made through
+ * its setters. Only the cells are kept, not the vehicle, so rows of lazily loaded or off-heap
+ * vehicles are reused across materialisations without keeping those vehicles alive.
+ */
+public class RowCache {
+
+    private static final class Row {
+        final int version;
+        final String[] cells;
+
+        Row(int version, String[] cells) {
+            this.version = version;
+            this.cells = cells;
+        }
+    }
+
+    private final LinkedHashMap<Long, Row> rows;
+
+    /**
+     * Constructor
+     * @param maxEntries Maximum number of rows kept
+     */
+    public RowCache(int maxEntries) {
+        this.rows = new LinkedHashMap<Long, Row>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<Long, Row> eldest) {
+                return size() > maxEntries;
+            }
+        };
+    }
+
+    /**
+     * Returns the cached row for a vehicle if it is still current
+     * @param vehicle The vehicle
+     * @return The rendered cells, or null on a miss
+     */
+    public synchronized String[] get(Vehicle vehicle) {
+        Row row = rows.get(vehicle.getIdValue());
+        if (row != null && row.version == vehicle.getVersion()) {
+            return row.cells;
+        }
+        return null;
+    }
+
+    /**
+     * Stores the rendered row for a vehicle
+     * @param vehicle The vehicle
+     * @param cells The rendered cells
+     */
+    public synchronized void put(Vehicle vehicle, String[] cells) {
+        rows.put(vehicle.getIdValue(), new Row(vehicle.getVersion(), cells));
+    }
+
+    /**
+     * Drops the row for a vehicle
+     * @param id The packed vehicle ID
+     */
+    public synchronized void invalidate(long id) {
+        rows.remove(id);
+    }
+}
@@ -0,0 +1,108 @@
+import java.io.File;
+import java.util.Locale;
+
+/**
+ * Describes how the fleet is split across shard files in the sharded storage layout
+ * Vehicles are partitioned either by a hash of their ID or by vehicle type, with one
+ * shard per registered type in type tag order.
+ */
+public class ShardLayout {
+    public static final String MANIFEST_FILE = "manifest.json";
+    public static final int MANIFEST_VERSION = 1;
+
+    /**
+     * Strategy used to assign vehicles to shards
+     */
+    public enum Partition {
+        HASH, TYPE;
+
+        /**
+         * Parses a partition name, case-insensitively
+         * @param name "hash" or "type"
+         * @return The partition strategy
+         */
+        public static Partition fromName(String name) {
+            return "type".equalsIgnoreCase(name) ? TYPE : HASH;
+        }
+    }
+
+    private final File directory;
+    private final Partition partition;
+    private final int shardCount;
+
+    /**
+     * Constructor
+     * @param directory Directory holding the manifest and shard files
+     * @param partition Partition strategy
+     * @param shardCount Number of shards (ignored when partitioning by type)
+     */
+    public ShardLayout(File directory, Partition partition, int shardCount) {
+        if (partition == Partition.HASH && shardCount < 1) {
+            throw new IllegalArgumentException("Shard count must be at least 1");
+        }
+        this.directory = directory;
+        this.partition = partition;
+        this.shardCount = partition == Partition.TYPE ? VehicleCodecs.size() : shardCount;
+    }
+
+    public File getDirectory() { return directory; }
+
+    public Partition getPartition() { return partition; }
+
+    public int getShardCount() { return shardCount; }
+
+    public File getManifestFile() {
+        return new File(directory, MANIFEST_FILE);
+    }
+
+    /**
+     * Returns the file holding a shard
+     * @param shard The shard index
+     * @return The shard file
+     */
+    public File getShardFile(int shard) {
+        if (partition == Partition.TYPE) {
+            String typeName = VehicleCodecs.byTag(shard).getTypeName().toLowerCase(Locale.ROOT);
+            return new File(directory, "shard-" + typeName + ".json");
+        }
+        return new File(directory, String.format("shard-%03d.json", shard));
+    }
+
+    /**
+     * Returns the shard a vehicle belongs to
+     * @param vehicle The vehicle
+     * @return The shard index
+     */
+    public int shardOf(Vehicle vehicle) {
+        if (partition == Partition.TYPE) {
+            // Unregistered types share the first shard
+            return Math.max(0, vehicle.getTypeTag());
+        }
+
+        long id = vehicle.getIdValue();
+        id ^= id >>> 33;
+        id *= 0xff51afd7ed558ccdL;
+        id ^= id >>> 33;
+        return (int) Math.floorMod(id, (long) shardCount);
+    }
+
+    /**
+     * Checks whether a manifest describes the same layout
+     * @param partitionName The partition recorded in the manifest
+     * @param count The shard count recorded in the manifest
+     * @return true if the manifest matches this layout
+     */
+    public boolean matches(String partitionName, int count) {
+        return Partition.fromName(partitionName) == partition && count == shardCount;
+    }
+
+    /**
+     * Renders the manifest describing this layout
+     * @return The manifest JSON
+     */
+    public String toManifestJson() {
+        return "{\"version\":" + MANIFEST_VERSION
+                + ",\"partition\":\"" + partition.name().toLowerCase() + "\""
+                + ",\"shardCount\":" + shardCount + "}";
+    }
+}
@@ -0,0 +1,310 @@
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.channels.FileLock;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Coordinates several processes working on the same data file
+ *
+ * A lock file next to the data file is locked with FileChannel locks around every load and
+ * write, and holds a small header: the journal epoch, the committed journal length, and the
+ * length the previous epoch's journal had if it was compacted rather than invalidated. Each
+ * write appends one line per changed vehicle to a journal file ("U &lt;id&gt; &lt;json&gt;" or
+ * "D &lt;id&gt;")
+ * and then advances the committed length, so a process can tell it is stale by reading the
+ * header and catch up by reading only the journal bytes it has not seen. A full rewrite of the
+ * data file, or a journal grown past its limit, starts a new epoch with an empty journal;
+ * processes that had not caught up by then reload the whole file. Compacting the journal also
+ * starts a new epoch, but processes that had read all of the old journal simply carry on.
+ */
+public class SharedDataFile implements AutoCloseable {
+    private static final long JOURNAL_LIMIT = 4L << 20;
+    private static final int HEADER_BYTES = 24;
+
+    // One holder per data file in this JVM; FileChannel locks cannot be nested or overlapped within a JVM
+    private static final Map<String, LockHolder> HOLDERS = new ConcurrentHashMap<>();
+
+    private static final class LockHolder {
+        FileLock lock;
+    }
+
+    /**
+     * A change recorded in the journal
+     */
+    public static final class Change {
+        private final long id;
+        private final String json;
+
+        /**
+         * Constructor
+         * @param id The packed vehicle ID
+         * @param json The vehicle's JSON record, or null for a deletion
+         */
+        public Change(long id, String json) {
+            this.id = id;
+            this.json = json;
+        }
+
+        public long getId() { return id; }
+
+        /**
+         * @return The vehicle's JSON record, or null if it was deleted
+         */
+        public String getJson() { return json; }
+    }
+
+    /**
+     * Work run while holding the lock
+     */
+    public interface LockedWork<T> {
+        T run() throws IOException;
+    }
+
+    private final File lockFile;
+    private final File journalFile;
+    private final RandomAccessFile lock;
+    private final LockHolder holder;
+
+    // Header of the last state this process has seen or written
+    private long seenEpoch = -1;
+    private long seenLength;
+
+    /**
+     * Opens the lock and journal files next to a data file, creating them if needed
+     * @param dataFile The shared data file
+     * @return The coordinator, or null if the lock file cannot be opened
+     */
+    public static SharedDataFile open(File dataFile) {
+        File lockFile = new File(dataFile.getPath() + ".lock");
+        try {
+            return new SharedDataFile(lockFile, new File(dataFile.getPath() + ".journal"),
+                                      new RandomAccessFile(lockFile, "rw"));
+        } catch (IOException e) {
+            System.err.println("Error opening lock file " + lockFile + ": " + e.getMessage());
+            return null;
+        }
+    }
+
+    private SharedDataFile(File lockFile, File journalFile, RandomAccessFile lock) throws IOException {
+        this.lockFile = lockFile;
+        this.journalFile = journalFile;
+        this.lock = lock;
+        this.holder = HOLDERS.computeIfAbsent(lockFile.getCanonicalPath(), path -> new LockHolder());
+    }
+
+    /**
+     * Runs work while holding the file lock
+     * Calls nested inside an exclusive section run directly. A shared section must not
+     * nest an exclusive one.
+     * @param exclusive true to write, false to read
+     * @param work The work
+     * @return The work's result
+     * @throws IOException If locking or the work fails
+     */
+    public <T> T locked(boolean exclusive, LockedWork<T> work) throws IOException {
+        synchronized (holder) {
+            if (holder.lock != null) {
+                if (exclusive && holder.lock.isShared()) {
+                    throw new IllegalStateException("Cannot upgrade a shared lock on " + lockFile);
+                }
+                return work.run();
+            }
+            holder.lock = lock.getChannel().lock(0, Long.MAX_VALUE, !exclusive);
+            try {
+                return work.run();
+            } finally {
+                FileLock held = holder.lock;
+                holder.lock = null;
+                held.release();
+            }
+        }
+    }
+
+    /**
+     * Marks the current state of the file as seen, e.g. after loading it in full
+     * Call with the lock held.
+     * @throws IOException If the header cannot be read
+     */
+    public void markSeen() throws IOException {
+        long[] header = readHeader();
+        seenEpoch = header[0];
+        seenLength = header[1];
+    }
+
+    /**
+     * Checks without locking whether another process has written since this one last looked
+     * A single read of the header; the answer may be outdated by the time it is used.
+     * @return true if the file has changed
+     */
+    public boolean isStale() {
+        synchronized (holder) {
+            try {
+                long[] header = readHeader();
+                return header[0] != seenEpoch || header[1] != seenLength;
+            } catch (IOException e) {
+                return true;
+            }
+        }
+    }
+
+    /**
+     * Reads the committed journal length without locking
+     * @return Bytes in the current epoch's journal
+     */
+    public long getJournalLength() {
+        synchronized (holder) {
+            try {
+                return readHeader()[1];
+            } catch (IOException e) {
+                return 0;
+            }
+        }
+    }
+
+    /**
+     * Reads the changes written by other processes since this one last looked
+     * Call with the lock held.
+     * @return The changes in the order they were made, or null if the file must be reloaded in full
+     * @throws IOException If the journal cannot be read
+     */
+    public List<Change> readChanges() throws IOException {
+        long[] header = readHeader();
+        if (header[0] == seenEpoch + 1 && header[2] == seenLength && seenEpoch >= 0) {
+            // The journal was compacted after this process had read all of it
+            seenEpoch = header[0];
+            seenLength = 0;
+        }
+        if (header[0] != seenEpoch || header[1] < seenLength) {
+            seenEpoch = header[0];
+            seenLength = header[1];
+            return null;
+        }
+        if (header[1] == seenLength) {
+            return Collections.emptyList();
+        }
+
+        byte[] bytes = new byte[(int) (header[1] - seenLength)];
+        try (RandomAccessFile journal = new RandomAccessFile(journalFile, "r")) {
+            journal.seek(seenLength);
+            journal.readFully(bytes);
+        }
+        seenLength = header[1];
+
+        List<Change> changes = new ArrayList<>();
+        String text = new String(bytes, StandardCharsets.UTF_8);
+        int start = 0;
+        while (start < text.length()) {
+            int end = text.indexOf('\n', start);
+            if (end < 0) {
+                end = text.length();
+            }
+            int idEnd = text.indexOf(' ', start + 2);
+            if (idEnd < 0 || idEnd > end) {
+                idEnd = end;
+            }
+            String id = text.substring(Math.min(start + 2, end), idEnd);
+            if (VehicleId.isValid(id)) {
+                changes.add(new Change(VehicleId.parse(id), idEnd < end ? text.substring(idEnd + 1, end) : null));
+            }
+            start = end + 1;
+        }
+        return changes;
+    }
+
+    /**
+     * Appends this process's changes to the journal
+     * Call with the exclusive lock held, after readChanges.
+     * @param changes The changes, in the order they were made
+     * @throws IOException If the journal cannot be written
+     */
+    public void recordChanges(List<Change> changes) throws IOException {
+        StringBuilder entries = new StringBuilder();
+        for (Change change : changes) {
+            entries.append(change.json != null ? "U " : "D ").append(VehicleId.format(change.id));
+            if (change.json != null) {
+                entries.append(' ').append(change.json.replace('\n', ' '));
+            }
+            entries.append('\n');
+        }
+        byte[] bytes = entries.toString().getBytes(StandardCharsets.UTF_8);
+
+        long[] header = readHeader();
+        if (header[1] + bytes.length > JOURNAL_LIMIT) {
+            recordRewrite();
+            return;
+        }
+        try (RandomAccessFile journal = new RandomAccessFile(journalFile, "rw")) {
+            // Bytes past the committed length are left over from an interrupted write
+            journal.setLength(header[1]);
+            journal.seek(header[1]);
+            journal.write(bytes);
+            journal.getFD().sync();
+        }
+        writeHeader(header[0], header[1] + bytes.length, header[2]);
+    }
+
+    /**
+     * Starts a new epoch after the data file was rewritten in full
+     * Call with the exclusive lock held.
+     * @throws IOException If the journal cannot be reset
+     */
+    public void recordRewrite() throws IOException {
+        long[] header = readHeader();
+        try (RandomAccessFile journal = new RandomAccessFile(journalFile, "rw")) {
+            journal.setLength(0);
+        }
+        writeHeader(header[0] + 1, 0, -1);
+    }
+
+    /**
+     * Empties the journal without invalidating it for processes that have read all of it
+     * The data file already holds every journaled change, so only processes still behind
+     * have to reload. Call with the exclusive lock held, after readChanges.
+     * @return Bytes of journal dropped
+     * @throws IOException If the journal cannot be reset
+     */
+    public long compactJournal() throws IOException {
+        long[] header = readHeader();
+        if (header[1] == 0) {
+            return 0;
+        }
+        try (RandomAccessFile journal = new RandomAccessFile(journalFile, "rw")) {
+            journal.setLength(0);
+        }
+        writeHeader(header[0] + 1, 0, header[1]);
+        return header[1];
+    }
+
+    private long[] readHeader() throws IOException {
+        long size = lock.length();
+        if (size < 16) {
+            return new long[] {0, 0, -1};
+        }
+        lock.seek(0);
+        return new long[] {lock.readLong(), lock.readLong(), size < HEADER_BYTES ? -1 : lock.readLong()};
+    }
+
+    private void writeHeader(long epoch, long length, long compactedFrom) throws IOException {
+        lock.seek(0);
+        lock.writeLong(epoch);
+        lock.writeLong(length);
+        lock.writeLong(compactedFrom);
+        seenEpoch = epoch;
+        seenLength = length;
+    }
+
+    @Override
+    public void close() {
+        try {
+            lock.close();
+        } catch (IOException e) {
+            System.err.println("Error closing lock file " + lockFile + ": " + e.getMessage());
+        }
+    }
+}
@@ -0,0 +1,87 @@
+import java.util.Arrays;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Shared dictionary for low-cardinality vehicle attributes (make, color, transmission, ...)
+ * Every distinct value is stored once and handed out as the same String instance, so equal
+ * values can be compared by reference. Each value also gets a compact integer code that can be
+ * used in place of the String where a primitive representation is needed.
+ */
+public final class StringPool {
+    private static final ConcurrentHashMap<String, Integer> CODES = new ConcurrentHashMap<>();
+    private static final Object LOCK = new Object();
+
+    // Code -> value table, only ever grown under LOCK and then published
+    private static volatile String[] values = new String[64];
+    private static int size = 0;
+
+    private StringPool() {
+    }
+
+    /**
+     * Returns the canonical instance of a value, adding it to the pool if needed
+     * @param value The value to intern (may be null)
+     * @return The pooled instance, or null if value was null
+     */
+    public static String intern(String value) {
+        if (value == null) {
+            return null;
+        }
+        return values[codeOf(value)];
+    }
+
+    /**
+     * Returns the integer code of a value, adding it to the pool if needed
+     * @param value The value to encode
+     * @return The code of the value
+     */
+    public static int codeOf(String value) {
+        if (value == null) {
+            throw new IllegalArgumentException("Cannot encode a null value");
+        }
+
+        Integer code = CODES.get(value);
+        if (code != null) {
+            return code;
+        }
+
+        synchronized (LOCK) {
+            code = CODES.get(value);
+            if (code != null) {
+                return code;
+            }
+
+            String[] table = values;
+            if (size == table.length) {
+                table = Arrays.copyOf(table, table.length * 2);
+            }
+            table[size] = value;
+            values = table;
+
+            // Publish the code only after the value is visible in the table
+            CODES.put(value, size);
+            return size++;
+        }
+    }
+
+    /**
+     * Returns the value for a code previously handed out by codeOf
+     * @param code The code to decode
+     * @return The pooled value
+     */
+    public static String valueOf(int code) {
+        String[] table = values;
+        if (code < 0 || code >= table.length || table[code] == null) {
+            throw new IllegalArgumentException("Unknown string pool code: " + code);
+        }
+        return table[code];
+    }
+
+    /**
+     * Returns the number of distinct values in the pool
+     * @return The pool size
+     */
+    public static int size() {
+        return CODES.size();
+    }
+}
@@ -0,0 +1,382 @@
+import java.io.ByteArrayOutputStream;
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.PrintStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Redraws the console in place with ANSI cursor addressing instead of clearing and reprinting it
+ *
+ * Once installed, everything printed to System.out is collected into the current frame, one
+ * string per line. Nothing reaches the terminal until the program reads input or the frame is
+ * replaced; then the frame is compared line by line with what the terminal shows and only the
+ * changed lines are rewritten, each by moving the cursor to its row, writing it, and erasing the
+ * rest of the row. The whole update goes out in one write and one flush.
+ * Lines wider than the terminal wrap onto several rows, which is taken into account when placing
+ * the lines below them. A frame taller than the terminal cannot be addressed by row, so from that
+ * point it is streamed as plain lines and the next frame starts with a full clear.
+ */
+public final class TerminalScreen {
+    private static final String ESC = "\033[";
+
+    private static volatile TerminalScreen current;
+
+    // The real standard output
+    private final PrintStream terminal;
+    private final int rows;
+    private final int columns;
+
+    // Lines the terminal shows from the top row, and which of them also hold echoed input
+    private final List<String> shown = new ArrayList<>();
+    private final List<Boolean> shownEchoed = new ArrayList<>();
+
+    // Frame being built, and which of its lines were completed by the user pressing Enter
+    private final List<String> frame = new ArrayList<>();
+    private final List<Boolean> echoed = new ArrayList<>();
+    private final ByteArrayOutputStream partial = new ByteArrayOutputStream(256);
+
+    // Index of the first frame line printed since input was last read
+    private int sinceInput;
+    
+    // Frame line holding the prompt being answered, or -1, and what has been typed on it so far
+    private int inputLine = -1;
+    private final ByteArrayOutputStream typed = new ByteArrayOutputStream(64);
+
+    // Set once the frame outgrew the terminal and is being streamed; the screen must then be cleared
+    private boolean scrolling;
+    private final StringBuilder update = new StringBuilder(1 << 12);
+
+    private TerminalScreen(PrintStream terminal, int rows, int columns) {
+        this.terminal = terminal;
+        this.rows = rows;
+        this.columns = columns;
+    }
+
+    /**
+     * Routes System.out through a screen buffer if the console can handle ANSI escapes
+     * Enabled when stdin and stdout are a terminal other than a dumb one; -Dvms.ansi=true or
+     * false overrides the check. The size is taken from -Dvms.screenRows and -Dvms.screenCols or
+     * the LINES and COLUMNS environment variables, assuming 24 by 80 otherwise. System.err is
+     * routed through the screen as well unless it is redirected elsewhere, since anything
+     * written past the screen would leave it out of step with the terminal.
+     * @return The installed screen, or null if output is left as it is
+     */
+    public static synchronized TerminalScreen install() {
+        if (current != null) {
+            return current;
+        }
+        String setting = System.getProperty("vms.ansi");
+        boolean enabled = setting != null ? Boolean.parseBoolean(setting) : isAnsiTerminal();
+        if (!enabled) {
+            return null;
+        }
+
+        TerminalScreen screen = new TerminalScreen(System.out, Integer.getInteger("vms.screenRows", environmentSize("LINES", 24)),
+                                                   Integer.getInteger("vms.screenCols", environmentSize("COLUMNS", 80)));
+        if (errorSharesTerminal()) {
+            System.setErr(new PrintStream(screen.new FrameStream(), true, StandardCharsets.UTF_8));
+        }
+        System.setOut(new PrintStream(screen.new FrameStream(), false, StandardCharsets.UTF_8));
+        System.setIn(new FilterInputStream(System.in) {
+            @Override
+            public int read() throws IOException {
+                screen.awaitInput();
+                int b = super.read();
+                if (b >= 0) {
+                    screen.recordInput(new byte[] {(byte) b}, 0, 1);
+                }
+                return b;
+            }
+
+            @Override
+            public int read(byte[] b, int off, int len) throws IOException {
+                screen.awaitInput();
+                int n = super.read(b, off, len);
+                if (n > 0) {
+                    screen.recordInput(b, off, n);
+                }
+                return n;
+            }
+        });
+        // Show whatever is printed last, e.g. the goodbye message
+        Runtime.getRuntime().addShutdownHook(new Thread(screen::flush, "screen-flush"));
+        current = screen;
+        return screen;
+    }
+
+    /**
+     * @return The installed screen, or null if output goes straight to the console
+     */
+    public static TerminalScreen current() {
+        return current;
+    }
+
+    private static boolean isAnsiTerminal() {
+        String term = System.getenv("TERM");
+        return System.console() != null && term != null && !term.equals("dumb")
+                && !System.getProperty("os.name").toLowerCase().contains("windows");
+    }
+
+    private static int environmentSize(String variable, int defaultValue) {
+        try {
+            String value = System.getenv(variable);
+            return value != null ? Math.max(2, Integer.parseInt(value.trim())) : defaultValue;
+        } catch (NumberFormatException e) {
+            return defaultValue;
+        }
+    }
+    
+    /**
+     * Checks whether stderr goes to the same place as stdout
+     * Where the descriptors cannot be inspected, they are assumed to share the terminal.
+     */
+    private static boolean errorSharesTerminal() {
+        try {
+            Path out = Paths.get("/proc/self/fd/1");
+            Path err = Paths.get("/proc/self/fd/2");
+            if (!Files.exists(out)) {
+                return true;
+            }
+            return Files.readSymbolicLink(out).equals(Files.readSymbolicLink(err));
+        } catch (IOException | UnsupportedOperationException e) {
+            return true;
+        }
+    }
+
+    /**
+     * Starts a new frame, as clearing the console would
+     * @param keepRecent true to start the frame with the lines printed since input was last read,
+     *                   such as the outcome of the previous command, so they stay visible
+     */
+    public synchronized void beginFrame(boolean keepRecent) {
+        List<String> recent = new ArrayList<>();
+        if (keepRecent && !scrolling) {
+            recent.addAll(frame.subList(Math.min(sinceInput, frame.size()), frame.size()));
+            if (partial.size() > 0) {
+                recent.add(partial.toString(StandardCharsets.UTF_8));
+            }
+            // Blank spacing lines would only shift the new frame against the old one
+            while (!recent.isEmpty() && recent.get(0).isBlank()) {
+                recent.remove(0);
+            }
+            while (!recent.isEmpty() && recent.get(recent.size() - 1).isBlank()) {
+                recent.remove(recent.size() - 1);
+            }
+        }
+        if (scrolling) {
+            update.append(ESC).append('H').append(ESC).append("2J");
+            shown.clear();
+            shownEchoed.clear();
+            scrolling = false;
+        }
+        frame.clear();
+        echoed.clear();
+        partial.reset();
+        sinceInput = 0;
+        inputLine = -1;
+        for (String line : recent) {
+            addLine(line);
+        }
+    }
+
+    /**
+     * Brings the terminal up to date with the frame
+     */
+    public synchronized void flush() {
+        if (scrolling) {
+            update.append(partial.toString(StandardCharsets.UTF_8));
+            partial.reset();
+        } else {
+            render();
+        }
+        flushUpdate();
+    }
+
+    /**
+     * Shows the frame before the program blocks on input, and notes that the user's Enter
+     * finishes the current line
+     */
+    private synchronized void awaitInput() {
+        flush();
+        String prompt = partial.toString(StandardCharsets.UTF_8);
+        partial.reset();
+        if (!scrolling && rowsUsed() + rowsOf(prompt) + 1 > rows) {
+            // The Enter will scroll the terminal
+            scrolling = true;
+        }
+        inputLine = -1;
+        if (!scrolling) {
+            if (shown.size() == frame.size()) {
+                shown.add(prompt);
+                shownEchoed.add(true);
+            }
+            inputLine = frame.size();
+            frame.add(prompt);
+            echoed.add(true);
+        }
+        sinceInput = frame.size();
+    }
+    
+    /**
+     * Adds what the terminal echoed of the user's input to the prompt line, since a long answer
+     * can wrap onto the next row
+     */
+    private synchronized void recordInput(byte[] b, int off, int len) {
+        for (int i = off; i < off + len; i++) {
+            if (b[i] != '\n') {
+                if (b[i] != '\r') {
+                    typed.write(b[i]);
+                }
+                continue;
+            }
+            if (inputLine >= 0 && typed.size() > 0) {
+                String text = typed.toString(StandardCharsets.UTF_8);
+                if (inputLine < frame.size()) {
+                    frame.set(inputLine, frame.get(inputLine) + text);
+                }
+                if (inputLine < shown.size() && shownEchoed.get(inputLine)) {
+                    shown.set(inputLine, shown.get(inputLine) + text);
+                }
+            }
+            typed.reset();
+            inputLine = -1;
+        }
+    }
+    
+    /**
+     * @param line A line of text without escapes
+     * @return Number of terminal rows the line takes up
+     */
+    private int rowsOf(String line) {
+        int width = line.codePointCount(0, line.length());
+        return Math.max(1, (width + columns - 1) / columns);
+    }
+    
+    private int rowsUsed() {
+        int used = 0;
+        for (String line : frame) {
+            used += rowsOf(line);
+        }
+        return used;
+    }
+
+    private void addLine(String line) {
+        if (scrolling) {
+            update.append(line).append('\n');
+            if (update.length() >= 1 << 16) {
+                flushUpdate();
+            }
+            return;
+        }
+        if (rowsUsed() + rowsOf(line) + 1 > rows) {
+            // The line and the cursor below it would not fit; show what does and stream the rest
+            render();
+            scrolling = true;
+            update.append(line).append('\n');
+            return;
+        }
+        frame.add(line);
+        echoed.add(false);
+    }
+
+    /**
+     * Appends the escapes that turn the shown lines into the frame, leaving the cursor after the
+     * partial line
+     */
+    private void render() {
+        // Row each line starts on, in the frame and on the terminal; a wrapped line pushes the rest down
+        int row = 0;
+        int shownRow = 0;
+        for (int i = 0; i < frame.size(); i++) {
+            String line = frame.get(i);
+            // A row holding typed input is rewritten unless the input belongs to this frame
+            boolean stale = i >= shown.size() || row != shownRow || !shown.get(i).equals(line)
+                    || !shownEchoed.get(i).equals(echoed.get(i));
+            if (stale) {
+                moveTo(row).append(line);
+                // A line that fills its last row leaves the cursor on that row's last character
+                if (line.isEmpty() || line.codePointCount(0, line.length()) % columns != 0) {
+                    update.append(ESC).append('K');
+                }
+            }
+            row += rowsOf(line);
+            if (i < shown.size()) {
+                shownRow += rowsOf(shown.get(i));
+            }
+        }
+        for (int i = frame.size(); i < shown.size(); i++) {
+            shownRow += rowsOf(shown.get(i));
+        }
+        String tail = partial.toString(StandardCharsets.UTF_8);
+        moveTo(row).append(tail);
+        if (shownRow > row + rowsOf(tail)) {
+            // Erase what the previous frame showed below this one
+            update.append(ESC).append('J');
+        } else {
+            update.append(ESC).append('K');
+        }
+
+        shown.clear();
+        shown.addAll(frame);
+        shownEchoed.clear();
+        shownEchoed.addAll(echoed);
+        if (!tail.isEmpty()) {
+            shown.add(tail);
+            shownEchoed.add(true);
+        }
+    }
+
+    private StringBuilder moveTo(int line) {
+        return update.append(ESC).append(line + 1).append(";1H");
+    }
+
+    private void flushUpdate() {
+        if (update.length() > 0) {
+            terminal.append(update);
+            update.setLength(0);
+        }
+        terminal.flush();
+    }
+
+    /**
+     * Splits what is printed to System.out and System.err into frame lines
+     */
+    private final class FrameStream extends OutputStream {
+        @Override
+        public void write(int b) {
+            synchronized (TerminalScreen.this) {
+                append((byte) b);
+            }
+        }
+
+        @Override
+        public void write(byte[] b, int off, int len) {
+            synchronized (TerminalScreen.this) {
+                for (int i = off; i < off + len; i++) {
+                    append(b[i]);
+                }
+            }
+        }
+
+        @Override
+        public void flush() {
+            // Output is shown when input is read or the frame is flushed, not on every println
+        }
+
+        private void append(byte b) {
+            if (b == '\n') {
+                String line = partial.toString(StandardCharsets.UTF_8);
+                partial.reset();
+                addLine(line);
+            } else if (b != '\r') {
+                partial.write(b);
+            }
+        }
+    }
+}
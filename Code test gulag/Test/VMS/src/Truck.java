@@ -8,21 +8,26 @@ public class Truck extends Vehicle {
     
     public Truck(String id, String make, String model, int year, String color, double price, 
                 double cargoCapacity, String driveType, boolean hasTowPackage) {
-        super(id, make, model, year, color, price);
+        this(VehicleId.parse(id), make, model, year, color, Money.toCents(price), cargoCapacity, driveType, hasTowPackage);
+    }
+    
+    public Truck(long id, String make, String model, int year, String color, long priceCents, 
+                double cargoCapacity, String driveType, boolean hasTowPackage) {
+        super(id, make, model, year, color, priceCents);
         this.cargoCapacity = cargoCapacity;
-        this.driveType = driveType;
+        this.driveType = StringPool.intern(driveType);
         this.hasTowPackage = hasTowPackage;
     }
     
     // Getters and setters
     public double getCargoCapacity() { return cargoCapacity; }
-    public void setCargoCapacity(double cargoCapacity) { this.cargoCapacity = cargoCapacity; }
+    public void setCargoCapacity(double cargoCapacity) { this.cargoCapacity = cargoCapacity; touch(); }
     
     public String getDriveType() { return driveType; }
-    public void setDriveType(String driveType) { this.driveType = driveType; }
+    public void setDriveType(String driveType) { this.driveType = StringPool.intern(driveType); touch(); }
     
     public boolean getHasTowPackage() { return hasTowPackage; }
-    public void setHasTowPackage(boolean hasTowPackage) { this.hasTowPackage = hasTowPackage; }
+    public void setHasTowPackage(boolean hasTowPackage) { this.hasTowPackage = hasTowPackage; touch(); }
     
     @Override
     public String toString() {
@@ -0,0 +1,37 @@
+/**
+ * Codec for trucks
+ */
+public class TruckCodec extends VehicleCodec<Truck> {
+
+    public TruckCodec() {
+        super("Truck", Truck.class,
+              new Field("cargoCapacity", "Cargo capacity", "Cargo Cap.", Kind.DOUBLE,
+                        v -> ((Truck) v).getCargoCapacity(), (v, value) -> ((Truck) v).setCargoCapacity((Double) value)),
+              new Field("driveType", "Drive type", "Drive Type", Kind.STRING,
+                        v -> ((Truck) v).getDriveType(), (v, value) -> ((Truck) v).setDriveType((String) value)),
+              new Field("hasTowPackage", "Has tow package", "Tow Pkg", Kind.BOOLEAN,
+                        v -> ((Truck) v).getHasTowPackage(), (v, value) -> ((Truck) v).setHasTowPackage((Boolean) value)));
+    }
+
+    @Override
+    public Truck read(long id, String make, String model, int year, String color, long priceCents, FieldReader in) {
+        return new Truck(id, make, model, year, color, priceCents,
+                         in.readDouble("cargoCapacity", 0.0),
+                         in.readString("driveType", ""),
+                         in.readBoolean("hasTowPackage", false));
+    }
+
+    @Override
+    protected void writeFields(Truck truck, FieldWriter out) {
+        out.writeDouble("cargoCapacity", truck.getCargoCapacity());
+        out.writeString("driveType", truck.getDriveType());
+        out.writeBoolean("hasTowPackage", truck.getHasTowPackage());
+    }
+
+    @Override
+    protected void renderFields(Truck truck, String[] cells, int offset) {
+        cells[offset] = String.format("%.1f", truck.getCargoCapacity());
+        cells[offset + 1] = truck.getDriveType();
+        cells[offset + 2] = truck.getHasTowPackage() ? "Yes" : "No";
+    }
+}
@@ -2,42 +2,68 @@
  * Base class for all vehicles in the system
  */
 public abstract class Vehicle {
-    private String id;
+    private final long id;
+    // Index of this vehicle's codec in VehicleCodecs, or -1 for unregistered types
+    private final int typeTag;
     private String make;
     private String model;
     private int year;
     private String color;
-    private double price;
+    // Fixed-point price in cents, so totals add up exactly
+    private long priceCents;
+    
+    // Incremented by every setter so cached renderings can detect changes
+    private int version;
     
     public Vehicle(String id, String make, String model, int year, String color, double price) {
+        this(VehicleId.parse(id), make, model, year, color, Money.toCents(price));
+    }
+    
+    public Vehicle(long id, String make, String model, int year, String color, long priceCents) {
         this.id = id;
-        this.make = make;
+        this.typeTag = VehicleCodecs.tagOf(getClass());
+        this.make = StringPool.intern(make);
         this.model = model;
         this.year = year;
-        this.color = color;
-        this.price = price;
+        this.color = StringPool.intern(color);
+        this.priceCents = priceCents;
     }
     
     // Getters and setters
-    public String getId() { return id; }
+    public String getId() { return VehicleId.format(id); }
+    public long getIdValue() { return id; }
+    public int getTypeTag() { return typeTag; }
     
     public String getMake() { return make; }
-    public void setMake(String make) { this.make = make; }
+    public void setMake(String make) { this.make = StringPool.intern(make); touch(); }
     
     public String getModel() { return model; }
-    public void setModel(String model) { this.model = model; }
+    public void setModel(String model) { this.model = model; touch(); }
     
     public int getYear() { return year; }
-    public void setYear(int year) { this.year = year; }
+    public void setYear(int year) { this.year = year; touch(); }
     
     public String getColor() { return color; }
-    public void setColor(String color) { this.color = color; }
+    public void setColor(String color) { this.color = StringPool.intern(color); touch(); }
+    
+    public double getPrice() { return Money.toDouble(priceCents); }
+    public void setPrice(double price) { this.priceCents = Money.toCents(price); touch(); }
+    
+    public long getPriceCents() { return priceCents; }
+    public void setPriceCents(long priceCents) { this.priceCents = priceCents; touch(); }
+    
+    /**
+     * @return Number of modifications made through setters since construction
+     */
+    public int getVersion() { return version; }
     
-    public double getPrice() { return price; }
-    public void setPrice(double price) { this.price = price; }
+    /**
+     * Records a modification; called by every setter
+     */
+    protected void touch() { version++; }
     
     @Override
     public String toString() {
-        return String.format("%s: %s %s (%d) - $%.2f", id, make, model, year, price);
+        return String.format("%s: %s %s (%d) - %s", getId(), make, model, year, Money.format(priceCents));
     }
 }
\ No newline at end of file
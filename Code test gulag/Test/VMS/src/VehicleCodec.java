@@ -0,0 +1,209 @@
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.function.BiConsumer;
+import java.util.function.Function;
+
+/**
+ * Describes how one vehicle type is stored, parsed and displayed
+ *
+ * A codec declares the schema of the type-specific fields and provides a direct writer,
+ * reader and table renderer for them; the common Vehicle fields are handled by the callers.
+ * Codecs are registered in VehicleCodecs, which dispatches on the vehicle's type tag.
+ * @param <V> The vehicle class handled by the codec
+ */
+public abstract class VehicleCodec<V extends Vehicle> {
+
+    /**
+     * Value type of a field, used for parsing input and choosing storage column types
+     */
+    public enum Kind {
+        INT, DOUBLE, STRING, BOOLEAN
+    }
+
+    /**
+     * A type-specific field: its stored name, labels and accessors
+     * The accessors are used by the interactive editor; storage goes through the direct
+     * writer and reader of the codec instead.
+     */
+    public static final class Field {
+        private final String name;
+        private final String label;
+        private final String header;
+        private final Kind kind;
+        private final Function<Vehicle, Object> getter;
+        private final BiConsumer<Vehicle, Object> setter;
+
+        /**
+         * Constructor
+         * @param name Key in stored records
+         * @param label Label shown when prompting for the value
+         * @param header Table column header
+         * @param kind Value type
+         * @param getter Reads the value from a vehicle of the codec's type
+         * @param setter Writes a value of the field's kind to a vehicle of the codec's type
+         */
+        public Field(String name, String label, String header, Kind kind,
+                     Function<Vehicle, Object> getter, BiConsumer<Vehicle, Object> setter) {
+            this.name = name;
+            this.label = label;
+            this.header = header;
+            this.kind = kind;
+            this.getter = getter;
+            this.setter = setter;
+        }
+
+        public String getName() { return name; }
+
+        public String getLabel() { return label; }
+
+        public String getHeader() { return header; }
+
+        public Kind getKind() { return kind; }
+
+        public Object get(Vehicle vehicle) { return getter.apply(vehicle); }
+
+        public void set(Vehicle vehicle, Object value) { setter.accept(vehicle, value); }
+
+        /**
+         * Parses user input for this field
+         * @param input The trimmed input
+         * @return The value; booleans accept "yes"
+         * @throws NumberFormatException If a numeric field gets non-numeric input
+         */
+        public Object parse(String input) {
+            switch (kind) {
+                case INT:
+                    return Integer.parseInt(input);
+                case DOUBLE:
+                    return Double.parseDouble(input);
+                case BOOLEAN:
+                    return input.equalsIgnoreCase("yes");
+                default:
+                    return input;
+            }
+        }
+
+        /**
+         * Formats the current value for a prompt
+         * @param vehicle The vehicle
+         * @return The value, with booleans shown as Yes/No
+         */
+        public String display(Vehicle vehicle) {
+            Object value = get(vehicle);
+            if (kind == Kind.BOOLEAN) {
+                return Boolean.TRUE.equals(value) ? "Yes" : "No";
+            }
+            return String.valueOf(value);
+        }
+    }
+
+    /**
+     * Receives the type-specific fields of a vehicle being stored
+     */
+    public interface FieldWriter {
+        void writeInt(String name, int value);
+
+        void writeDouble(String name, double value);
+
+        void writeString(String name, String value);
+
+        void writeBoolean(String name, boolean value);
+    }
+
+    /**
+     * Supplies the type-specific fields of a vehicle being loaded
+     */
+    public interface FieldReader {
+        int readInt(String name, int defaultValue);
+
+        double readDouble(String name, double defaultValue);
+
+        String readString(String name, String defaultValue);
+
+        boolean readBoolean(String name, boolean defaultValue);
+    }
+
+    private final String typeName;
+    private final Class<V> vehicleClass;
+    private final List<Field> fields;
+    private int tag = -1;
+
+    /**
+     * Constructor
+     * @param typeName Name stored in the "type" field, e.g. "Car"
+     * @param vehicleClass The vehicle class handled by the codec
+     * @param fields Schema of the type-specific fields, in display order
+     */
+    protected VehicleCodec(String typeName, Class<V> vehicleClass, Field... fields) {
+        this.typeName = typeName;
+        this.vehicleClass = vehicleClass;
+        List<Field> list = new ArrayList<>();
+        Collections.addAll(list, fields);
+        this.fields = Collections.unmodifiableList(list);
+    }
+
+    public final String getTypeName() { return typeName; }
+
+    public final Class<V> getVehicleClass() { return vehicleClass; }
+
+    public final List<Field> getFields() { return fields; }
+
+    /**
+     * @return The type tag assigned at registration, or -1 if not registered
+     */
+    public final int getTag() { return tag; }
+
+    final void setTag(int tag) { this.tag = tag; }
+
+    /**
+     * Finds a field by its stored name
+     * @param name The field name
+     * @return The field, or null if the type has no such field
+     */
+    public final Field getField(String name) {
+        for (Field field : fields) {
+            if (field.getName().equals(name)) {
+                return field;
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Writes the type-specific fields of a vehicle
+     * @param vehicle A vehicle of this codec's type
+     * @param out Receives the fields
+     */
+    public final void write(Vehicle vehicle, FieldWriter out) {
+        writeFields(vehicleClass.cast(vehicle), out);
+    }
+
+    /**
+     * Renders the type-specific table cells of a vehicle
+     * @param vehicle A vehicle of this codec's type
+     * @param cells The row being rendered
+     * @param offset Index of the first type-specific cell
+     */
+    public final void render(Vehicle vehicle, String[] cells, int offset) {
+        renderFields(vehicleClass.cast(vehicle), cells, offset);
+    }
+
+    /**
+     * Creates a vehicle from its common fields and a source of type-specific fields
+     * @param id The packed vehicle ID
+     * @param make The make
+     * @param model The model
+     * @param year The year
+     * @param color The color
+     * @param priceCents The price in cents
+     * @param in Supplies the type-specific fields
+     * @return The new vehicle
+     */
+    public abstract V read(long id, String make, String model, int year, String color, long priceCents,
+                           FieldReader in);
+
+    protected abstract void writeFields(V vehicle, FieldWriter out);
+
+    protected abstract void renderFields(V vehicle, String[] cells, int offset);
+}
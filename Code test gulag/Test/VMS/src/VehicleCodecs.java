@@ -0,0 +1,141 @@
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Registry of vehicle codecs, indexed by type tag
+ *
+ * Each registered type gets a small integer tag, which every vehicle records at construction.
+ * Looking up the codec of a vehicle is then a single array access instead of an instanceof
+ * chain. New vehicle types plug in by calling register() before any instance is created.
+ */
+public final class VehicleCodecs {
+    private static volatile VehicleCodec<?>[] codecs = new VehicleCodec<?>[0];
+    private static final Map<String, VehicleCodec<?>> BY_NAME = new ConcurrentHashMap<>();
+    private static final Map<Class<?>, Integer> TAGS = new ConcurrentHashMap<>();
+
+    static {
+        register(new CarCodec());
+        register(new TruckCodec());
+        register(new MotorcycleCodec());
+    }
+
+    private VehicleCodecs() {
+    }
+
+    /**
+     * Adds a vehicle type
+     * @param codec The codec of the type
+     * @throws IllegalArgumentException If the type name or class is already registered
+     */
+    public static synchronized void register(VehicleCodec<?> codec) {
+        String key = codec.getTypeName().toLowerCase(Locale.ROOT);
+        if (BY_NAME.containsKey(key) || TAGS.containsKey(codec.getVehicleClass())) {
+            throw new IllegalArgumentException("Vehicle type already registered: " + codec.getTypeName());
+        }
+
+        VehicleCodec<?>[] grown = Arrays.copyOf(codecs, codecs.length + 1);
+        grown[codecs.length] = codec;
+        codec.setTag(codecs.length);
+        BY_NAME.put(key, codec);
+        TAGS.put(codec.getVehicleClass(), codec.getTag());
+        codecs = grown;
+    }
+
+    /**
+     * Returns the type tag of a vehicle class
+     * @param vehicleClass The class
+     * @return The tag, or -1 if the class is not registered
+     */
+    public static int tagOf(Class<?> vehicleClass) {
+        Integer tag = TAGS.get(vehicleClass);
+        return tag != null ? tag : -1;
+    }
+
+    /**
+     * Returns the codec of a vehicle
+     * @param vehicle The vehicle
+     * @return The codec, or null if the vehicle's type is not registered
+     */
+    public static VehicleCodec<?> of(Vehicle vehicle) {
+        int tag = vehicle.getTypeTag();
+        return tag >= 0 ? codecs[tag] : null;
+    }
+
+    /**
+     * Returns the codec of a type tag
+     * @param tag The tag
+     * @return The codec
+     */
+    public static VehicleCodec<?> byTag(int tag) {
+        return codecs[tag];
+    }
+
+    /**
+     * Finds a codec by type name, case-insensitively
+     * @param typeName The type name, e.g. "Car"
+     * @return The codec, or null if the name is unknown (or null)
+     */
+    public static VehicleCodec<?> forName(String typeName) {
+        return typeName == null ? null : BY_NAME.get(typeName.toLowerCase(Locale.ROOT));
+    }
+
+    /**
+     * Returns the stored type name of a vehicle
+     * @param vehicle The vehicle
+     * @return The type name, or null if the type is not registered
+     */
+    public static String typeNameOf(Vehicle vehicle) {
+        VehicleCodec<?> codec = of(vehicle);
+        return codec != null ? codec.getTypeName() : null;
+    }
+
+    /**
+     * Creates a detached copy of a vehicle, field by field
+     * @param vehicle The vehicle
+     * @return The copy
+     */
+    public static Vehicle copyOf(Vehicle vehicle) {
+        VehicleCodec<?> codec = of(vehicle);
+        Vehicle copy = codec.read(vehicle.getIdValue(), vehicle.getMake(), vehicle.getModel(), vehicle.getYear(),
+                                  vehicle.getColor(), vehicle.getPriceCents(), new VehicleCodec.FieldReader() {
+            @Override
+            public int readInt(String name, int defaultValue) {
+                return (Integer) codec.getField(name).get(vehicle);
+            }
+
+            @Override
+            public double readDouble(String name, double defaultValue) {
+                return (Double) codec.getField(name).get(vehicle);
+            }
+
+            @Override
+            public String readString(String name, String defaultValue) {
+                return (String) codec.getField(name).get(vehicle);
+            }
+
+            @Override
+            public boolean readBoolean(String name, boolean defaultValue) {
+                return (Boolean) codec.getField(name).get(vehicle);
+            }
+        });
+        return copy;
+    }
+
+    /**
+     * @return All codecs, in tag order
+     */
+    public static List<VehicleCodec<?>> all() {
+        return Collections.unmodifiableList(Arrays.asList(codecs));
+    }
+
+    /**
+     * @return Number of registered types
+     */
+    public static int size() {
+        return codecs.length;
+    }
+}
@@ -0,0 +1,383 @@
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Column-oriented snapshot of the fleet for filter and aggregate scans
+ *
+ * Year, price and type tag are copied into primitive arrays once; type-specific numeric fields
+ * are extracted into their own column on first use. Filters produce selection bitmaps with one
+ * bit per row, which can be combined with and() before aggregating. The kernels are simple
+ * counted loops over primitive arrays with no data-dependent branches, so the JIT can unroll
+ * them and keep the pipeline full regardless of how selective a filter is.
+ */
+public final class VehicleColumns {
+    private final Vehicle[] vehicles;
+    private final int[] years;
+    private final long[] priceCents;
+    private final int[] typeTags;
+    private final Map<String, double[]> specColumns = new HashMap<>();
+
+    /**
+     * Summary of a long or int column over a selection
+     */
+    public static final class LongStats {
+        public final int count;
+        public final long sum;
+        public final long min;
+        public final long max;
+
+        LongStats(int count, long sum, long min, long max) {
+            this.count = count;
+            this.sum = sum;
+            this.min = count == 0 ? 0 : min;
+            this.max = count == 0 ? 0 : max;
+        }
+    }
+
+    /**
+     * Summary of a type-specific column over a selection
+     */
+    public static final class DoubleStats {
+        public final int count;
+        public final double sum;
+        public final double min;
+        public final double max;
+
+        DoubleStats(int count, double sum, double min, double max) {
+            this.count = count;
+            this.sum = sum;
+            this.min = count == 0 ? 0 : min;
+            this.max = count == 0 ? 0 : max;
+        }
+    }
+
+    private VehicleColumns(Vehicle[] vehicles) {
+        int n = vehicles.length;
+        this.vehicles = vehicles;
+        this.years = new int[n];
+        this.priceCents = new long[n];
+        this.typeTags = new int[n];
+        for (int i = 0; i < n; i++) {
+            Vehicle vehicle = vehicles[i];
+            years[i] = vehicle.getYear();
+            priceCents[i] = vehicle.getPriceCents();
+            typeTags[i] = vehicle.getTypeTag();
+        }
+    }
+
+    /**
+     * Builds a snapshot of the given vehicles
+     * Later changes to the vehicles are not reflected; build a new snapshot instead.
+     * @param fleet The vehicles
+     * @return The columns, with rows in the collection's iteration order
+     */
+    public static VehicleColumns of(Collection<? extends Vehicle> fleet) {
+        return new VehicleColumns(fleet.toArray(new Vehicle[0]));
+    }
+
+    public int size() { return vehicles.length; }
+
+    public Vehicle get(int row) { return vehicles[row]; }
+
+    /**
+     * @return A selection containing every row
+     */
+    public long[] all() {
+        int n = vehicles.length;
+        long[] bits = new long[words(n)];
+        for (int w = 0; w < bits.length; w++) {
+            bits[w] = -1L;
+        }
+        if ((n & 63) != 0) {
+            bits[bits.length - 1] = (1L << (n & 63)) - 1;
+        }
+        return bits;
+    }
+
+    /**
+     * Selects vehicles built in or after a year
+     * @param minYear The earliest year
+     * @return The selection bitmap
+     */
+    public long[] yearAtLeast(int minYear) {
+        return yearBetween(minYear, Integer.MAX_VALUE);
+    }
+
+    /**
+     * Selects vehicles built within a range of years
+     * @param minYear The earliest year, inclusive
+     * @param maxYear The latest year, inclusive
+     * @return The selection bitmap
+     */
+    public long[] yearBetween(int minYear, int maxYear) {
+        int n = years.length;
+        long[] bits = new long[words(n)];
+        if (minYear > maxYear) {
+            return bits;
+        }
+        long span = (long) maxYear - minYear;
+        for (int w = 0; w < bits.length; w++) {
+            int base = w << 6;
+            int end = Math.min(64, n - base);
+            long word = 0;
+            for (int j = 0; j < end; j++) {
+                // Both bounds in one test: the offset and the room left are non-negative only inside the range
+                long offset = (long) years[base + j] - minYear;
+                word |= (((offset | (span - offset)) >>> 63) ^ 1) << j;
+            }
+            bits[w] = word;
+        }
+        return bits;
+    }
+
+    /**
+     * Selects vehicles priced within a range
+     * @param minCents The lowest price in cents, inclusive
+     * @param maxCents The highest price in cents, inclusive
+     * @return The selection bitmap
+     */
+    public long[] priceBetween(long minCents, long maxCents) {
+        int n = priceCents.length;
+        long[] bits = new long[words(n)];
+        if (minCents > maxCents) {
+            return bits;
+        }
+        long span = maxCents - minCents;
+        for (int w = 0; w < bits.length; w++) {
+            int base = w << 6;
+            int end = Math.min(64, n - base);
+            long word = 0;
+            for (int j = 0; j < end; j++) {
+                // In range when the offset from the minimum is unsigned <= the span, i.e. span - offset does not borrow
+                long offset = priceCents[base + j] - minCents;
+                long borrow = ((~span & offset) | (~(span ^ offset) & (span - offset))) >>> 63;
+                word |= (borrow ^ 1) << j;
+            }
+            bits[w] = word;
+        }
+        return bits;
+    }
+
+    /**
+     * Selects vehicles of one type
+     * @param typeTag The type tag from VehicleCodecs
+     * @return The selection bitmap
+     */
+    public long[] typeIs(int typeTag) {
+        int n = typeTags.length;
+        long[] bits = new long[words(n)];
+        for (int w = 0; w < bits.length; w++) {
+            int base = w << 6;
+            int end = Math.min(64, n - base);
+            long word = 0;
+            for (int j = 0; j < end; j++) {
+                int difference = typeTags[base + j] ^ typeTag;
+                // (d | -d) has the sign bit set for every non-zero d
+                word |= ((((long) (difference | -difference)) >>> 63) ^ 1) << j;
+            }
+            bits[w] = word;
+        }
+        return bits;
+    }
+
+    /**
+     * Selects vehicles whose type-specific numeric field lies within a range
+     * Vehicles whose type has no such field are never selected.
+     * @param fieldName The stored field name, e.g. "engineSize"
+     * @param min The lowest value, inclusive
+     * @param max The highest value, inclusive
+     * @return The selection bitmap
+     * @throws IllegalArgumentException If no registered type has a numeric field of that name
+     */
+    public long[] specBetween(String fieldName, double min, double max) {
+        double[] column = specColumn(fieldName);
+        int n = column.length;
+        long[] bits = new long[words(n)];
+        for (int w = 0; w < bits.length; w++) {
+            int base = w << 6;
+            int end = Math.min(64, n - base);
+            long word = 0;
+            for (int j = 0; j < end; j++) {
+                double value = column[base + j];
+                // Non-short-circuit & keeps this a single test; NaN fails both comparisons
+                word |= (value >= min & value <= max ? 1L : 0L) << j;
+            }
+            bits[w] = word;
+        }
+        return bits;
+    }
+
+    /**
+     * Intersects a selection with another in place
+     * @param selection The selection to narrow
+     * @param other The selection to intersect with
+     * @return The narrowed selection
+     */
+    public static long[] and(long[] selection, long[] other) {
+        for (int w = 0; w < selection.length; w++) {
+            selection[w] &= other[w];
+        }
+        return selection;
+    }
+
+    /**
+     * Counts the rows in a selection
+     * @param selection The selection bitmap
+     * @return Number of selected rows
+     */
+    public static int count(long[] selection) {
+        int count = 0;
+        for (long word : selection) {
+            count += Long.bitCount(word);
+        }
+        return count;
+    }
+
+    /**
+     * Materialises the selected vehicles
+     * @param selection The selection bitmap
+     * @return The selected vehicles in row order
+     */
+    public List<Vehicle> select(long[] selection) {
+        List<Vehicle> result = new ArrayList<>(count(selection));
+        for (int w = 0; w < selection.length; w++) {
+            long word = selection[w];
+            while (word != 0) {
+                result.add(vehicles[(w << 6) + Long.numberOfTrailingZeros(word)]);
+                word &= word - 1;
+            }
+        }
+        return result;
+    }
+
+    /**
+     * Sums and bounds the prices of the selected vehicles
+     * @param selection The selection bitmap
+     * @return Count, total, minimum and maximum in cents
+     */
+    public LongStats priceStats(long[] selection) {
+        int count = 0;
+        long sum = 0;
+        long min = Long.MAX_VALUE;
+        long max = Long.MIN_VALUE;
+        for (int w = 0; w < selection.length; w++) {
+            long word = selection[w];
+            if (word == 0) {
+                continue;
+            }
+            count += Long.bitCount(word);
+            int base = w << 6;
+            int end = Math.min(64, priceCents.length - base);
+            for (int j = 0; j < end; j++) {
+                // All ones for a selected row, zero otherwise; rejected rows fall back to the neutral value
+                long mask = -((word >>> j) & 1);
+                long value = priceCents[base + j];
+                sum += value & mask;
+                min = Math.min(min, (value & mask) | (Long.MAX_VALUE & ~mask));
+                max = Math.max(max, (value & mask) | (Long.MIN_VALUE & ~mask));
+            }
+        }
+        return new LongStats(count, sum, min, max);
+    }
+
+    /**
+     * Sums and bounds the years of the selected vehicles
+     * @param selection The selection bitmap
+     * @return Count, total, earliest and latest year
+     */
+    public LongStats yearStats(long[] selection) {
+        int count = 0;
+        long sum = 0;
+        int min = Integer.MAX_VALUE;
+        int max = Integer.MIN_VALUE;
+        for (int w = 0; w < selection.length; w++) {
+            long word = selection[w];
+            if (word == 0) {
+                continue;
+            }
+            count += Long.bitCount(word);
+            int base = w << 6;
+            int end = Math.min(64, years.length - base);
+            for (int j = 0; j < end; j++) {
+                int mask = -(int) ((word >>> j) & 1);
+                int value = years[base + j];
+                sum += value & mask;
+                min = Math.min(min, (value & mask) | (Integer.MAX_VALUE & ~mask));
+                max = Math.max(max, (value & mask) | (Integer.MIN_VALUE & ~mask));
+            }
+        }
+        return new LongStats(count, sum, min, max);
+    }
+
+    /**
+     * Sums and bounds a type-specific numeric field over the selected vehicles
+     * Selected vehicles whose type has no such field are not counted.
+     * @param fieldName The stored field name
+     * @param selection The selection bitmap
+     * @return Count, total, minimum and maximum
+     * @throws IllegalArgumentException If no registered type has a numeric field of that name
+     */
+    public DoubleStats specStats(String fieldName, long[] selection) {
+        double[] column = specColumn(fieldName);
+        int count = 0;
+        double sum = 0;
+        double min = Double.POSITIVE_INFINITY;
+        double max = Double.NEGATIVE_INFINITY;
+        for (int w = 0; w < selection.length; w++) {
+            long word = selection[w];
+            while (word != 0) {
+                double value = column[(w << 6) + Long.numberOfTrailingZeros(word)];
+                word &= word - 1;
+                if (!Double.isNaN(value)) {
+                    count++;
+                    sum += value;
+                    min = Math.min(min, value);
+                    max = Math.max(max, value);
+                }
+            }
+        }
+        return new DoubleStats(count, sum, min, max);
+    }
+
+    /**
+     * Returns the column of a type-specific numeric field, extracting it on first use
+     * Rows whose type has no such field hold NaN.
+     */
+    private synchronized double[] specColumn(String fieldName) {
+        double[] column = specColumns.get(fieldName);
+        if (column != null) {
+            return column;
+        }
+
+        // Resolve the field once per type rather than once per row
+        VehicleCodec.Field[] fieldsByTag = new VehicleCodec.Field[VehicleCodecs.size()];
+        boolean found = false;
+        for (int tag = 0; tag < fieldsByTag.length; tag++) {
+            VehicleCodec.Field field = VehicleCodecs.byTag(tag).getField(fieldName);
+            if (field != null && (field.getKind() == VehicleCodec.Kind.INT
+                    || field.getKind() == VehicleCodec.Kind.DOUBLE)) {
+                fieldsByTag[tag] = field;
+                found = true;
+            }
+        }
+        if (!found) {
+            throw new IllegalArgumentException("No numeric vehicle field named " + fieldName);
+        }
+
+        column = new double[vehicles.length];
+        for (int i = 0; i < column.length; i++) {
+            int tag = typeTags[i];
+            VehicleCodec.Field field = tag >= 0 && tag < fieldsByTag.length ? fieldsByTag[tag] : null;
+            column[i] = field != null ? ((Number) field.get(vehicles[i])).doubleValue() : Double.NaN;
+        }
+        specColumns.put(fieldName, column);
+        return column;
+    }
+
+    private static int words(int rows) {
+        return (rows + 63) >>> 6;
+    }
+}
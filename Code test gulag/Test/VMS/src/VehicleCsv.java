@@ -0,0 +1,494 @@
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.function.LongSupplier;
+import java.util.stream.IntStream;
+
+/**
+ * CSV export and import of vehicles
+ *
+ * The columns follow the general table layout of ConsoleHelper.getVehicleTableHeaders(null):
+ * ID, Type, Make, Model, Year, Color, Price, then "Spec 1".."Spec N" holding the type-specific
+ * fields in codec order. Values are written raw rather than as displayed: the price as a plain
+ * decimal and booleans as Yes/No, so an exported file imports unchanged.
+ *
+ * Import reads the input in large blocks, splits each block into record-aligned chunks with one
+ * quote-aware pass, and parses the chunks in parallel. Rows that fail are reported with their
+ * line number and skipped.
+ */
+public final class VehicleCsv {
+    private static final int COMMON_COLUMNS = 7;
+    private static final int BLOCK_BYTES = 16 << 20;
+    private static final int CHUNK_BYTES = 1 << 20;
+
+    /**
+     * Vehicles and errors from an import
+     */
+    public static final class ImportResult {
+        private final List<Vehicle> vehicles;
+        private final int[] lines;
+        private final List<String> errors;
+
+        ImportResult(List<Vehicle> vehicles, int[] lines, List<String> errors) {
+            this.vehicles = vehicles;
+            this.lines = lines;
+            this.errors = errors;
+        }
+
+        /**
+         * @return The parsed vehicles in file order
+         */
+        public List<Vehicle> getVehicles() { return vehicles; }
+
+        /**
+         * @param index Index into getVehicles()
+         * @return Line on which the vehicle's row starts
+         */
+        public int getLine(int index) { return lines[index]; }
+
+        /**
+         * @return One message per rejected row, e.g. "Line 12: invalid year 'abc'"
+         */
+        public List<String> getErrors() { return errors; }
+    }
+
+    private VehicleCsv() {
+    }
+
+    /**
+     * Writes vehicles as CSV, header first
+     * @param vehicles The vehicles, read once in iteration order
+     * @param out Destination; wrap it in a BufferedWriter
+     * @return Number of vehicles written
+     * @throws IOException If writing fails
+     */
+    public static long write(Iterable<? extends Vehicle> vehicles, Writer out) throws IOException {
+        String[] headers = ConsoleHelper.getVehicleTableHeaders(null);
+        StringBuilder line = new StringBuilder(256);
+        for (int i = 0; i < headers.length; i++) {
+            if (i > 0) {
+                line.append(',');
+            }
+            appendCell(line, headers[i]);
+        }
+        line.append('\n');
+        out.append(line);
+
+        String[] specs = new String[headers.length - COMMON_COLUMNS];
+        long count = 0;
+        for (Vehicle vehicle : vehicles) {
+            VehicleCodec<?> codec = VehicleCodecs.of(vehicle);
+            line.setLength(0);
+            line.append(vehicle.getId()).append(',');
+            appendCell(line, codec.getTypeName());
+            line.append(',');
+            appendCell(line, vehicle.getMake());
+            line.append(',');
+            appendCell(line, vehicle.getModel());
+            line.append(',').append(vehicle.getYear()).append(',');
+            appendCell(line, vehicle.getColor());
+            line.append(',');
+            Money.appendDecimal(line, vehicle.getPriceCents());
+
+            Arrays.fill(specs, null);
+            List<VehicleCodec.Field> fields = codec.getFields();
+            codec.write(vehicle, new VehicleCodec.FieldWriter() {
+                private int column(String name) {
+                    for (int i = 0; i < fields.size(); i++) {
+                        if (fields.get(i).getName().equals(name)) {
+                            return i;
+                        }
+                    }
+                    throw new IllegalStateException("Field " + name + " is not in the schema of " + codec.getTypeName());
+                }
+
+                @Override
+                public void writeInt(String name, int value) {
+                    specs[column(name)] = String.valueOf(value);
+                }
+
+                @Override
+                public void writeDouble(String name, double value) {
+                    specs[column(name)] = String.valueOf(value);
+                }
+
+                @Override
+                public void writeString(String name, String value) {
+                    specs[column(name)] = value;
+                }
+
+                @Override
+                public void writeBoolean(String name, boolean value) {
+                    specs[column(name)] = value ? "Yes" : "No";
+                }
+            });
+            for (String spec : specs) {
+                line.append(',');
+                appendCell(line, spec);
+            }
+            line.append('\n');
+            out.append(line);
+            count++;
+        }
+        out.flush();
+        return count;
+    }
+
+    /**
+     * Quotes a cell if it contains a separator, quote, line break or edge whitespace
+     */
+    private static void appendCell(StringBuilder line, String value) {
+        if (value == null || value.isEmpty()) {
+            return;
+        }
+        boolean quote = value.charAt(0) == ' ' || value.charAt(value.length() - 1) == ' ';
+        for (int i = 0; i < value.length() && !quote; i++) {
+            char c = value.charAt(i);
+            quote = c == ',' || c == '"' || c == '\n' || c == '\r';
+        }
+        if (!quote) {
+            line.append(value);
+            return;
+        }
+        line.append('"');
+        for (int i = 0; i < value.length(); i++) {
+            char c = value.charAt(i);
+            if (c == '"') {
+                line.append('"');
+            }
+            line.append(c);
+        }
+        line.append('"');
+    }
+
+    /**
+     * Reads vehicles from CSV
+     * A first row whose first cell is "ID" is taken as the header. Rows with an empty ID get a
+     * new one from the ID source.
+     * @param in UTF-8 input; read to the end but not closed
+     * @param ids Source of IDs for rows without one; called from several threads
+     * @return The parsed vehicles and the rejected rows
+     * @throws IOException If reading fails
+     */
+    public static ImportResult read(InputStream in, LongSupplier ids) throws IOException {
+        List<Vehicle> vehicles = new ArrayList<>();
+        int[] lines = new int[1024];
+        List<String> errors = new ArrayList<>();
+
+        byte[] block = new byte[BLOCK_BYTES];
+        int filled = 0;
+        int firstLine = 1;
+        boolean start = true;
+        boolean eof = false;
+        while (!eof) {
+            int read = in.readNBytes(block, filled, block.length - filled);
+            filled += read;
+            eof = filled < block.length;
+
+            int from = 0;
+            if (start && filled >= 3 && (block[0] & 0xff) == 0xEF && (block[1] & 0xff) == 0xBB
+                    && (block[2] & 0xff) == 0xBF) {
+                from = 3;
+            }
+
+            // One sequential pass finds record ends outside quotes and cuts the block into chunks
+            List<int[]> chunks = new ArrayList<>();
+            boolean quoted = false;
+            int chunkStart = from;
+            int chunkLine = firstLine;
+            int line = firstLine;
+            int recordEnd = from;
+            for (int i = from; i < filled; i++) {
+                byte b = block[i];
+                if (b == '"') {
+                    quoted = !quoted;
+                } else if (b == '\n') {
+                    line++;
+                    if (!quoted) {
+                        recordEnd = i + 1;
+                        if (recordEnd - chunkStart >= CHUNK_BYTES) {
+                            chunks.add(new int[] {chunkStart, recordEnd, chunkLine});
+                            chunkStart = recordEnd;
+                            chunkLine = line;
+                        }
+                    }
+                }
+            }
+            // Without more input the trailing partial record is the last one
+            int end = eof ? filled : recordEnd;
+            if (end > chunkStart) {
+                chunks.add(new int[] {chunkStart, end, chunkLine});
+            }
+            if (!eof && end == from) {
+                // A single record longer than the block; grow and keep reading
+                block = Arrays.copyOf(block, block.length * 2);
+                continue;
+            }
+
+            byte[] bytes = block;
+            boolean header = start;
+            ChunkResult[] results = IntStream.range(0, chunks.size())
+                    .parallel()
+                    .mapToObj(c -> {
+                        int[] chunk = chunks.get(c);
+                        ChunkResult result = new ChunkResult();
+                        new RowParser(bytes, ids, result).parse(chunk[0], chunk[1], chunk[2], header && c == 0);
+                        return result;
+                    })
+                    .toArray(ChunkResult[]::new);
+            for (ChunkResult result : results) {
+                if (lines.length < vehicles.size() + result.vehicles.size()) {
+                    lines = Arrays.copyOf(lines, Math.max(lines.length * 2, vehicles.size() + result.vehicles.size()));
+                }
+                System.arraycopy(result.lines, 0, lines, vehicles.size(), result.vehicles.size());
+                vehicles.addAll(result.vehicles);
+                errors.addAll(result.errors);
+            }
+
+            // Carry the partial record over to the front of the block
+            System.arraycopy(block, end, block, 0, filled - end);
+            filled -= end;
+            firstLine = line - countLines(block, 0, filled);
+            start = false;
+        }
+        return new ImportResult(vehicles, Arrays.copyOf(lines, vehicles.size()), errors);
+    }
+
+    /**
+     * Counts line breaks in a byte range
+     */
+    private static int countLines(byte[] bytes, int from, int to) {
+        int count = 0;
+        for (int i = from; i < to; i++) {
+            if (bytes[i] == '\n') {
+                count++;
+            }
+        }
+        return count;
+    }
+
+    /**
+     * Vehicles and errors parsed from one chunk
+     */
+    private static final class ChunkResult {
+        final List<Vehicle> vehicles = new ArrayList<>();
+        int[] lines = new int[256];
+        final List<String> errors = new ArrayList<>();
+
+        void add(Vehicle vehicle, int line) {
+            if (vehicles.size() == lines.length) {
+                lines = Arrays.copyOf(lines, lines.length * 2);
+            }
+            lines[vehicles.size()] = line;
+            vehicles.add(vehicle);
+        }
+    }
+
+    /**
+     * Splits the records of one chunk into cells and builds vehicles from them
+     */
+    private static final class RowParser implements VehicleCodec.FieldReader {
+        private final byte[] bytes;
+        private final LongSupplier ids;
+        private final ChunkResult result;
+
+        // Cell boundaries of the current record; quoted cells that contain "" need unescaping
+        private int[] cellStart = new int[16];
+        private int[] cellEnd = new int[16];
+        private boolean[] escaped = new boolean[16];
+        private int cells;
+        private VehicleCodec<?> codec;
+
+        RowParser(byte[] bytes, LongSupplier ids, ChunkResult result) {
+            this.bytes = bytes;
+            this.ids = ids;
+            this.result = result;
+        }
+
+        void parse(int from, int to, int line, boolean header) {
+            int position = from;
+            while (position < to) {
+                int recordLine = line;
+                cells = 0;
+                boolean endOfRecord = false;
+                while (!endOfRecord) {
+                    if (cells == cellStart.length) {
+                        cellStart = Arrays.copyOf(cellStart, cells * 2);
+                        cellEnd = Arrays.copyOf(cellEnd, cells * 2);
+                        escaped = Arrays.copyOf(escaped, cells * 2);
+                    }
+                    boolean hasEscape = false;
+                    int start;
+                    int end;
+                    if (position < to && bytes[position] == '"') {
+                        start = ++position;
+                        while (position < to) {
+                            byte b = bytes[position];
+                            if (b == '"') {
+                                if (position + 1 < to && bytes[position + 1] == '"') {
+                                    hasEscape = true;
+                                    position += 2;
+                                    continue;
+                                }
+                                break;
+                            }
+                            if (b == '\n') {
+                                line++;
+                            }
+                            position++;
+                        }
+                        end = position;
+                        position = Math.min(position + 1, to);
+                        // Anything between the closing quote and the separator is ignored
+                        while (position < to && bytes[position] != ',' && bytes[position] != '\n') {
+                            position++;
+                        }
+                    } else {
+                        start = position;
+                        while (position < to && bytes[position] != ',' && bytes[position] != '\n') {
+                            position++;
+                        }
+                        end = position;
+                        if (end > start && bytes[end - 1] == '\r') {
+                            end--;
+                        }
+                    }
+                    cellStart[cells] = start;
+                    cellEnd[cells] = end;
+                    escaped[cells] = hasEscape;
+                    cells++;
+
+                    if (position >= to || bytes[position] == '\n') {
+                        endOfRecord = true;
+                        if (position < to) {
+                            line++;
+                        }
+                    }
+                    position++;
+                }
+
+                if (cells == 1 && cellEnd[0] == cellStart[0]) {
+                    continue;
+                }
+                if (header) {
+                    header = false;
+                    if (cell(0).trim().equalsIgnoreCase("ID")) {
+                        continue;
+                    }
+                }
+                try {
+                    result.add(buildVehicle(), recordLine);
+                } catch (IllegalArgumentException e) {
+                    result.errors.add("Line " + recordLine + ": " + e.getMessage());
+                }
+            }
+        }
+
+        private Vehicle buildVehicle() {
+            codec = VehicleCodecs.forName(cells > 1 ? cell(1) : "");
+            if (codec == null) {
+                throw new IllegalArgumentException("unknown vehicle type '" + (cells > 1 ? cell(1) : "") + "'");
+            }
+            int expected = COMMON_COLUMNS + codec.getFields().size();
+            if (cells < expected) {
+                throw new IllegalArgumentException("expected " + expected + " columns for a "
+                        + codec.getTypeName() + ", found " + cells);
+            }
+
+            String idText = cell(0);
+            long id;
+            if (idText.isEmpty()) {
+                id = ids.getAsLong();
+            } else if (VehicleId.isValid(idText)) {
+                id = VehicleId.parse(idText);
+            } else {
+                throw new IllegalArgumentException("invalid ID '" + idText + "'");
+            }
+            int year = parseInt(4, "year");
+            long cents;
+            try {
+                cents = Money.parse(cell(6));
+            } catch (NumberFormatException | ArithmeticException e) {
+                throw new IllegalArgumentException("invalid price '" + cell(6) + "'");
+            }
+
+            return codec.read(id, cell(2), cell(3), year, cell(5), cents, this);
+        }
+
+        private String cell(int index) {
+            int start = cellStart[index];
+            int length = cellEnd[index] - start;
+            String value = new String(bytes, start, length, StandardCharsets.UTF_8);
+            return escaped[index] ? value.replace("\"\"", "\"") : value;
+        }
+
+        private int column(String name) {
+            List<VehicleCodec.Field> fields = codec.getFields();
+            for (int i = 0; i < fields.size(); i++) {
+                if (fields.get(i).getName().equals(name)) {
+                    return COMMON_COLUMNS + i;
+                }
+            }
+            throw new IllegalStateException("Field " + name + " is not in the schema of " + codec.getTypeName());
+        }
+
+        private boolean isEmpty(int column) {
+            return cellEnd[column] == cellStart[column];
+        }
+
+        private int parseInt(int column, String label) {
+            String text = cell(column).trim();
+            try {
+                return Integer.parseInt(text);
+            } catch (NumberFormatException e) {
+                throw new IllegalArgumentException("invalid " + label + " '" + text + "'");
+            }
+        }
+
+        @Override
+        public int readInt(String name, int defaultValue) {
+            int column = column(name);
+            return isEmpty(column) ? defaultValue : parseInt(column, name);
+        }
+
+        @Override
+        public double readDouble(String name, double defaultValue) {
+            int column = column(name);
+            if (isEmpty(column)) {
+                return defaultValue;
+            }
+            String text = cell(column).trim();
+            try {
+                return Double.parseDouble(text);
+            } catch (NumberFormatException e) {
+                throw new IllegalArgumentException("invalid " + name + " '" + text + "'");
+            }
+        }
+
+        @Override
+        public String readString(String name, String defaultValue) {
+            int column = column(name);
+            return isEmpty(column) ? defaultValue : cell(column);
+        }
+
+        @Override
+        public boolean readBoolean(String name, boolean defaultValue) {
+            int column = column(name);
+            if (isEmpty(column)) {
+                return defaultValue;
+            }
+            String text = cell(column).trim();
+            if (text.equalsIgnoreCase("yes") || text.equalsIgnoreCase("true")) {
+                return true;
+            }
+            if (text.equalsIgnoreCase("no") || text.equalsIgnoreCase("false")) {
+                return false;
+            }
+            throw new IllegalArgumentException("invalid " + name + " '" + text + "', expected Yes or No");
+        }
+    }
+}
@@ -0,0 +1,143 @@
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+
+/**
+ * One mutation of the fleet, as published by VehicleEventStream
+ *
+ * Events carry an immutable snapshot of the vehicle's fields rather than the Vehicle itself, so
+ * consumers see the state at the time of the change even if the instance is edited later.
+ * Field names match the stored JSON keys, except that the price is given as "priceCents".
+ */
+public final class VehicleEvent {
+
+    /**
+     * Kind of mutation
+     */
+    public enum Type {
+        ADDED, UPDATED, DELETED
+    }
+
+    /**
+     * A single changed field of an update
+     */
+    public static final class FieldChange {
+        private final String name;
+        private final Object oldValue;
+        private final Object newValue;
+
+        FieldChange(String name, Object oldValue, Object newValue) {
+            this.name = name;
+            this.oldValue = oldValue;
+            this.newValue = newValue;
+        }
+
+        public String getName() { return name; }
+
+        public Object getOldValue() { return oldValue; }
+
+        public Object getNewValue() { return newValue; }
+
+        @Override
+        public String toString() {
+            return name + ": " + oldValue + " -> " + newValue;
+        }
+    }
+
+    private final long sequence;
+    private final Type type;
+    private final long vehicleId;
+    private final Map<String, Object> state;
+    private final List<FieldChange> changes;
+
+    VehicleEvent(long sequence, Type type, long vehicleId, Map<String, Object> state, List<FieldChange> changes) {
+        this.sequence = sequence;
+        this.type = type;
+        this.vehicleId = vehicleId;
+        this.state = state;
+        this.changes = changes;
+    }
+
+    /**
+     * @return Position of the event in the stream, starting at 0
+     */
+    public long getSequence() { return sequence; }
+
+    public Type getType() { return type; }
+
+    public long getVehicleId() { return vehicleId; }
+
+    /**
+     * @return Fields of the vehicle after the change, or before it for a deletion
+     */
+    public Map<String, Object> getState() { return state; }
+
+    /**
+     * @return Fields that differ from the previous state; for additions and deletions, or when the
+     *         previous state is unknown, every field
+     */
+    public List<FieldChange> getChanges() { return changes; }
+
+    @Override
+    public String toString() {
+        return "#" + sequence + " " + type + " " + VehicleId.format(vehicleId)
+                + (type == Type.UPDATED ? " " + changes : "");
+    }
+
+    /**
+     * Captures the fields of a vehicle
+     * @param vehicle The vehicle
+     * @return Field names to values, common fields first
+     */
+    public static Map<String, Object> stateOf(Vehicle vehicle) {
+        Map<String, Object> state = new LinkedHashMap<>();
+        state.put("type", VehicleCodecs.typeNameOf(vehicle));
+        state.put("make", vehicle.getMake());
+        state.put("model", vehicle.getModel());
+        state.put("year", vehicle.getYear());
+        state.put("color", vehicle.getColor());
+        state.put("priceCents", vehicle.getPriceCents());
+        VehicleCodecs.of(vehicle).write(vehicle, new VehicleCodec.FieldWriter() {
+            @Override
+            public void writeInt(String name, int value) {
+                state.put(name, value);
+            }
+
+            @Override
+            public void writeDouble(String name, double value) {
+                state.put(name, value);
+            }
+
+            @Override
+            public void writeString(String name, String value) {
+                state.put(name, value);
+            }
+
+            @Override
+            public void writeBoolean(String name, boolean value) {
+                state.put(name, value);
+            }
+        });
+        return Collections.unmodifiableMap(state);
+    }
+
+    /**
+     * Lists the fields that differ between two states
+     * @param before The previous state, or null if unknown
+     * @param after The new state
+     * @return The changed fields; every field of after if before is null
+     */
+    static List<FieldChange> diff(Map<String, Object> before, Map<String, Object> after) {
+        List<FieldChange> changes = new ArrayList<>();
+        for (Map.Entry<String, Object> entry : after.entrySet()) {
+            Object old = before != null ? before.get(entry.getKey()) : null;
+            if (before == null || !Objects.equals(old, entry.getValue())) {
+                changes.add(new FieldChange(entry.getKey(), old, entry.getValue()));
+            }
+        }
+        return Collections.unmodifiableList(changes);
+    }
+}
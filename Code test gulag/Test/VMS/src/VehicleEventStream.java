@@ -0,0 +1,232 @@
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.Executor;
+import java.util.concurrent.Flow;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+/**
+ * Ordered stream of fleet mutations with replay
+ *
+ * Events are written into a fixed-size ring by a single writer and read without locks: the
+ * writer fills a slot and then advances the published sequence, and each subscriber keeps its
+ * own read position. The writer never waits for subscribers. Each subscriber is driven by its
+ * own demand from Subscription.request, on the stream's executor; one that falls more than the
+ * ring's capacity behind gets onError and can resubscribe from a fresh snapshot.
+ * Subscribers can start from any sequence still in the ring to replay recent history.
+ */
+public class VehicleEventStream implements Flow.Publisher<VehicleEvent>, AutoCloseable {
+    private static final int DEFAULT_CAPACITY = 4096;
+
+    private final AtomicReferenceArray<VehicleEvent> ring;
+    private final int mask;
+    private final Executor executor;
+    private final CopyOnWriteArrayList<EventSubscription> subscriptions = new CopyOnWriteArrayList<>();
+
+    // Sequence of the next event; every event below it is visible in the ring
+    private volatile long published;
+    private volatile boolean closed;
+
+    /**
+     * Creates a stream sized by -Dvms.eventBuffer that delivers on the common pool
+     */
+    public VehicleEventStream() {
+        this(Integer.getInteger("vms.eventBuffer", DEFAULT_CAPACITY), ForkJoinPool.commonPool());
+    }
+
+    /**
+     * Constructor
+     * @param capacity Number of events kept for slow subscribers and replay, rounded up to a power of two
+     * @param executor Runs subscriber callbacks
+     */
+    public VehicleEventStream(int capacity, Executor executor) {
+        int size = Integer.highestOneBit(Math.max(2, capacity) * 2 - 1);
+        this.ring = new AtomicReferenceArray<>(size);
+        this.mask = size - 1;
+        this.executor = executor;
+    }
+
+    /**
+     * Appends an event and notifies subscribers
+     * Must only be called by one thread at a time.
+     * @param type The kind of mutation
+     * @param vehicleId The packed vehicle ID
+     * @param state The vehicle's fields
+     * @param changes The changed fields
+     * @return The event's sequence number
+     */
+    long publish(VehicleEvent.Type type, long vehicleId, Map<String, Object> state,
+                 List<VehicleEvent.FieldChange> changes) {
+        long sequence = published;
+        ring.set((int) (sequence & mask), new VehicleEvent(sequence, type, vehicleId, state, changes));
+        published = sequence + 1;
+        for (EventSubscription subscription : subscriptions) {
+            subscription.signal();
+        }
+        return sequence;
+    }
+
+    /**
+     * @return Sequence number the next event will get
+     */
+    public long getNextSequence() {
+        return published;
+    }
+
+    /**
+     * @return Oldest sequence number that can still be replayed
+     */
+    public long getOldestSequence() {
+        return Math.max(0, published - ring.length());
+    }
+
+    /**
+     * Subscribes to events published from now on
+     * @param subscriber The subscriber
+     */
+    @Override
+    public void subscribe(Flow.Subscriber<? super VehicleEvent> subscriber) {
+        subscribe(subscriber, published);
+    }
+
+    /**
+     * Subscribes starting at a given sequence number, replaying buffered events first
+     * The subscriber gets onError if the sequence is no longer buffered or not yet published.
+     * @param subscriber The subscriber
+     * @param fromSequence Sequence number of the first event to deliver
+     */
+    public void subscribe(Flow.Subscriber<? super VehicleEvent> subscriber, long fromSequence) {
+        Objects.requireNonNull(subscriber, "subscriber");
+        EventSubscription subscription = new EventSubscription(subscriber, fromSequence);
+        subscriber.onSubscribe(subscription);
+        if (fromSequence < getOldestSequence() || fromSequence > published) {
+            subscription.fail(new IllegalArgumentException("Sequence " + fromSequence + " is outside the buffered range "
+                    + getOldestSequence() + ".." + published));
+            return;
+        }
+        subscriptions.add(subscription);
+        subscription.signal();
+    }
+
+    /**
+     * Completes every subscription once it has received all published events
+     */
+    @Override
+    public void close() {
+        closed = true;
+        for (EventSubscription subscription : subscriptions) {
+            subscription.signal();
+        }
+    }
+
+    /**
+     * Read position and demand of one subscriber
+     * Deliveries are serialised by a work-in-progress counter, so at most one executor task
+     * runs the drain loop at a time and signals arriving meanwhile are folded into it.
+     */
+    private final class EventSubscription implements Flow.Subscription, Runnable {
+        private final Flow.Subscriber<? super VehicleEvent> subscriber;
+        private final AtomicLong demand = new AtomicLong();
+        private final AtomicInteger pending = new AtomicInteger();
+        private volatile boolean done;
+        private volatile Throwable error;
+
+        // Only touched by the drain loop
+        private long next;
+
+        EventSubscription(Flow.Subscriber<? super VehicleEvent> subscriber, long fromSequence) {
+            this.subscriber = subscriber;
+            this.next = fromSequence;
+        }
+
+        @Override
+        public void request(long n) {
+            if (n <= 0) {
+                error = new IllegalArgumentException("Requested " + n + " events; demand must be positive");
+            } else {
+                demand.getAndUpdate(current -> current + n < 0 ? Long.MAX_VALUE : current + n);
+            }
+            signal();
+        }
+
+        @Override
+        public void cancel() {
+            done = true;
+            subscriptions.remove(this);
+        }
+
+        void fail(Throwable failure) {
+            error = failure;
+            signal();
+        }
+
+        void signal() {
+            if (pending.getAndIncrement() == 0) {
+                try {
+                    executor.execute(this);
+                } catch (RejectedExecutionException e) {
+                    cancel();
+                }
+            }
+        }
+
+        @Override
+        public void run() {
+            int missed = 1;
+            do {
+                if (done) {
+                    return;
+                }
+                if (error != null) {
+                    terminate();
+                    subscriber.onError(error);
+                    return;
+                }
+
+                long requested = demand.get();
+                long emitted = 0;
+                while (emitted != requested && next < published) {
+                    VehicleEvent event = ring.get((int) (next & mask));
+                    // The slot already holds a later event when this subscriber fell a full ring behind
+                    if (event == null || event.getSequence() != next) {
+                        terminate();
+                        subscriber.onError(new IllegalStateException("Subscriber fell behind; event " + next
+                                + " is no longer buffered"));
+                        return;
+                    }
+                    try {
+                        subscriber.onNext(event);
+                    } catch (RuntimeException e) {
+                        cancel();
+                        return;
+                    }
+                    next++;
+                    emitted++;
+                    if (done) {
+                        return;
+                    }
+                }
+                if (emitted != 0 && requested != Long.MAX_VALUE) {
+                    demand.addAndGet(-emitted);
+                }
+
+                if (closed && next >= published) {
+                    terminate();
+                    subscriber.onComplete();
+                    return;
+                }
+                missed = pending.addAndGet(-missed);
+            } while (missed != 0);
+        }
+
+        private void terminate() {
+            done = true;
+            subscriptions.remove(this);
+        }
+    }
+}
@@ -0,0 +1,109 @@
+/**
+ * Conversion between the textual vehicle IDs used in files and at the CLI and the packed
+ * 64-bit representation used internally
+ *
+ * IDs are lowercase hexadecimal strings. Values that fit in 32 bits are printed as 8 digits
+ * so that the existing 8-character IDs round-trip unchanged, larger ones as 16; each packed
+ * value has exactly one textual form.
+ */
+public final class VehicleId {
+    private static final char[] HEX_DIGITS = "0123456789abcdef".toCharArray();
+
+    private VehicleId() {
+    }
+
+    /**
+     * Checks whether a string is a well-formed vehicle ID
+     * Only the form format produces is accepted: 8 lowercase hex digits, or 16 for IDs that do
+     * not fit in 32 bits. Any other spelling, such as "1", "00000001" or "3F5DBD18", would
+     * collapse onto another ID or be rewritten on save.
+     * @param id The string to check
+     * @return true if the string can be parsed as an ID
+     */
+    public static boolean isValid(String id) {
+        return id != null && isValid(id.toCharArray(), 0, id.length());
+    }
+
+    /**
+     * Checks part of a buffer for a well-formed vehicle ID without creating a string
+     * @param chars The buffer
+     * @param from Start of the ID
+     * @param to End of the ID (exclusive)
+     * @return true if the characters can be parsed as an ID
+     */
+    public static boolean isValid(char[] chars, int from, int to) {
+        int length = to - from;
+        if (length != 8 && length != 16) {
+            return false;
+        }
+        for (int i = from; i < to; i++) {
+            if (digit(chars[i]) < 0) {
+                return false;
+            }
+        }
+        // A 16-digit ID that fits in 32 bits is printed with 8 digits
+        return length == 8 || parseDigits(chars, from, to) >>> 32 != 0;
+    }
+
+    /**
+     * Parses a textual ID into its packed form
+     * @param id The hexadecimal ID string
+     * @return The packed ID
+     * @throws IllegalArgumentException If the string is not a valid ID
+     */
+    public static long parse(String id) {
+        if (id == null) {
+            throw new IllegalArgumentException("Invalid vehicle ID: null");
+        }
+        return parse(id.toCharArray(), 0, id.length());
+    }
+
+    /**
+     * Parses an ID from part of a buffer without creating a string, as parse(String) does
+     * @param chars The buffer
+     * @param from Start of the ID
+     * @param to End of the ID (exclusive)
+     * @return The packed ID
+     * @throws IllegalArgumentException If the characters are not a valid ID
+     */
+    public static long parse(char[] chars, int from, int to) {
+        if (!isValid(chars, from, to)) {
+            throw new IllegalArgumentException("Invalid vehicle ID: " + new String(chars, from, to - from));
+        }
+        return parseDigits(chars, from, to);
+    }
+
+    /**
+     * Formats a packed ID as text
+     * @param id The packed ID
+     * @return 8 hex digits if the ID fits in 32 bits, 16 otherwise
+     */
+    public static String format(long id) {
+        int digits = (id >>> 32) == 0 ? 8 : 16;
+        char[] chars = new char[digits];
+        for (int i = digits - 1; i >= 0; i--) {
+            chars[i] = HEX_DIGITS[(int) (id & 0xF)];
+            id >>>= 4;
+        }
+        return new String(chars);
+    }
+
+    private static long parseDigits(char[] chars, int from, int to) {
+        long value = 0;
+        for (int i = from; i < to; i++) {
+            value = (value << 4) | digit(chars[i]);
+        }
+        return value;
+    }
+
+    /**
+     * @return The value of an ASCII lowercase hex digit, or -1; Character.digit would also accept
+     *         uppercase and non-ASCII digits
+     */
+    private static int digit(char c) {
+        if (c >= '0' && c <= '9') {
+            return c - '0';
+        }
+        return c >= 'a' && c <= 'f' ? c - 'a' + 10 : -1;
+    }
+}
@@ -0,0 +1,694 @@
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Builds vehicles straight from JSON text without an intermediate map
+ *
+ * The reader tokenises one object at a time, recording where each value lies in the buffer.
+ * Common fields are recognised by a switch on the key as it is read; numbers are parsed
+ * from the characters into primitives, and repeated strings (makes, colors, ...) come from
+ * a small cache keyed by their characters. Apart from malformed input, a record costs only
+ * the Vehicle and the strings it keeps. A reader is not thread-safe; use one per thread.
+ */
+public class VehicleJsonReader {
+    // Slots of the common fields, assigned by keyCode()
+    private static final int ID = 0;
+    private static final int MAKE = 1;
+    private static final int MODEL = 2;
+    private static final int YEAR = 3;
+    private static final int COLOR = 4;
+    private static final int PRICE = 5;
+    private static final int TYPE = 6;
+    private static final int COMMON_FIELDS = 7;
+    private static final int OTHER = -1;
+
+    // Mantissas up to 2^53 and powers of ten up to 1e22 are exact doubles, so one
+    // multiplication or division gives a correctly rounded result
+    private static final long MAX_EXACT_MANTISSA = 1L << 53;
+    private static final double[] POWERS_OF_TEN = {
+        1e0, 1e1, 1e2, 1e3, 1e4, 1e5, 1e6, 1e7, 1e8, 1e9, 1e10, 1e11,
+        1e12, 1e13, 1e14, 1e15, 1e16, 1e17, 1e18, 1e19, 1e20, 1e21, 1e22
+    };
+
+    private static final int STRING_CACHE_SIZE = 4096;
+
+    private char[] buf;
+    private int pos;
+    private int end;
+
+    // Fields of the current object: key range, value token range, and whether a string value has escapes
+    private int fieldCount;
+    private int[] keyStart = new int[16];
+    private int[] keyEnd = new int[16];
+    private int[] valueStart = new int[16];
+    private int[] valueEnd = new int[16];
+    private boolean[] escaped = new boolean[16];
+    private final int[] commonSlots = new int[COMMON_FIELDS];
+
+    private final String[] stringCache = new String[STRING_CACHE_SIZE];
+    private final FieldSource fieldSource = new FieldSource();
+
+    /**
+     * Reads a JSON array of vehicles
+     * Objects that cannot be turned into a vehicle are reported and skipped.
+     * @param chars The buffer
+     * @param from Start of the array text
+     * @param to End of the array text (exclusive)
+     * @return The vehicles, in array order
+     * @throws IllegalArgumentException If the array itself is malformed
+     */
+    public List<Vehicle> readArray(char[] chars, int from, int to) {
+        List<Vehicle> vehicles = new ArrayList<>();
+        reset(chars, from, to);
+        skipWhitespace();
+        expect('[');
+        skipWhitespace();
+        if (pos < end && buf[pos] == ']') {
+            return vehicles;
+        }
+
+        while (true) {
+            skipWhitespace();
+            readElement(vehicles);
+            skipWhitespace();
+            if (pos >= end) {
+                throw error("Unterminated array");
+            }
+            char c = buf[pos++];
+            if (c == ']') {
+                return vehicles;
+            }
+            if (c != ',') {
+                throw error("Expected ',' or ']'");
+            }
+        }
+    }
+
+    /**
+     * Reads line-delimited JSON, one vehicle object per non-blank line
+     * @param chars The buffer
+     * @param from Start of the text
+     * @param to End of the text (exclusive)
+     * @param vehicles Receives the vehicles, in line order
+     */
+    public void readLines(char[] chars, int from, int to, List<Vehicle> vehicles) {
+        int lineStart = from;
+        for (int i = from; i <= to; i++) {
+            if (i == to || chars[i] == '\n') {
+                reset(chars, lineStart, i);
+                lineStart = i + 1;
+                skipWhitespace();
+                if (pos < end) {
+                    try {
+                        readElement(vehicles);
+                    } catch (IllegalArgumentException e) {
+                        System.err.println("Error processing vehicle: " + e.getMessage());
+                    }
+                }
+            }
+        }
+    }
+
+    /**
+     * Reads a single vehicle object
+     * @param chars The buffer
+     * @param from Start of the object text
+     * @param to End of the object text (exclusive)
+     * @return The vehicle, or null if it cannot be created
+     */
+    public Vehicle readObject(char[] chars, int from, int to) {
+        reset(chars, from, to);
+        skipWhitespace();
+        List<Vehicle> result = new ArrayList<>(1);
+        try {
+            readElement(result);
+        } catch (IllegalArgumentException e) {
+            System.err.println("Error processing vehicle: " + e.getMessage());
+        }
+        return result.isEmpty() ? null : result.get(0);
+    }
+
+    private void reset(char[] chars, int from, int to) {
+        this.buf = chars;
+        this.pos = from;
+        this.end = to;
+    }
+
+    /**
+     * Reads one object at the current position and adds its vehicle
+     * If the object is well-formed JSON but not a valid vehicle, it is reported and skipped.
+     */
+    private void readElement(List<Vehicle> vehicles) {
+        int start = pos;
+        tokeniseObject();
+        try {
+            Vehicle vehicle = buildVehicle();
+            if (vehicle != null) {
+                vehicles.add(vehicle);
+            }
+        } catch (RuntimeException e) {
+            System.err.println("Error processing vehicle at position " + start + ": " + e.getMessage());
+        }
+    }
+
+    /**
+     * Records the key and value ranges of the object at the current position
+     */
+    private void tokeniseObject() {
+        expect('{');
+        fieldCount = 0;
+        for (int i = 0; i < COMMON_FIELDS; i++) {
+            commonSlots[i] = -1;
+        }
+
+        skipWhitespace();
+        if (pos < end && buf[pos] == '}') {
+            pos++;
+            return;
+        }
+
+        while (true) {
+            skipWhitespace();
+            expect('"');
+            int keyFrom = pos;
+            skipStringBody();
+            int keyTo = pos - 1;
+
+            skipWhitespace();
+            expect(':');
+            skipWhitespace();
+
+            if (fieldCount == keyStart.length) {
+                growFields();
+            }
+            int slot = fieldCount++;
+            keyStart[slot] = keyFrom;
+            keyEnd[slot] = keyTo;
+            valueStart[slot] = pos;
+            escaped[slot] = skipValue();
+            valueEnd[slot] = pos;
+
+            int code = keyCode(keyFrom, keyTo);
+            if (code != OTHER) {
+                commonSlots[code] = slot;
+            }
+
+            skipWhitespace();
+            if (pos >= end) {
+                throw error("Unterminated object");
+            }
+            char c = buf[pos++];
+            if (c == '}') {
+                return;
+            }
+            if (c != ',') {
+                throw error("Expected ',' or '}'");
+            }
+        }
+    }
+
+    /**
+     * Identifies the common fields by length and then by content
+     */
+    private int keyCode(int from, int to) {
+        switch (to - from) {
+            case 2:
+                return keyEquals(from, to, "id") ? ID : OTHER;
+            case 4:
+                if (keyEquals(from, to, "make")) return MAKE;
+                if (keyEquals(from, to, "year")) return YEAR;
+                if (keyEquals(from, to, "type")) return TYPE;
+                return OTHER;
+            case 5:
+                if (keyEquals(from, to, "model")) return MODEL;
+                if (keyEquals(from, to, "color")) return COLOR;
+                if (keyEquals(from, to, "price")) return PRICE;
+                return OTHER;
+            default:
+                return OTHER;
+        }
+    }
+
+    private boolean keyEquals(int from, int to, String name) {
+        if (to - from != name.length()) {
+            return false;
+        }
+        for (int i = 0; i < name.length(); i++) {
+            if (buf[from + i] != name.charAt(i)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private Vehicle buildVehicle() {
+        int typeSlot = commonSlots[TYPE];
+        if (typeSlot < 0 || isNull(typeSlot)) {
+            System.err.println("Warning: Vehicle missing type information, skipping");
+            return null;
+        }
+        VehicleCodec<?> codec = findCodec(typeSlot);
+        if (codec == null) {
+            System.err.println("Unknown vehicle type: " + rawValue(typeSlot));
+            return null;
+        }
+
+        long id = readId(commonSlots[ID]);
+        String make = stringValue(commonSlots[MAKE], "");
+        String model = stringValue(commonSlots[MODEL], "");
+        int year = intValue(commonSlots[YEAR], 0);
+        String color = stringValue(commonSlots[COLOR], "");
+        long priceCents = centsValue(commonSlots[PRICE], 0);
+        return codec.read(id, make, model, year, color, priceCents, fieldSource);
+    }
+
+    /**
+     * Finds the codec named by a string value without creating the string
+     */
+    private VehicleCodec<?> findCodec(int slot) {
+        int from = valueStart[slot] + 1;
+        int to = valueEnd[slot] - 1;
+        if (buf[valueStart[slot]] != '"' || escaped[slot]) {
+            return VehicleCodecs.forName(stringValue(slot, null));
+        }
+        for (VehicleCodec<?> codec : VehicleCodecs.all()) {
+            String name = codec.getTypeName();
+            if (name.length() != to - from) {
+                continue;
+            }
+            int i = 0;
+            while (i < name.length() && Character.toLowerCase(buf[from + i]) == Character.toLowerCase(name.charAt(i))) {
+                i++;
+            }
+            if (i == name.length()) {
+                return codec;
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Parses a hexadecimal vehicle ID, assigning a fresh one if it is missing or invalid
+     */
+    private long readId(int slot) {
+        if (slot < 0 || isNull(slot)) {
+            return IdAllocator.getDefault().next();
+        }
+
+        int from = valueStart[slot];
+        int to = valueEnd[slot];
+        if (buf[from] == '"') {
+            from++;
+            to--;
+        }
+        if (!escaped[slot] && VehicleId.isValid(buf, from, to)) {
+            return VehicleId.parse(buf, from, to);
+        }
+
+        long newId = IdAllocator.getDefault().next();
+        System.err.println("Warning: Invalid vehicle ID '" + rawValue(slot) + "', assigning " + VehicleId.format(newId));
+        return newId;
+    }
+
+    private boolean isNull(int slot) {
+        return buf[valueStart[slot]] == 'n';
+    }
+
+    private String rawValue(int slot) {
+        int from = valueStart[slot];
+        int to = valueEnd[slot];
+        if (buf[from] == '"') {
+            return escaped[slot] ? unescape(from + 1, to - 1) : new String(buf, from + 1, to - from - 2);
+        }
+        return new String(buf, from, to - from);
+    }
+
+    /**
+     * Returns a string value, reusing a cached instance when the same characters were seen before
+     */
+    private String stringValue(int slot, String defaultValue) {
+        if (slot < 0 || isNull(slot)) {
+            return defaultValue;
+        }
+        int from = valueStart[slot];
+        int to = valueEnd[slot];
+        if (buf[from] != '"') {
+            return new String(buf, from, to - from);
+        }
+        from++;
+        to--;
+        if (escaped[slot]) {
+            return unescape(from, to);
+        }
+
+        int hash = 0;
+        for (int i = from; i < to; i++) {
+            hash = 31 * hash + buf[i];
+        }
+        int index = (hash ^ (hash >>> 16)) & (STRING_CACHE_SIZE - 1);
+        String cached = stringCache[index];
+        if (cached != null && cached.length() == to - from) {
+            int i = 0;
+            while (i < cached.length() && cached.charAt(i) == buf[from + i]) {
+                i++;
+            }
+            if (i == cached.length()) {
+                return cached;
+            }
+        }
+        String value = new String(buf, from, to - from);
+        stringCache[index] = value;
+        return value;
+    }
+
+    private String unescape(int from, int to) {
+        StringBuilder builder = new StringBuilder(to - from);
+        for (int i = from; i < to; i++) {
+            char c = buf[i];
+            if (c != '\\' || i + 1 >= to) {
+                builder.append(c);
+                continue;
+            }
+            char next = buf[++i];
+            switch (next) {
+                case 'n': builder.append('\n'); break;
+                case 'r': builder.append('\r'); break;
+                case 't': builder.append('\t'); break;
+                case 'b': builder.append('\b'); break;
+                case 'f': builder.append('\f'); break;
+                case 'u':
+                    if (i + 4 < to) {
+                        builder.append((char) Integer.parseInt(new String(buf, i + 1, 4), 16));
+                        i += 4;
+                    }
+                    break;
+                default: builder.append(next);
+            }
+        }
+        return builder.toString();
+    }
+
+    private int intValue(int slot, int defaultValue) {
+        if (slot < 0 || isNull(slot)) {
+            return defaultValue;
+        }
+        int from = valueStart[slot];
+        int to = valueEnd[slot];
+        if (buf[from] == '"') {
+            from++;
+            to--;
+        }
+
+        boolean negative = from < to && buf[from] == '-';
+        int i = negative ? from + 1 : from;
+        long value = 0;
+        for (; i < to; i++) {
+            char c = buf[i];
+            if (c < '0' || c > '9') {
+                break;
+            }
+            value = value * 10 + (c - '0');
+            if (value > Integer.MAX_VALUE + 1L) {
+                System.err.println("Error parsing integer: " + rawValue(slot));
+                return defaultValue;
+            }
+        }
+        if (i == to && i > (negative ? from + 1 : from)) {
+            long signed = negative ? -value : value;
+            if (signed <= Integer.MAX_VALUE) {
+                return (int) signed;
+            }
+        }
+
+        // Fractions and exponents are truncated like Number.intValue()
+        double parsed = parseDouble(from, to);
+        if (Double.isNaN(parsed)) {
+            System.err.println("Error parsing integer: " + rawValue(slot));
+            return defaultValue;
+        }
+        return (int) parsed;
+    }
+
+    private double doubleValue(int slot, double defaultValue) {
+        if (slot < 0 || isNull(slot)) {
+            return defaultValue;
+        }
+        int from = valueStart[slot];
+        int to = valueEnd[slot];
+        if (buf[from] == '"') {
+            from++;
+            to--;
+        }
+        double parsed = parseDouble(from, to);
+        if (Double.isNaN(parsed)) {
+            System.err.println("Error parsing double: " + rawValue(slot));
+            return defaultValue;
+        }
+        return parsed;
+    }
+
+    /**
+     * Reads a price straight from its digits, so decimal amounts are exact without going through double
+     */
+    private long centsValue(int slot, long defaultValue) {
+        if (slot < 0 || isNull(slot)) {
+            return defaultValue;
+        }
+        int from = valueStart[slot];
+        int to = valueEnd[slot];
+        if (buf[from] == '"') {
+            from++;
+            to--;
+        }
+        try {
+            return Money.parse(buf, from, to);
+        } catch (NumberFormatException | ArithmeticException e) {
+            System.err.println("Error parsing price: " + rawValue(slot));
+            return defaultValue;
+        }
+    }
+
+    private boolean booleanValue(int slot, boolean defaultValue) {
+        if (slot < 0 || isNull(slot)) {
+            return defaultValue;
+        }
+        int from = valueStart[slot];
+        int to = valueEnd[slot];
+        if (buf[from] == '"') {
+            from++;
+            to--;
+        }
+        if (matchesIgnoreCase(from, to, "true")) {
+            return true;
+        }
+        if (matchesIgnoreCase(from, to, "false")) {
+            return false;
+        }
+        System.err.println("Error parsing boolean: " + rawValue(slot));
+        return defaultValue;
+    }
+
+    private boolean matchesIgnoreCase(int from, int to, String word) {
+        if (to - from != word.length()) {
+            return false;
+        }
+        for (int i = 0; i < word.length(); i++) {
+            if (Character.toLowerCase(buf[from + i]) != word.charAt(i)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Parses a decimal number from the buffer
+     * Short mantissas with small exponents are computed exactly from the digits; anything
+     * else goes through Double.parseDouble so every input is rounded correctly.
+     * @return The value, or NaN if the characters are not a number
+     */
+    private double parseDouble(int from, int to) {
+        int i = from;
+        boolean negative = i < to && buf[i] == '-';
+        if (negative || (i < to && buf[i] == '+')) {
+            i++;
+        }
+
+        long mantissa = 0;
+        int exponent = 0;
+        int digits = 0;
+        boolean exact = true;
+        for (; i < to && buf[i] >= '0' && buf[i] <= '9'; i++, digits++) {
+            if (mantissa < (Long.MAX_VALUE - 9) / 10) {
+                mantissa = mantissa * 10 + (buf[i] - '0');
+            } else {
+                exact = false;
+            }
+        }
+        if (i < to && buf[i] == '.') {
+            for (i++; i < to && buf[i] >= '0' && buf[i] <= '9'; i++, digits++) {
+                if (mantissa < (Long.MAX_VALUE - 9) / 10) {
+                    mantissa = mantissa * 10 + (buf[i] - '0');
+                    exponent--;
+                } else {
+                    exact = false;
+                }
+            }
+        }
+        if (digits == 0) {
+            return Double.NaN;
+        }
+        if (i < to && (buf[i] == 'e' || buf[i] == 'E')) {
+            i++;
+            boolean negativeExponent = i < to && buf[i] == '-';
+            if (negativeExponent || (i < to && buf[i] == '+')) {
+                i++;
+            }
+            int explicit = 0;
+            int exponentDigits = 0;
+            for (; i < to && buf[i] >= '0' && buf[i] <= '9'; i++, exponentDigits++) {
+                explicit = Math.min(explicit * 10 + (buf[i] - '0'), 100_000);
+            }
+            if (exponentDigits == 0) {
+                return Double.NaN;
+            }
+            exponent += negativeExponent ? -explicit : explicit;
+        }
+        if (i != to) {
+            return Double.NaN;
+        }
+
+        if (exact && mantissa <= MAX_EXACT_MANTISSA && exponent >= -22 && exponent <= 22) {
+            double value = exponent < 0 ? mantissa / POWERS_OF_TEN[-exponent] : mantissa * POWERS_OF_TEN[exponent];
+            return negative ? -value : value;
+        }
+        return Double.parseDouble(new String(buf, from, to - from));
+    }
+
+    /**
+     * Skips the value at the current position
+     * @return true if the value is a string containing escape sequences
+     */
+    private boolean skipValue() {
+        if (pos >= end) {
+            throw error("Missing value");
+        }
+        char c = buf[pos];
+        if (c == '"') {
+            pos++;
+            return skipStringBody();
+        }
+        if (c == '{' || c == '[') {
+            skipNested();
+            return false;
+        }
+        while (pos < end) {
+            c = buf[pos];
+            if (c == ',' || c == '}' || c == ']' || c <= ' ') {
+                break;
+            }
+            pos++;
+        }
+        return false;
+    }
+
+    /**
+     * Skips to just past the closing quote of a string whose opening quote was consumed
+     * @return true if the string contains escape sequences
+     */
+    private boolean skipStringBody() {
+        boolean hasEscape = false;
+        while (pos < end) {
+            char c = buf[pos++];
+            if (c == '"') {
+                return hasEscape;
+            }
+            if (c == '\\') {
+                hasEscape = true;
+                pos++;
+            }
+        }
+        throw error("Unterminated string");
+    }
+
+    private void skipNested() {
+        int depth = 0;
+        while (pos < end) {
+            char c = buf[pos++];
+            if (c == '"') {
+                skipStringBody();
+            } else if (c == '{' || c == '[') {
+                depth++;
+            } else if (c == '}' || c == ']') {
+                if (--depth == 0) {
+                    return;
+                }
+            }
+        }
+        throw error("Unterminated value");
+    }
+
+    private void skipWhitespace() {
+        while (pos < end && buf[pos] <= ' ') {
+            pos++;
+        }
+    }
+
+    private void expect(char expected) {
+        if (pos >= end || buf[pos] != expected) {
+            throw error("Expected '" + expected + "'");
+        }
+        pos++;
+    }
+
+    private IllegalArgumentException error(String message) {
+        return new IllegalArgumentException(message + " at position " + pos);
+    }
+
+    private void growFields() {
+        int capacity = keyStart.length * 2;
+        keyStart = Arrays.copyOf(keyStart, capacity);
+        keyEnd = Arrays.copyOf(keyEnd, capacity);
+        valueStart = Arrays.copyOf(valueStart, capacity);
+        valueEnd = Arrays.copyOf(valueEnd, capacity);
+        escaped = Arrays.copyOf(escaped, capacity);
+    }
+
+    /**
+     * Finds a field of the current object by key
+     * @return The slot, or -1 if the object has no such field
+     */
+    private int slotOf(String name) {
+        for (int slot = 0; slot < fieldCount; slot++) {
+            if (keyEquals(keyStart[slot], keyEnd[slot], name)) {
+                return slot;
+            }
+        }
+        return -1;
+    }
+
+    /**
+     * Supplies the type-specific fields of the current object to a codec
+     */
+    private final class FieldSource implements VehicleCodec.FieldReader {
+        @Override
+        public int readInt(String name, int defaultValue) {
+            return intValue(slotOf(name), defaultValue);
+        }
+
+        @Override
+        public double readDouble(String name, double defaultValue) {
+            return doubleValue(slotOf(name), defaultValue);
+        }
+
+        @Override
+        public String readString(String name, String defaultValue) {
+            return stringValue(slotOf(name), defaultValue);
+        }
+
+        @Override
+        public boolean readBoolean(String name, boolean defaultValue) {
+            return booleanValue(slotOf(name), defaultValue);
+        }
+    }
+}
@@ -1,18 +1,217 @@
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
 import java.util.ArrayList;
+import java.util.Collections;
+import java.util.EnumMap;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
 import java.util.Scanner;
-import java.util.UUID;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.BooleanSupplier;
+import java.util.function.Consumer;
+import java.util.function.Predicate;
 
 /**
  * Manages vehicle operations including CRUD functionality
  */
 public class VehicleManager {
     private List<Vehicle> vehicles;
-    private JSONHandler jsonHandler;
+    private LongVehicleMap vehicleIndex;
+    private final VehicleStore store;
+    private final IdAllocator idAllocator = IdAllocator.getDefault();
+    
+    // Lazily materialised fleet, or null when every vehicle is loaded up front
+    private LazyVehicleStore lazyStore;
+    
+    // Fleet kept outside the heap, or null when vehicles are held as heap objects
+    private OffHeapVehicleStore offHeapStore;
+    
+    // Built on the first search and then kept up to date by every mutation
+    private VehiclePrefixIndex prefixIndex;
+    
+    // Sorted orderings built on demand for pagination; dropped whenever the fleet changes
+    private final Map<VehicleSortKey, VehicleRanking.SortedIndex> sortedIndexes = new EnumMap<>(VehicleSortKey.class);
+    
+    // Columnar snapshot for filter and aggregate scans; dropped whenever the fleet changes
+    private VehicleColumns columns;
+    
+    // Latest version for snapshot readers; built on the first snapshot and then kept up to date by every mutation
+    private volatile FleetVersion fleetVersion;
+    
+    // Version assembled while a transaction commits, published in one step once it is persisted
+    private FleetVersion stagedVersion;
+    
+    // Mutation events for downstream consumers
+    private final VehicleEventStream events = new VehicleEventStream();
+    
+    // Background snapshots and compaction, or null unless enabled with -Dvms.maintenance=true
+    private MaintenanceScheduler maintenance;
+    
+    // Mutations since the last snapshot was written
+    private final AtomicLong changesSinceSnapshot = new AtomicLong();
+    
+    // Field snapshots of vehicles handed out for editing, so in-place edits can be diffed on update
+    private final Map<Long, Map<String, Object>> editSnapshots = new LinkedHashMap<Long, Map<String, Object>>(16, 0.75f, true) {
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<Long, Map<String, Object>> eldest) {
+            return size() > 64;
+        }
+    };
     
     public VehicleManager() {
-        this.jsonHandler = new JSONHandler();
-        this.vehicles = jsonHandler.loadVehicles();
+        this(createDefaultStore());
+    }
+    
+    /**
+     * Constructor
+     * @param store The persistence backend
+     */
+    public VehicleManager(VehicleStore store) {
+        this.store = store;
+        
+        // Opt into lazy loading with -Dvms.lazy=true (uncompressed single JSON file only)
+        if (Boolean.getBoolean("vms.lazy") && store instanceof JSONHandler) {
+            JSONHandler jsonHandler = (JSONHandler) store;
+            if (!jsonHandler.isSharded() && jsonHandler.getCompression() == JSONHandler.Compression.NONE) {
+                this.lazyStore = LazyVehicleStore.open(new File(jsonHandler.getDataFilePath()), jsonHandler,
+                                                       Integer.getInteger("vms.lazyCache", 10000));
+                if (lazyStore != null) {
+                    warnHeapOnlyOptions("lazy");
+                    return;
+                }
+            }
+        }
+        
+        // Opt into off-heap storage with -Dvms.offHeap=true, or -Dvms.offHeapFile=<path> to map it from a file
+        String offHeapFile = System.getProperty("vms.offHeapFile");
+        if (Boolean.getBoolean("vms.offHeap") || offHeapFile != null) {
+            this.offHeapStore = OffHeapVehicleStore.open(offHeapFile != null ? new File(offHeapFile) : null);
+            if (offHeapStore != null) {
+                // Stream the file record by record; the JSON handler's own store keeps every vehicle on the heap
+                Consumer<Vehicle> load = vehicle -> {
+                    if (offHeapStore.contains(vehicle.getIdValue())) {
+                        System.err.println("Warning: Duplicate vehicle ID " + vehicle.getId());
+                    }
+                    offHeapStore.put(vehicle);
+                };
+                if (store instanceof JSONHandler) {
+                    try {
+                        ((JSONHandler) store).streamVehicles(load);
+                    } catch (IOException e) {
+                        System.err.println("Error reading data file: " + e.getMessage());
+                    }
+                } else {
+                    store.loadAll().forEach(load);
+                }
+                warnHeapOnlyOptions("off-heap");
+                return;
+            }
+        }
+        
+        this.vehicles = store.loadAll();
+        this.vehicleIndex = indexVehicles(vehicles);
+        
+        // Opt into picking up replacements of the data file by other programs with -Dvms.watch=true
+        if (Boolean.getBoolean("vms.watch") && store instanceof JSONHandler) {
+            ((JSONHandler) store).startWatching();
+        }
+        
+        // Opt into background snapshots and compaction with -Dvms.maintenance=true
+        if (Boolean.getBoolean("vms.maintenance") && store instanceof JSONHandler) {
+            startMaintenance((JSONHandler) store);
+        }
+    }
+    
+    /**
+     * Reports options that only apply to a heap fleet, so they are not silently ignored
+     * Lazy and off-heap fleets write the data file directly, without the lock and journal of
+     * shared access, so sharing is switched off rather than pretended.
+     * @param mode The storage mode in use
+     */
+    private void warnHeapOnlyOptions(String mode) {
+        for (String option : new String[] {"vms.watch", "vms.maintenance", "vms.shared"}) {
+            if (Boolean.getBoolean(option)) {
+                System.err.println("Warning: -D" + option + " is not supported in " + mode + " mode and is ignored");
+            }
+        }
+        if (store instanceof JSONHandler && ((JSONHandler) store).isSharedAccess()) {
+            JSONHandler jsonHandler = (JSONHandler) store;
+            jsonHandler.disableSharedAccess();
+            System.err.println("Warning: saves are not coordinated with other processes; another process using "
+                    + jsonHandler.getDataFilePath() + " will overwrite this one's changes or lose its own");
+        }
+    }
+    
+    /**
+     * Schedules snapshots of the fleet and compaction of the data file and shared journal
+     * Snapshots are written from the versioned fleet, so they are consistent without blocking
+     * mutations, and are what the fleet is recovered from if the data file becomes unreadable.
+     * All maintenance writes share -Dvms.maintenanceRate bytes per second (8 MB by default).
+     * @param handler The JSON store
+     */
+    private void startMaintenance(JSONHandler handler) {
+        fleetVersion = FleetVersion.of(vehicles);
+        maintenance = new MaintenanceScheduler(Long.getLong("vms.maintenanceRate", 8L << 20), 1000);
+        
+        maintenance.schedule("snapshot", changesSinceSnapshot::get, 10000, TimeUnit.MINUTES.toMillis(5), context -> {
+            long changes = changesSinceSnapshot.get();
+            handler.writeSnapshot(fleetVersion, context::throttle);
+            changesSinceSnapshot.addAndGet(-changes);
+        });
+        maintenance.schedule("compact-data-file", handler::getAppendedBytes, 4L << 20, TimeUnit.MINUTES.toMillis(10),
+                             context -> handler.compactDataFile(context::throttle));
+        if (handler.isSharedAccess()) {
+            maintenance.schedule("compact-journal", handler::getJournalBytes, 1L << 20,
+                                 TimeUnit.MINUTES.toMillis(10), context -> handler.compactJournal());
+        }
+    }
+    
+    /**
+     * @return The background maintenance scheduler, or null if maintenance is not enabled
+     */
+    public MaintenanceScheduler getMaintenance() {
+        return maintenance;
+    }
+    
+    /**
+     * Builds the ID index of a heap fleet, warning about duplicate IDs
+     * @param fleet The vehicles
+     * @return The index
+     */
+    private static LongVehicleMap indexVehicles(List<Vehicle> fleet) {
+        LongVehicleMap index = new LongVehicleMap(fleet.size());
+        for (Vehicle vehicle : fleet) {
+            if (index.put(vehicle.getIdValue(), vehicle) != null) {
+                System.err.println("Warning: Duplicate vehicle ID " + vehicle.getId());
+            }
+        }
+        return index;
+    }
+    
+    /**
+     * Chooses the backend from system properties
+     * -Dvms.jdbcUrl=jdbc:h2:./vehicles selects an SQL database, otherwise the JSON data file is used
+     * @return The store
+     */
+    private static VehicleStore createDefaultStore() {
+        String url = System.getProperty("vms.jdbcUrl");
+        if (url != null) {
+            VehicleStore store = JdbcVehicleStore.open(url);
+            if (store != null) {
+                return store;
+            }
+            System.err.println("Falling back to the JSON data file");
+        }
+        return new JSONHandler();
     }
     
     /**
@@ -21,11 +220,117 @@ public class VehicleManager {
      * @return true if successful
      */
     public boolean addVehicle(Vehicle vehicle) {
-        boolean result = vehicles.add(vehicle);
-        if (result) {
-            jsonHandler.saveVehicles(vehicles);
+        catchUp();
+        if (containsId(vehicle.getIdValue())) {
+            return false;
+        }
+        boolean saved = applyAndPersist(vehicle.getIdValue(), vehicle, null, null, () -> {
+            if (lazyStore != null) {
+                return lazyStore.save();
+            }
+            if (offHeapStore != null) {
+                return persistOffHeap(vehicle, true);
+            }
+            return store.upsert(vehicle);
+        });
+        if (saved) {
+            publishChange(VehicleEvent.Type.ADDED, vehicle.getIdValue(), vehicle, null);
+        }
+        return saved;
+    }
+    
+    /**
+     * Adds many vehicles with a single write to persistent storage
+     * Vehicles whose ID is already in use are skipped. If the write fails, none of the vehicles
+     * are kept.
+     * @param added The vehicles to add
+     * @return true if the vehicles were persisted
+     */
+    public boolean addVehicles(List<Vehicle> added) {
+        catchUp();
+        Map<Long, Vehicle> accepted = new LinkedHashMap<>();
+        Map<Long, Vehicle> previous = new LinkedHashMap<>();
+        for (Vehicle vehicle : added) {
+            long id = vehicle.getIdValue();
+            if (containsId(id) || accepted.containsKey(id)) {
+                continue;
+            }
+            accepted.put(id, vehicle);
+            previous.put(id, null);
+        }
+        if (accepted.isEmpty()) {
+            return true;
+        }
+        
+        if (!applyAndPersist(accepted, previous)) {
+            return false;
+        }
+        for (Vehicle vehicle : accepted.values()) {
+            publishChange(VehicleEvent.Type.ADDED, vehicle.getIdValue(), vehicle, null);
+        }
+        return true;
+    }
+    
+    /**
+     * Imports vehicles from a CSV file in the layout written by exportCsv
+     * Rows are parsed in parallel and added in one batch; rows without an ID get a new one.
+     * @param file The CSV file
+     * @return The imported vehicles, and an error for every rejected row
+     * @throws IOException If the file cannot be read
+     */
+    public VehicleCsv.ImportResult importCsv(File file) throws IOException {
+        VehicleCsv.ImportResult parsed;
+        try (InputStream in = new FileInputStream(file)) {
+            parsed = VehicleCsv.read(in, idAllocator::next);
+        }
+        
+        List<Vehicle> parsedVehicles = parsed.getVehicles();
+        List<Vehicle> accepted = new ArrayList<>(parsedVehicles.size());
+        int[] lines = new int[parsedVehicles.size()];
+        List<String> errors = new ArrayList<>(parsed.getErrors());
+        LongVehicleMap seen = new LongVehicleMap(parsedVehicles.size());
+        for (int i = 0; i < parsedVehicles.size(); i++) {
+            Vehicle vehicle = parsedVehicles.get(i);
+            long id = vehicle.getIdValue();
+            if (containsId(id) || seen.put(id, vehicle) != null) {
+                errors.add("Line " + parsed.getLine(i) + ": duplicate vehicle ID " + vehicle.getId());
+                continue;
+            }
+            lines[accepted.size()] = parsed.getLine(i);
+            accepted.add(vehicle);
+        }
+        
+        if (!addVehicles(accepted)) {
+            // Nothing was kept, so every accepted row failed
+            for (int i = 0; i < accepted.size(); i++) {
+                errors.add("Line " + lines[i] + ": vehicle " + accepted.get(i).getId() + " could not be saved");
+            }
+            return new VehicleCsv.ImportResult(new ArrayList<>(), new int[0], errors);
+        }
+        return new VehicleCsv.ImportResult(accepted, lines, errors);
+    }
+    
+    /**
+     * Writes the fleet to a CSV file, streaming vehicles straight to a buffered writer
+     * A heap fleet is written from a snapshot, so changes made meanwhile do not tear the export;
+     * lazy and off-heap fleets are streamed from their store's view.
+     * @param file The destination file
+     * @return Number of vehicles written, or -1 on error
+     */
+    public long exportCsv(File file) {
+        try (FleetSnapshot snapshot = openSnapshot()) {
+            return writeCsv(file, snapshot);
+        }
+    }
+    
+    private static long writeCsv(File file, Iterable<Vehicle> fleet) {
+        try (Writer out = new BufferedWriter(new OutputStreamWriter(new FileOutputStream(file), StandardCharsets.UTF_8),
+                                             1 << 16)) {
+            return VehicleCsv.write(fleet, out);
+        } catch (IOException e) {
+            System.err.println("Error writing CSV file " + file + ": " + e.getMessage());
+            return -1;
         }
-        return result;
     }
     
     /**
@@ -48,49 +353,134 @@ public class VehicleManager {
         String color = scanner.nextLine().trim();
         
         System.out.print("Price: ");
-        double price = Double.parseDouble(scanner.nextLine().trim());
+        long priceCents = Money.parse(scanner.nextLine());
         
         // Generate a unique ID
-        String id = UUID.randomUUID().toString().substring(0, 8);
+        long id = generateVehicleId();
         
-        if (type.equalsIgnoreCase("Car")) {
-            System.out.print("Number of doors: ");
-            int numDoors = Integer.parseInt(scanner.nextLine().trim());
-            
-            System.out.print("Transmission type: ");
-            String transmissionType = scanner.nextLine().trim();
-            
-            System.out.print("Engine size (L): ");
-            double engineSize = Double.parseDouble(scanner.nextLine().trim());
-            
-            return new Car(id, make, model, year, color, price, numDoors, transmissionType, engineSize);
-            
-        } else if (type.equalsIgnoreCase("Truck")) {
-            System.out.print("Cargo capacity: ");
-            double cargoCapacity = Double.parseDouble(scanner.nextLine().trim());
-            
-            System.out.print("Drive type: ");
-            String driveType = scanner.nextLine().trim();
-            
-            System.out.print("Has tow package (yes/no): ");
-            boolean hasTowPackage = scanner.nextLine().trim().equalsIgnoreCase("yes");
-            
-            return new Truck(id, make, model, year, color, price, cargoCapacity, driveType, hasTowPackage);
+        VehicleCodec<?> codec = VehicleCodecs.forName(type);
+        if (codec == null) {
+            return null;
+        }
+        return codec.read(id, make, model, year, color, priceCents, promptReader(scanner, codec));
+    }
+    
+    /**
+     * Creates a field source that prompts for each type-specific field of a codec
+     * @param scanner Scanner for reading input
+     * @param codec The codec whose fields are read
+     * @return The field reader
+     */
+    private static VehicleCodec.FieldReader promptReader(Scanner scanner, VehicleCodec<?> codec) {
+        return new VehicleCodec.FieldReader() {
+            private String prompt(String name) {
+                VehicleCodec.Field field = codec.getField(name);
+                String label = field != null ? field.getLabel() : name;
+                if (field != null && field.getKind() == VehicleCodec.Kind.BOOLEAN) {
+                    label += " (yes/no)";
+                }
+                System.out.print(label + ": ");
+                return scanner.nextLine().trim();
+            }
             
-        } else if (type.equalsIgnoreCase("Motorcycle")) {
-            System.out.print("Bike type: ");
-            String bikeType = scanner.nextLine().trim();
+            @Override
+            public int readInt(String name, int defaultValue) {
+                return Integer.parseInt(prompt(name));
+            }
             
-            System.out.print("Engine CC: ");
-            int engineCC = Integer.parseInt(scanner.nextLine().trim());
+            @Override
+            public double readDouble(String name, double defaultValue) {
+                return Double.parseDouble(prompt(name));
+            }
             
-            System.out.print("Has fairing (yes/no): ");
-            boolean hasFairing = scanner.nextLine().trim().equalsIgnoreCase("yes");
+            @Override
+            public String readString(String name, String defaultValue) {
+                return prompt(name);
+            }
             
-            return new Motorcycle(id, make, model, year, color, price, bikeType, engineCC, hasFairing);
+            @Override
+            public boolean readBoolean(String name, boolean defaultValue) {
+                return prompt(name).equalsIgnoreCase("yes");
+            }
+        };
+    }
+    
+    /**
+     * Allocates a new vehicle ID that is not used by any vehicle in the system
+     * @return The packed ID
+     */
+    public long generateVehicleId() {
+        long id = idAllocator.next();
+        while (containsId(id)) {
+            id = idAllocator.next();
         }
+        return id;
+    }
+    
+    /**
+     * Keeps the secondary indexes and caches in step with a mutation
+     * @param id The packed ID of the vehicle
+     * @param vehicle The added or updated vehicle, or null if it was deleted
+     */
+    private void onVehicleChanged(long id, Vehicle vehicle) {
+        if (prefixIndex != null) {
+            if (vehicle != null) {
+                prefixIndex.put(vehicle);
+            } else {
+                prefixIndex.remove(id);
+            }
+        }
+        sortedIndexes.clear();
+        columns = null;
+        ConsoleHelper.invalidateRow(id);
+        changesSinceSnapshot.incrementAndGet();
         
-        return null;
+        // Publish a private copy, so later in-place edits of the caller's instance stay out of the version
+        FleetVersion version = stagedVersion != null ? stagedVersion : fleetVersion;
+        if (version != null) {
+            version = vehicle != null ? version.with(VehicleCodecs.copyOf(vehicle)) : version.without(id);
+            if (stagedVersion != null) {
+                stagedVersion = version;
+            } else {
+                fleetVersion = version;
+            }
+        }
+    }
+    
+    /**
+     * Pins the current version of the fleet for a long-running read such as a report or export
+     * The first call builds the versioned fleet; from then on every mutation publishes a new
+     * version that shares all unchanged structure with the previous one, so taking a snapshot
+     * copies nothing. Call this on the thread that makes changes; the snapshot itself can be
+     * read on any thread.
+     * Lazy and off-heap fleets are not versioned; their snapshot iterates the store's view,
+     * materialising one vehicle at a time, and must be read before the next change.
+     * @return The snapshot; close it when done
+     */
+    public FleetSnapshot openSnapshot() {
+        catchUp();
+        if (offHeapStore != null) {
+            return new FleetSnapshot(offHeapStore.asList(), offHeapStore::get);
+        }
+        if (lazyStore != null) {
+            return new FleetSnapshot(lazyStore.asCollection(), lazyStore::get);
+        }
+        if (fleetVersion == null) {
+            fleetVersion = FleetVersion.of(vehicles);
+        }
+        return new FleetSnapshot(fleetVersion);
+    }
+    
+    /**
+     * Checks whether a vehicle with the given ID exists
+     * @param id The packed ID
+     * @return true if the ID is in use
+     */
+    private boolean containsId(long id) {
+        if (offHeapStore != null) {
+            return offHeapStore.contains(id);
+        }
+        return lazyStore != null ? lazyStore.contains(id) : vehicleIndex.containsKey(id);
     }
     
     /**
@@ -98,21 +488,141 @@ public class VehicleManager {
      * @return List of all vehicles
      */
     public List<Vehicle> getAllVehicles() {
+        catchUp();
+        if (lazyStore != null) {
+            return lazyStore.getAll();
+        }
+        if (offHeapStore != null) {
+            return offHeapStore.getAll();
+        }
         return new ArrayList<>(vehicles);
     }
     
+    /**
+     * Returns the number of vehicles without copying or materialising them
+     * @return The fleet size
+     */
+    public int getVehicleCount() {
+        catchUp();
+        if (offHeapStore != null) {
+            return offHeapStore.size();
+        }
+        return lazyStore != null ? lazyStore.size() : vehicles.size();
+    }
+    
+    /**
+     * Finds vehicles whose make, model or ID starts with a prefix
+     * @param prefix The prefix, matched case-insensitively
+     * @param limit Maximum number of results
+     * @return The first matching vehicles
+     */
+    public List<Vehicle> searchVehicles(String prefix, int limit) {
+        catchUp();
+        if (prefixIndex == null) {
+            VehiclePrefixIndex index = new VehiclePrefixIndex();
+            for (Vehicle vehicle : getAllVehicles()) {
+                index.put(vehicle);
+            }
+            prefixIndex = index;
+        }
+        
+        List<Vehicle> results = new ArrayList<>();
+        for (long id : prefixIndex.search(prefix, limit)) {
+            Vehicle vehicle = getVehicle(id);
+            if (vehicle != null) {
+                results.add(vehicle);
+            }
+        }
+        return results;
+    }
+    
+    /**
+     * Returns the K best vehicles by a key, e.g. the 10 cheapest trucks
+     * Uses a sorted index if one is available, otherwise a parallel bounded-heap selection
+     * @param key The attribute to rank by
+     * @param ascending true for the smallest keys, false for the largest
+     * @param k Number of vehicles to return
+     * @param filter Vehicles to consider, or null for all
+     * @return Up to K vehicles in rank order
+     */
+    public List<Vehicle> getTopVehicles(VehicleSortKey key, boolean ascending, int k, Predicate<Vehicle> filter) {
+        catchUp();
+        VehicleRanking.SortedIndex index = sortedIndexes.get(key);
+        if (index != null) {
+            return index.page(ascending, 0, k, filter);
+        }
+        return VehicleRanking.topK(getAllVehicles(), key, ascending, k, filter);
+    }
+    
+    /**
+     * Returns one page of the fleet ordered by a key
+     * The ordering is built on first use and reused until the fleet changes
+     * @param key The attribute to order by
+     * @param ascending true for smallest keys first
+     * @param offset Number of vehicles to skip
+     * @param limit Maximum page size
+     * @return The vehicles on the page
+     */
+    public List<Vehicle> getVehiclesSorted(VehicleSortKey key, boolean ascending, int offset, int limit) {
+        catchUp();
+        VehicleRanking.SortedIndex index = sortedIndexes.get(key);
+        if (index == null) {
+            index = new VehicleRanking.SortedIndex(getAllVehicles(), key);
+            sortedIndexes.put(key, index);
+        }
+        return index.page(ascending, offset, limit, null);
+    }
+    
+    /**
+     * Returns a columnar snapshot of the fleet for filter and aggregate scans
+     * The snapshot is built on first use and reused until the fleet changes
+     * @return The fleet's columns
+     */
+    public VehicleColumns getColumns() {
+        catchUp();
+        if (columns == null) {
+            columns = VehicleColumns.of(getAllVehicles());
+        }
+        return columns;
+    }
+    
     /**
      * Finds a vehicle by ID
      * @param id The ID to search for
      * @return The found vehicle or null
      */
     public Vehicle getVehicleById(String id) {
-        for (Vehicle vehicle : vehicles) {
-            if (vehicle.getId().equals(id)) {
-                return vehicle;
-            }
+        if (!VehicleId.isValid(id)) {
+            return null;
+        }
+        catchUp();
+        Vehicle vehicle = getVehicle(VehicleId.parse(id));
+        
+        // Once snapshots are in use, hand out a copy so edits stay invisible to readers until updateVehicle
+        if (vehicle != null && fleetVersion != null && vehicles != null) {
+            vehicle = VehicleCodecs.copyOf(vehicle);
+        }
+        
+        // Heap instances are edited in place, so remember how this one looked before any edits
+        if (vehicle != null && offHeapStore == null) {
+            editSnapshots.put(vehicle.getIdValue(), VehicleEvent.stateOf(vehicle));
+        }
+        return vehicle;
+    }
+    
+    /**
+     * Looks up a vehicle in whichever storage mode is active
+     * @param id The packed ID
+     * @return The vehicle or null
+     */
+    private Vehicle getVehicle(long id) {
+        if (offHeapStore != null) {
+            return offHeapStore.get(id);
+        }
+        if (lazyStore != null) {
+            return lazyStore.get(id);
         }
-        return null;
+        return vehicleIndex.get(id);
     }
     
     /**
@@ -121,14 +631,48 @@ public class VehicleManager {
      * @return true if successful
      */
     public boolean updateVehicle(Vehicle vehicle) {
-        for (int i = 0; i < vehicles.size(); i++) {
-            if (vehicles.get(i).getId().equals(vehicle.getId())) {
-                vehicles.set(i, vehicle);
-                jsonHandler.saveVehicles(vehicles);
-                return true;
+        long id = vehicle.getIdValue();
+        Map<Long, Vehicle> external = catchUp();
+        Map<String, Object> snapshot = editSnapshots.remove(id);
+        Vehicle current = getVehicle(id);
+        
+        // Optimistic check: refuse to overwrite a vehicle another process changed since it was checked out
+        boolean conflict = external != null
+                ? external.containsKey(id)
+                : current != null && current != vehicle && snapshot != null
+                  && !snapshot.equals(VehicleEvent.stateOf(current));
+        if (conflict) {
+            System.err.println("Vehicle " + vehicle.getId() + " was changed by another process; the edit was discarded");
+            return false;
+        }
+        if (current == null) {
+            return false;
+        }
+        
+        // A replaced instance still holds the old values; an instance edited in place only has its checkout snapshot
+        Map<String, Object> before = current != vehicle ? VehicleEvent.stateOf(current) : snapshot;
+        
+        boolean saved = applyAndPersist(id, vehicle, current, snapshot, () -> {
+            if (lazyStore != null) {
+                return lazyStore.save();
             }
+            if (offHeapStore != null) {
+                return persistOffHeap(vehicle, false);
+            }
+            return store.upsert(vehicle);
+        });
+        if (!saved) {
+            // Another process may have won the race for this vehicle; adopt its version
+            catchUp();
+            return false;
         }
-        return false;
+        
+        Map<String, Object> after = publishChange(VehicleEvent.Type.UPDATED, id, vehicle, before);
+        // The caller may keep editing the same instance
+        if (offHeapStore == null) {
+            editSnapshots.put(id, after);
+        }
+        return true;
     }
     
     /**
@@ -137,14 +681,81 @@ public class VehicleManager {
      * @return true if successful
      */
     public boolean deleteVehicle(String id) {
-        for (int i = 0; i < vehicles.size(); i++) {
-            if (vehicles.get(i).getId().equals(id)) {
-                vehicles.remove(i);
-                jsonHandler.saveVehicles(vehicles);
-                return true;
+        if (!VehicleId.isValid(id)) {
+            return false;
+        }
+        long packedId = VehicleId.parse(id);
+        catchUp();
+        Vehicle removed = getVehicle(packedId);
+        if (removed == null) {
+            return false;
+        }
+        boolean saved = applyAndPersist(packedId, null, removed, null, () -> {
+            if (lazyStore != null) {
+                return lazyStore.save();
+            }
+            if (offHeapStore != null && store instanceof JSONHandler) {
+                return ((JSONHandler) store).saveVehicle(offHeapStore.asList(), removed);
+            }
+            return store.delete(packedId);
+        });
+        if (saved) {
+            editSnapshots.remove(packedId);
+            publishChange(VehicleEvent.Type.DELETED, packedId, removed, null);
+        }
+        return saved;
+    }
+    
+    /**
+     * Applies a single change in memory and persists it, undoing the change if the write fails
+     * Like a commit, snapshot readers see the change only once it is persisted.
+     * @param id The packed vehicle ID
+     * @param vehicle The added or updated vehicle, or null to delete it
+     * @param previous The vehicle held before the change, or null if it is new
+     * @param previousState The fields of the previous vehicle before it was edited in place, or
+     *                      null if unknown; used to undo in-place edits
+     * @param write Persists the change once it is applied
+     * @return true if the change was persisted
+     */
+    private boolean applyAndPersist(long id, Vehicle vehicle, Vehicle previous, Map<String, Object> previousState,
+                                    BooleanSupplier write) {
+        boolean saved = false;
+        stagedVersion = fleetVersion;
+        try {
+            applyInMemory(Collections.singletonMap(id, vehicle));
+            saved = write.getAsBoolean();
+        } finally {
+            if (!saved) {
+                if (previous != null && previous == vehicle && previousState != null) {
+                    restoreState(previous, previousState);
+                }
+                applyInMemory(Collections.singletonMap(id, previous));
+            }
+            FleetVersion staged = stagedVersion;
+            stagedVersion = null;
+            if (saved && staged != null) {
+                fleetVersion = staged;
+            }
+        }
+        return saved;
+    }
+    
+    /**
+     * Puts back the fields a vehicle had before it was edited in place
+     * @param vehicle The edited vehicle
+     * @param state Its fields as recorded by VehicleEvent.stateOf
+     */
+    private static void restoreState(Vehicle vehicle, Map<String, Object> state) {
+        vehicle.setMake((String) state.get("make"));
+        vehicle.setModel((String) state.get("model"));
+        vehicle.setYear((Integer) state.get("year"));
+        vehicle.setColor((String) state.get("color"));
+        vehicle.setPriceCents((Long) state.get("priceCents"));
+        for (VehicleCodec.Field field : VehicleCodecs.of(vehicle).getFields()) {
+            if (state.containsKey(field.getName())) {
+                field.set(vehicle, state.get(field.getName()));
             }
         }
-        return false;
     }
     
     /**
@@ -152,6 +763,350 @@ public class VehicleManager {
      * @return true if successful
      */
     public boolean saveAllVehicles() {
-        return jsonHandler.saveVehicles(vehicles);
+        catchUp();
+        if (lazyStore != null) {
+            return lazyStore.save();
+        }
+        if (offHeapStore != null) {
+            return store instanceof JSONHandler
+                    ? ((JSONHandler) store).saveVehicles(offHeapStore.asList())
+                    : store.saveAll(offHeapStore.getAll());
+        }
+        return store.saveAll(vehicles);
+    }
+    
+    /**
+     * Saves vehicles handed out by getVehicleById that were edited in place but never passed to
+     * updateVehicle
+     * Every other change is saved as it is made, so usually there is nothing to write. Each edit
+     * is saved as an update rather than with a full save, which with shared access would make
+     * every other process reload the whole file.
+     * @return true if nothing was pending or every pending edit was saved
+     */
+    public boolean savePendingEdits() {
+        catchUp();
+        if (vehicles == null) {
+            return true;
+        }
+        List<Vehicle> edited = new ArrayList<>();
+        for (Map.Entry<Long, Map<String, Object>> checkout : editSnapshots.entrySet()) {
+            Vehicle vehicle = vehicleIndex.get(checkout.getKey());
+            if (vehicle != null && !checkout.getValue().equals(VehicleEvent.stateOf(vehicle))) {
+                edited.add(vehicle);
+            }
+        }
+        boolean saved = true;
+        for (Vehicle vehicle : edited) {
+            saved &= updateVehicle(vehicle);
+        }
+        return saved;
+    }
+    
+    /**
+     * Starts a transaction whose changes are applied and persisted together on commit
+     * @return The transaction; commit or roll it back when done
+     */
+    public VehicleTransaction begin() {
+        return new VehicleTransaction(this);
+    }
+    
+    /**
+     * Looks up the committed state of a vehicle for a transaction
+     * @param id The packed ID
+     * @return The vehicle or null
+     */
+    Vehicle getCommitted(long id) {
+        catchUp();
+        return getVehicle(id);
+    }
+    
+    /**
+     * Commits a transaction's changes
+     * The changes are applied in memory together and persisted with one batch write; if the
+     * write fails they are undone again. Snapshot readers see the new version only once it is
+     * persisted, and events are published only for a successful commit.
+     * @param changes Vehicles by ID, with null values for deletions
+     * @param readStates Fields of the vehicles the transaction read, which must still match
+     * @return true if the changes were committed
+     */
+    boolean commit(Map<Long, Vehicle> changes, Map<Long, Map<String, Object>> readStates) {
+        catchUp();
+        for (Map.Entry<Long, Map<String, Object>> read : readStates.entrySet()) {
+            Vehicle current = getVehicle(read.getKey());
+            if (current == null || !read.getValue().equals(VehicleEvent.stateOf(current))) {
+                System.err.println("Transaction not committed: vehicle " + VehicleId.format(read.getKey())
+                        + " was changed meanwhile");
+                return false;
+            }
+        }
+        if (changes.isEmpty()) {
+            return true;
+        }
+        
+        Map<Long, Vehicle> previous = new LinkedHashMap<>();
+        for (Long id : changes.keySet()) {
+            previous.put(id, getVehicle(id));
+        }
+        if (!applyAndPersist(changes, previous)) {
+            System.err.println("Transaction not committed: the changes could not be saved");
+            return false;
+        }
+        
+        for (Map.Entry<Long, Vehicle> change : changes.entrySet()) {
+            long id = change.getKey();
+            Vehicle old = previous.get(id);
+            editSnapshots.remove(id);
+            if (change.getValue() != null) {
+                publishChange(old == null ? VehicleEvent.Type.ADDED : VehicleEvent.Type.UPDATED, id, change.getValue(),
+                              old != null ? VehicleEvent.stateOf(old) : null);
+            } else if (old != null) {
+                publishChange(VehicleEvent.Type.DELETED, id, old, null);
+            }
+        }
+        return true;
+    }
+    
+    /**
+     * Applies a batch of changes in memory and persists them with one write, undoing them again
+     * if the write fails
+     * Snapshot readers see the new version only once it is persisted.
+     * @param changes Vehicles by ID, with null values for deletions
+     * @param previous The vehicles held before the changes, by ID, with null values for new ones
+     * @return true if the changes were persisted
+     */
+    private boolean applyAndPersist(Map<Long, Vehicle> changes, Map<Long, Vehicle> previous) {
+        List<Vehicle> upserts = new ArrayList<>();
+        List<Long> deletes = new ArrayList<>();
+        for (Map.Entry<Long, Vehicle> change : changes.entrySet()) {
+            if (change.getValue() != null) {
+                upserts.add(change.getValue());
+            } else {
+                deletes.add(change.getKey());
+            }
+        }
+        
+        boolean saved = false;
+        stagedVersion = fleetVersion;
+        try {
+            applyInMemory(changes);
+            if (lazyStore != null) {
+                saved = lazyStore.save();
+            } else if (offHeapStore != null && store instanceof JSONHandler) {
+                saved = ((JSONHandler) store).saveVehicles(offHeapStore.asList());
+            } else {
+                saved = store.batch(upserts, deletes);
+            }
+        } finally {
+            if (!saved) {
+                applyInMemory(previous);
+            }
+            FleetVersion staged = stagedVersion;
+            stagedVersion = null;
+            if (saved && staged != null) {
+                fleetVersion = staged;
+            }
+        }
+        return saved;
+    }
+    
+    /**
+     * Applies changes to whichever storage mode is active, without persisting them
+     * @param changes Vehicles by ID, with null values for deletions
+     */
+    private void applyInMemory(Map<Long, Vehicle> changes) {
+        for (Map.Entry<Long, Vehicle> change : changes.entrySet()) {
+            long id = change.getKey();
+            Vehicle vehicle = change.getValue();
+            onVehicleChanged(id, vehicle);
+            if (lazyStore != null) {
+                if (vehicle != null) {
+                    lazyStore.put(vehicle);
+                } else {
+                    lazyStore.remove(id);
+                }
+            } else if (offHeapStore != null) {
+                if (vehicle != null) {
+                    offHeapStore.put(vehicle);
+                } else {
+                    offHeapStore.remove(id);
+                }
+            }
+        }
+        if (vehicles != null) {
+            applyToHeap(changes);
+        }
+    }
+    
+    /**
+     * Returns the stream of mutation events
+     * Subscribers receive every add, update and delete in order, and can replay recent events.
+     * @return The event stream
+     */
+    public VehicleEventStream getEvents() {
+        return events;
+    }
+    
+    /**
+     * Publishes a mutation once it is persisted
+     * @param type The kind of mutation
+     * @param id The packed vehicle ID
+     * @param vehicle The vehicle after the change, or the removed vehicle
+     * @param before The fields before an update, or null if unknown
+     * @return The fields after the change
+     */
+    private Map<String, Object> publishChange(VehicleEvent.Type type, long id, Vehicle vehicle, Map<String, Object> before) {
+        Map<String, Object> state = VehicleEvent.stateOf(vehicle);
+        List<VehicleEvent.FieldChange> changes = VehicleEvent.diff(before, state);
+        if (type != VehicleEvent.Type.UPDATED || before == null || !changes.isEmpty()) {
+            events.publish(type, id, state, changes);
+        }
+        return state;
+    }
+    
+    /**
+     * Merges the changes other processes made to the data file since the last check, whether
+     * through a shared journal or a watched reload
+     * Only the heap fleet is kept in step; when nothing changed this costs at most one header read.
+     * Changed records replace their instances in place and are published as events. If the
+     * file was rewritten before this process caught up, the fleet is reloaded and diffed.
+     * @return Changed vehicles by ID (null values for deletions), or null after a full reload
+     */
+    private Map<Long, Vehicle> catchUp() {
+        if (vehicles == null || !(store instanceof JSONHandler)) {
+            return Collections.emptyMap();
+        }
+        Map<Long, Vehicle> changes = ((JSONHandler) store).pollExternalChanges();
+        if (changes == null) {
+            reloadFleet();
+            return null;
+        }
+        if (changes.isEmpty()) {
+            return changes;
+        }
+        
+        for (Map.Entry<Long, Vehicle> change : changes.entrySet()) {
+            long id = change.getKey();
+            Vehicle updated = change.getValue();
+            Vehicle old = vehicleIndex.get(id);
+            if (old == null && updated == null) {
+                continue;
+            }
+            Map<String, Object> before = stateBefore(id, old);
+            editSnapshots.remove(id);
+            onVehicleChanged(id, updated);
+            if (updated == null) {
+                publishChange(VehicleEvent.Type.DELETED, id, old, null);
+            } else {
+                publishChange(old == null ? VehicleEvent.Type.ADDED : VehicleEvent.Type.UPDATED, id, updated, before);
+            }
+        }
+        applyToHeap(changes);
+        return changes;
+    }
+    
+    /**
+     * Applies changes to the heap list and ID index
+     * Replacements and removals are done in one pass over the list instead of a search per vehicle.
+     * @param changes Vehicles by ID, with null values for deletions
+     */
+    private void applyToHeap(Map<Long, Vehicle> changes) {
+        boolean replaced = false;
+        for (Map.Entry<Long, Vehicle> change : changes.entrySet()) {
+            Vehicle updated = change.getValue();
+            Vehicle old = updated != null ? vehicleIndex.put(change.getKey(), updated) : vehicleIndex.remove(change.getKey());
+            if (old == updated) {
+                // Nothing to remove or add, or an instance edited in place that is already in the list
+                continue;
+            }
+            if (old == null) {
+                vehicles.add(updated);
+            } else {
+                replaced = true;
+            }
+        }
+        if (replaced) {
+            vehicles.removeIf(vehicle -> vehicleIndex.get(vehicle.getIdValue()) == null);
+            vehicles.replaceAll(vehicle -> vehicleIndex.get(vehicle.getIdValue()));
+        }
+    }
+    
+    /**
+     * Reloads the heap fleet after another process rewrote the data file, publishing the differences
+     */
+    private void reloadFleet() {
+        List<Vehicle> reloaded = store.loadAll();
+        LongVehicleMap reloadedIndex = indexVehicles(reloaded);
+        for (Vehicle vehicle : reloaded) {
+            long id = vehicle.getIdValue();
+            Vehicle old = vehicleIndex.remove(id);
+            if (old == null) {
+                publishChange(VehicleEvent.Type.ADDED, id, vehicle, null);
+            } else {
+                publishChange(VehicleEvent.Type.UPDATED, id, vehicle, stateBefore(id, old));
+            }
+            ConsoleHelper.invalidateRow(id);
+        }
+        // Whatever is left in the old index is gone from the file
+        for (Vehicle vehicle : vehicles) {
+            if (vehicleIndex.remove(vehicle.getIdValue()) != null) {
+                publishChange(VehicleEvent.Type.DELETED, vehicle.getIdValue(), vehicle, null);
+                ConsoleHelper.invalidateRow(vehicle.getIdValue());
+            }
+        }
+        vehicles = reloaded;
+        vehicleIndex = reloadedIndex;
+        if (fleetVersion != null) {
+            fleetVersion = FleetVersion.of(reloaded);
+        }
+        prefixIndex = null;
+        sortedIndexes.clear();
+        columns = null;
+    }
+    
+    /**
+     * Returns the last saved fields of a heap vehicle, which may have unsaved edits in place
+     * @param id The packed vehicle ID
+     * @param vehicle The indexed instance, or null
+     * @return The fields, or null if the vehicle is unknown
+     */
+    private Map<String, Object> stateBefore(long id, Vehicle vehicle) {
+        Map<String, Object> snapshot = editSnapshots.get(id);
+        if (snapshot != null) {
+            return snapshot;
+        }
+        return vehicle != null ? VehicleEvent.stateOf(vehicle) : null;
+    }
+    
+    /**
+     * Persists a change to the off-heap fleet
+     * The JSON file is written from a view that materialises one vehicle at a time. Apart from
+     * additions appended to an NDJSON file, every change rewrites the whole data file (or its
+     * shard), so single edits cost time in proportion to the fleet; addVehicles and transactions
+     * persist many changes with one rewrite.
+     * @param changed The added or updated vehicle
+     * @param added true if the vehicle is new
+     * @return true if successful
+     */
+    private boolean persistOffHeap(Vehicle changed, boolean added) {
+        if (!(store instanceof JSONHandler)) {
+            return store.upsert(changed);
+        }
+        JSONHandler jsonHandler = (JSONHandler) store;
+        List<Vehicle> view = offHeapStore.asList();
+        return added ? jsonHandler.appendVehicle(view, changed) : jsonHandler.saveVehicle(view, changed);
+    }
+    
+    /**
+     * Releases the persistence backend
+     */
+    public void close() {
+        if (maintenance != null) {
+            maintenance.close();
+        }
+        events.close();
+        if (offHeapStore != null) {
+            offHeapStore.close();
+        }
+        store.close();
     }
 }
\ No newline at end of file
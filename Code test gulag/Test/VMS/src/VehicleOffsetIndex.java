@@ -0,0 +1,307 @@
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+
+/**
+ * Maps packed vehicle IDs to the byte range of their JSON object in the data file
+ *
+ * The index is built by a single byte-level scan that only tracks brace depth and string
+ * state, so no vehicle is parsed. It can be saved next to the data file and is reused on
+ * the next start as long as the data file's size and modification time still match.
+ */
+public class VehicleOffsetIndex {
+    private static final int MAGIC = 0x56494458; // "VIDX"
+    private static final int FORMAT_VERSION = 1;
+
+    // Entries in file order
+    private long[] ids;
+    private long[] offsets;
+    private int[] lengths;
+    private int size;
+
+    // Open-addressing table of entry positions + 1 (0 marks an empty slot)
+    private int[] table;
+    private int mask;
+
+    private VehicleOffsetIndex(int capacity) {
+        ids = new long[Math.max(16, capacity)];
+        offsets = new long[ids.length];
+        lengths = new int[ids.length];
+    }
+
+    /**
+     * Reads the index saved for a data file, or builds and saves a new one if it is missing or stale
+     * @param dataFile The JSON array data file
+     * @return The index, or null if some record has no valid ID and cannot be indexed
+     * @throws IOException If the data file cannot be read
+     */
+    public static VehicleOffsetIndex open(File dataFile) throws IOException {
+        File indexFile = indexFileFor(dataFile);
+        if (indexFile.exists()) {
+            VehicleOffsetIndex index = read(indexFile, dataFile);
+            if (index != null) {
+                return index;
+            }
+        }
+
+        VehicleOffsetIndex index = build(dataFile);
+        if (index != null) {
+            try {
+                index.save(dataFile);
+            } catch (IOException e) {
+                System.err.println("Could not save offset index: " + e.getMessage());
+            }
+        }
+        return index;
+    }
+
+    /**
+     * Returns the file an index for a data file is stored in
+     * @param dataFile The data file
+     * @return The index file
+     */
+    public static File indexFileFor(File dataFile) {
+        return new File(dataFile.getPath() + ".idx");
+    }
+
+    /**
+     * Scans a data file and records the byte range of every top-level object
+     * @param dataFile The JSON array data file
+     * @return The index, or null if some record has no valid ID
+     * @throws IOException If the file cannot be read
+     */
+    public static VehicleOffsetIndex build(File dataFile) throws IOException {
+        VehicleOffsetIndex index = new VehicleOffsetIndex((int) Math.min(dataFile.length() / 150, 1 << 24));
+
+        try (InputStream in = new FileInputStream(dataFile)) {
+            byte[] chunk = new byte[1 << 16];
+            byte[] record = new byte[512];
+            int recordLength = 0;
+            long recordStart = -1;
+            long position = 0;
+            int depth = 0;
+            boolean inString = false;
+            boolean escaped = false;
+
+            int chunkLength;
+            while ((chunkLength = in.read(chunk)) != -1) {
+                for (int c = 0; c < chunkLength; c++) {
+                    byte b = chunk[c];
+                    if (depth > 0) {
+                        if (recordLength == record.length) {
+                            record = Arrays.copyOf(record, record.length * 2);
+                        }
+                        record[recordLength++] = b;
+                    }
+
+                    if (inString) {
+                        if (escaped) {
+                            escaped = false;
+                        } else if (b == '\\') {
+                            escaped = true;
+                        } else if (b == '"') {
+                            inString = false;
+                        }
+                    } else if (b == '"') {
+                        inString = true;
+                    } else if (b == '{') {
+                        if (depth == 0) {
+                            recordStart = position;
+                            record[0] = b;
+                            recordLength = 1;
+                        }
+                        depth++;
+                    } else if (b == '}') {
+                        depth--;
+                        if (depth == 0) {
+                            String id = extractId(record, recordLength);
+                            if (!VehicleId.isValid(id)) {
+                                return null;
+                            }
+                            index.add(VehicleId.parse(id), recordStart, (int) (position + 1 - recordStart));
+                        }
+                    }
+                    position++;
+                }
+            }
+        }
+
+        index.rebuildTable();
+        return index;
+    }
+
+    /**
+     * Finds the value of the top-level "id" property in a JSON object
+     * @return The ID text, or null if there is none
+     */
+    private static String extractId(byte[] record, int length) {
+        int depth = 0;
+        for (int i = 0; i < length; i++) {
+            byte b = record[i];
+            if (b == '"') {
+                int end = i + 1;
+                while (end < length && record[end] != '"') {
+                    end += record[end] == '\\' ? 2 : 1;
+                }
+                if (depth == 1 && end - i - 1 == 2 && record[i + 1] == 'i' && record[i + 2] == 'd') {
+                    // Only a key is followed by a colon; skip it to reach the value
+                    int value = end + 1;
+                    while (value < length && Character.isWhitespace(record[value])) {
+                        value++;
+                    }
+                    if (value >= length || record[value] != ':') {
+                        i = end;
+                        continue;
+                    }
+                    value++;
+                    while (value < length && Character.isWhitespace(record[value])) {
+                        value++;
+                    }
+                    if (value < length && record[value] == '"') {
+                        int valueEnd = value + 1;
+                        while (valueEnd < length && record[valueEnd] != '"') {
+                            valueEnd++;
+                        }
+                        return new String(record, value + 1, valueEnd - value - 1, StandardCharsets.UTF_8);
+                    }
+                    return null;
+                }
+                i = end;
+            } else if (b == '{' || b == '[') {
+                depth++;
+            } else if (b == '}' || b == ']') {
+                depth--;
+            }
+        }
+        return null;
+    }
+
+    private static VehicleOffsetIndex read(File indexFile, File dataFile) {
+        try (DataInputStream in = new DataInputStream(
+                new BufferedInputStream(new FileInputStream(indexFile), 1 << 16))) {
+            if (in.readInt() != MAGIC || in.readInt() != FORMAT_VERSION
+                    || in.readLong() != dataFile.length() || in.readLong() != dataFile.lastModified()) {
+                return null;
+            }
+
+            int count = in.readInt();
+            VehicleOffsetIndex index = new VehicleOffsetIndex(count);
+            for (int i = 0; i < count; i++) {
+                index.add(in.readLong(), in.readLong(), in.readInt());
+            }
+            index.rebuildTable();
+            return index;
+        } catch (IOException e) {
+            return null;
+        }
+    }
+
+    /**
+     * Saves the index next to its data file
+     * @param dataFile The data file the index describes
+     * @throws IOException If the index cannot be written
+     */
+    public void save(File dataFile) throws IOException {
+        try (DataOutputStream out = new DataOutputStream(
+                new BufferedOutputStream(new FileOutputStream(indexFileFor(dataFile)), 1 << 16))) {
+            out.writeInt(MAGIC);
+            out.writeInt(FORMAT_VERSION);
+            out.writeLong(dataFile.length());
+            out.writeLong(dataFile.lastModified());
+            out.writeInt(size);
+            for (int i = 0; i < size; i++) {
+                out.writeLong(ids[i]);
+                out.writeLong(offsets[i]);
+                out.writeInt(lengths[i]);
+            }
+        }
+    }
+
+    /**
+     * Creates an empty index to be filled while a data file is written
+     * @param expectedSize Expected number of entries
+     * @return The empty index
+     */
+    public static VehicleOffsetIndex forWriting(int expectedSize) {
+        return new VehicleOffsetIndex(expectedSize);
+    }
+
+    /**
+     * Appends an entry; call finish() once all entries are added
+     * @param id The packed vehicle ID
+     * @param offset Byte offset of the object in the data file
+     * @param length Byte length of the object
+     */
+    public void add(long id, long offset, int length) {
+        if (size == ids.length) {
+            int capacity = size * 2;
+            ids = Arrays.copyOf(ids, capacity);
+            offsets = Arrays.copyOf(offsets, capacity);
+            lengths = Arrays.copyOf(lengths, capacity);
+        }
+        ids[size] = id;
+        offsets[size] = offset;
+        lengths[size] = length;
+        size++;
+    }
+
+    /**
+     * Makes entries added through add() available to lookups
+     */
+    public void finish() {
+        rebuildTable();
+    }
+
+    private void rebuildTable() {
+        int capacity = Integer.highestOneBit(Math.max(16, size * 2) * 2 - 1);
+        table = new int[capacity];
+        mask = capacity - 1;
+        for (int i = 0; i < size; i++) {
+            int slot = hash(ids[i]) & mask;
+            while (table[slot] != 0) {
+                slot = (slot + 1) & mask;
+            }
+            table[slot] = i + 1;
+        }
+    }
+
+    private static int hash(long key) {
+        key ^= key >>> 33;
+        key *= 0xff51afd7ed558ccdL;
+        key ^= key >>> 33;
+        return (int) key;
+    }
+
+    /**
+     * Finds the entry position of an ID
+     * @param id The packed vehicle ID
+     * @return The position in file order, or -1 if the ID is not in the file
+     */
+    public int positionOf(long id) {
+        int slot = hash(id) & mask;
+        while (table[slot] != 0) {
+            int position = table[slot] - 1;
+            if (ids[position] == id) {
+                return position;
+            }
+            slot = (slot + 1) & mask;
+        }
+        return -1;
+    }
+
+    public int size() { return size; }
+
+    public long idAt(int position) { return ids[position]; }
+
+    public long offsetAt(int position) { return offsets[position]; }
+
+    public int lengthAt(int position) { return lengths[position]; }
+}
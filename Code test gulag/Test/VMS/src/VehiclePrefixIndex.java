@@ -0,0 +1,112 @@
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeSet;
+
+/**
+ * Incremental prefix index over vehicle make, model and ID for search-as-you-type
+ *
+ * Each vehicle contributes one entry per term, kept in a sorted set ordered by term and ID.
+ * A prefix query is a range scan starting at the prefix, so the first K matches are found
+ * in O(log n + K) regardless of fleet size.
+ */
+public class VehiclePrefixIndex {
+
+    /**
+     * A single (term, vehicle ID) pair
+     */
+    private static final class Entry implements Comparable<Entry> {
+        final String term;
+        final long id;
+
+        Entry(String term, long id) {
+            this.term = term;
+            this.id = id;
+        }
+
+        @Override
+        public int compareTo(Entry other) {
+            int result = term.compareTo(other.term);
+            return result != 0 ? result : Long.compare(id, other.id);
+        }
+    }
+
+    private final TreeSet<Entry> entries = new TreeSet<>();
+    // Terms currently indexed per vehicle, so updates can remove stale entries
+    private final Map<Long, String[]> termsById = new HashMap<>();
+
+    /**
+     * Adds or re-indexes a vehicle
+     * @param vehicle The vehicle
+     */
+    public synchronized void put(Vehicle vehicle) {
+        long id = vehicle.getIdValue();
+        String[] terms = termsOf(vehicle);
+        String[] previous = termsById.put(id, terms);
+        if (previous != null) {
+            for (String term : previous) {
+                entries.remove(new Entry(term, id));
+            }
+        }
+        for (String term : terms) {
+            entries.add(new Entry(term, id));
+        }
+    }
+
+    /**
+     * Removes a vehicle from the index
+     * @param id The packed vehicle ID
+     */
+    public synchronized void remove(long id) {
+        String[] previous = termsById.remove(id);
+        if (previous != null) {
+            for (String term : previous) {
+                entries.remove(new Entry(term, id));
+            }
+        }
+    }
+
+    /**
+     * Finds vehicles whose make, model or ID starts with a prefix
+     * @param prefix The prefix, matched case-insensitively
+     * @param limit Maximum number of results
+     * @return Packed IDs of the first matches, ordered by matching term
+     */
+    public synchronized List<Long> search(String prefix, int limit) {
+        String normalized = normalize(prefix);
+        Set<Long> matches = new LinkedHashSet<>();
+
+        for (Entry entry : entries.tailSet(new Entry(normalized, Long.MIN_VALUE), true)) {
+            if (!entry.term.startsWith(normalized) || matches.size() >= limit) {
+                break;
+            }
+            matches.add(entry.id);
+        }
+        return new ArrayList<>(matches);
+    }
+
+    /**
+     * @return Number of indexed vehicles
+     */
+    public synchronized int size() {
+        return termsById.size();
+    }
+
+    private static String[] termsOf(Vehicle vehicle) {
+        String make = normalize(vehicle.getMake());
+        String model = normalize(vehicle.getModel());
+        String id = vehicle.getId();
+        if (make.equals(model)) {
+            return new String[] {make, id};
+        }
+        return new String[] {make, model, id};
+    }
+
+    private static String normalize(String value) {
+        return value == null ? "" : value.trim().toLowerCase(Locale.ROOT);
+    }
+}
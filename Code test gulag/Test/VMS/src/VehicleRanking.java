@@ -0,0 +1,255 @@
+import java.util.ArrayList;
+import java.util.List;
+import java.util.function.Predicate;
+import java.util.stream.IntStream;
+
+/**
+ * Top-K selection and ordered pagination over the fleet using primitive sort keys
+ *
+ * Top-K keeps a bounded heap of K positions per chunk of the fleet; chunks are processed in
+ * parallel and merged, so the cost is O(n log K) instead of a full sort. A SortedIndex holds
+ * the whole fleet in key order and serves any page in O(page size) once built.
+ */
+public final class VehicleRanking {
+    // Fleets smaller than this are ranked on the calling thread
+    private static final int PARALLEL_THRESHOLD = 50_000;
+    private static final int CHUNK_SIZE = 16_384;
+
+    private VehicleRanking() {
+    }
+
+    /**
+     * Returns the K best vehicles by a key without sorting the fleet
+     * @param fleet The vehicles to rank
+     * @param key The attribute to rank by
+     * @param ascending true for the K smallest keys, false for the K largest
+     * @param k Number of vehicles to return
+     * @param filter Vehicles to consider, or null for all
+     * @return Up to K vehicles in rank order
+     */
+    public static List<Vehicle> topK(List<Vehicle> fleet, VehicleSortKey key, boolean ascending,
+                                     int k, Predicate<Vehicle> filter) {
+        int n = fleet.size();
+        if (k <= 0 || n == 0) {
+            return new ArrayList<>();
+        }
+
+        Vehicle[] vehicles = fleet.toArray(new Vehicle[0]);
+        long[] keys = new long[n];
+        boolean[] selected = new boolean[n];
+
+        // Extract primitive keys once; descending order is ranked as ascending on the complement
+        IntStream positions = IntStream.range(0, n);
+        if (n >= PARALLEL_THRESHOLD) {
+            positions = positions.parallel();
+        }
+        positions.forEach(i -> {
+            Vehicle vehicle = vehicles[i];
+            selected[i] = filter == null || filter.test(vehicle);
+            long value = key.keyOf(vehicle);
+            keys[i] = ascending ? value : ~value;
+        });
+
+        int chunks = (n + CHUNK_SIZE - 1) / CHUNK_SIZE;
+        IntStream chunkStream = IntStream.range(0, chunks);
+        if (n >= PARALLEL_THRESHOLD) {
+            chunkStream = chunkStream.parallel();
+        }
+        int[][] partial = chunkStream.mapToObj(c -> {
+            int start = c * CHUNK_SIZE;
+            int end = Math.min(n, start + CHUNK_SIZE);
+            // A chunk can contribute no more positions than it holds, however large K is
+            BoundedHeap heap = new BoundedHeap(Math.min(k, end - start), keys);
+            for (int i = start; i < end; i++) {
+                if (selected[i]) {
+                    heap.offer(i);
+                }
+            }
+            return heap.toArray();
+        }).toArray(int[][]::new);
+
+        BoundedHeap merged = new BoundedHeap(Math.min(k, n), keys);
+        for (int[] chunk : partial) {
+            for (int position : chunk) {
+                merged.offer(position);
+            }
+        }
+
+        int[] best = merged.toArray();
+        sortPositions(best, keys);
+        List<Vehicle> result = new ArrayList<>(best.length);
+        for (int position : best) {
+            result.add(vehicles[position]);
+        }
+        return result;
+    }
+
+    /**
+     * Sorts fleet positions by key, breaking ties by position (stable merge sort)
+     */
+    private static void sortPositions(int[] positions, long[] keys) {
+        int[] buffer = new int[positions.length];
+        mergeSort(positions, buffer, 0, positions.length, keys);
+    }
+
+    private static void mergeSort(int[] a, int[] buffer, int from, int to, long[] keys) {
+        if (to - from <= 16) {
+            for (int i = from + 1; i < to; i++) {
+                int value = a[i];
+                int j = i - 1;
+                while (j >= from && isBefore(value, a[j], keys)) {
+                    a[j + 1] = a[j];
+                    j--;
+                }
+                a[j + 1] = value;
+            }
+            return;
+        }
+
+        int middle = (from + to) >>> 1;
+        mergeSort(a, buffer, from, middle, keys);
+        mergeSort(a, buffer, middle, to, keys);
+        if (!isBefore(a[middle], a[middle - 1], keys)) {
+            return;
+        }
+
+        System.arraycopy(a, from, buffer, from, to - from);
+        int left = from;
+        int right = middle;
+        for (int i = from; i < to; i++) {
+            if (right >= to || (left < middle && !isBefore(buffer[right], buffer[left], keys))) {
+                a[i] = buffer[left++];
+            } else {
+                a[i] = buffer[right++];
+            }
+        }
+    }
+
+    private static boolean isBefore(int a, int b, long[] keys) {
+        return keys[a] < keys[b] || (keys[a] == keys[b] && a < b);
+    }
+
+    /**
+     * Max-heap of at most K fleet positions, with the worst kept position at the root
+     */
+    private static final class BoundedHeap {
+        private final int[] heap;
+        private final long[] keys;
+        private int size;
+
+        BoundedHeap(int capacity, long[] keys) {
+            this.heap = new int[capacity];
+            this.keys = keys;
+        }
+
+        void offer(int position) {
+            if (size < heap.length) {
+                heap[size] = position;
+                siftUp(size++);
+            } else if (isBefore(position, heap[0], keys)) {
+                heap[0] = position;
+                siftDown(0);
+            }
+        }
+
+        int[] toArray() {
+            int[] result = new int[size];
+            System.arraycopy(heap, 0, result, 0, size);
+            return result;
+        }
+
+        private void siftUp(int index) {
+            int value = heap[index];
+            while (index > 0) {
+                int parent = (index - 1) >>> 1;
+                if (!isBefore(heap[parent], value, keys)) {
+                    break;
+                }
+                heap[index] = heap[parent];
+                index = parent;
+            }
+            heap[index] = value;
+        }
+
+        private void siftDown(int index) {
+            int value = heap[index];
+            while (true) {
+                int child = 2 * index + 1;
+                if (child >= size) {
+                    break;
+                }
+                if (child + 1 < size && isBefore(heap[child], heap[child + 1], keys)) {
+                    child++;
+                }
+                if (!isBefore(value, heap[child], keys)) {
+                    break;
+                }
+                heap[index] = heap[child];
+                index = child;
+            }
+            heap[index] = value;
+        }
+    }
+
+    /**
+     * The whole fleet ordered by one key, for repeated pagination
+     */
+    public static final class SortedIndex {
+        private final Vehicle[] vehicles;
+        private final int[] order;
+
+        /**
+         * Builds the index; keys are extracted once (in parallel for large fleets), then positions are merge-sorted
+         * @param fleet The vehicles to order
+         * @param key The attribute to order by
+         */
+        public SortedIndex(List<Vehicle> fleet, VehicleSortKey key) {
+            this.vehicles = fleet.toArray(new Vehicle[0]);
+            int n = vehicles.length;
+            long[] keys = new long[n];
+            order = new int[n];
+
+            IntStream positions = IntStream.range(0, n);
+            if (n >= PARALLEL_THRESHOLD) {
+                positions = positions.parallel();
+            }
+            positions.forEach(i -> {
+                keys[i] = key.keyOf(vehicles[i]);
+                order[i] = i;
+            });
+            sortPositions(order, keys);
+        }
+
+        /**
+         * Returns one page of the fleet in key order
+         * @param ascending true for smallest keys first
+         * @param offset Number of vehicles to skip
+         * @param limit Maximum page size
+         * @param filter Vehicles to include, or null for all
+         * @return The vehicles on the page
+         */
+        public List<Vehicle> page(boolean ascending, int offset, int limit, Predicate<Vehicle> filter) {
+            List<Vehicle> result = new ArrayList<>(Math.max(0, Math.min(limit, order.length)));
+            int skipped = 0;
+            
+            // Without a filter the page starts at a known position
+            int start = 0;
+            if (filter == null) {
+                start = Math.max(0, offset);
+                skipped = offset;
+            }
+            for (int i = start; i < order.length && result.size() < limit; i++) {
+                Vehicle vehicle = vehicles[order[ascending ? i : order.length - 1 - i]];
+                if (filter != null && !filter.test(vehicle)) {
+                    continue;
+                }
+                if (skipped < offset) {
+                    skipped++;
+                    continue;
+                }
+                result.add(vehicle);
+            }
+            return result;
+        }
+    }
+}
@@ -0,0 +1,134 @@
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+/**
+ * Compares columnar scans in VehicleColumns with a plain loop over List&lt;Vehicle&gt;
+ *
+ * Runs "price in range and year &gt;= X" with a count and price sum/min/max, plus a per-type
+ * average of a type-specific field, and checks both paths agree before reporting.
+ * Usage: java VehicleScanBenchmark [fleetSize] [iterations]
+ */
+public class VehicleScanBenchmark {
+    private static final long MIN_CENTS = 1_500_000;
+    private static final long MAX_CENTS = 6_000_000;
+    private static final int MIN_YEAR = 2010;
+
+    public static void main(String[] args) {
+        int fleetSize = args.length > 0 ? Integer.parseInt(args[0]) : 1_000_000;
+        int iterations = args.length > 1 ? Integer.parseInt(args[1]) : 50;
+
+        List<Vehicle> fleet = generateFleet(fleetSize, new Random(11));
+        long start = System.nanoTime();
+        VehicleColumns columns = VehicleColumns.of(fleet);
+        columns.specStats("engineSize", columns.all());
+        double buildMillis = (System.nanoTime() - start) / 1e6;
+        System.out.printf("Fleet of %,d vehicles, column build %.1f ms%n%n", fleetSize, buildMillis);
+
+        long[] expected = loopScan(fleet);
+        long[] actual = columnScan(columns);
+        for (int i = 0; i < expected.length; i++) {
+            if (expected[i] != actual[i]) {
+                System.err.println("Mismatch in result " + i + ": " + expected[i] + " vs " + actual[i]);
+                return;
+            }
+        }
+        double loopEngine = loopEngineSize(fleet);
+        double columnEngine = columnEngineSize(columns);
+        if (Math.abs(loopEngine - columnEngine) > 1e-9 * Math.abs(loopEngine)) {
+            System.err.println("Mismatch in engine size sum: " + loopEngine + " vs " + columnEngine);
+            return;
+        }
+        System.out.printf("%,d matches, total %s, min %s, max %s%n%n", expected[0],
+                Money.format(expected[1]), Money.format(expected[2]), Money.format(expected[3]));
+
+        // Warm up both paths before measuring
+        for (int i = 0; i < iterations; i++) {
+            loopScan(fleet);
+            columnScan(columns);
+            loopEngineSize(fleet);
+            columnEngineSize(columns);
+        }
+
+        System.out.printf("%-28s %12s %12s%n", "Query", "List loop", "Columns");
+        report("price range + year filter", time(() -> loopScan(fleet), iterations),
+               time(() -> columnScan(columns), iterations));
+        report("car engine size sum", time(() -> loopEngineSize(fleet), iterations),
+               time(() -> columnEngineSize(columns), iterations));
+    }
+
+    private static long[] loopScan(List<Vehicle> fleet) {
+        long count = 0;
+        long sum = 0;
+        long min = Long.MAX_VALUE;
+        long max = Long.MIN_VALUE;
+        for (Vehicle vehicle : fleet) {
+            long cents = vehicle.getPriceCents();
+            if (cents >= MIN_CENTS && cents <= MAX_CENTS && vehicle.getYear() >= MIN_YEAR) {
+                count++;
+                sum += cents;
+                min = Math.min(min, cents);
+                max = Math.max(max, cents);
+            }
+        }
+        return new long[] {count, sum, count == 0 ? 0 : min, count == 0 ? 0 : max};
+    }
+
+    private static long[] columnScan(VehicleColumns columns) {
+        long[] selection = VehicleColumns.and(columns.priceBetween(MIN_CENTS, MAX_CENTS),
+                                              columns.yearAtLeast(MIN_YEAR));
+        VehicleColumns.LongStats stats = columns.priceStats(selection);
+        return new long[] {stats.count, stats.sum, stats.min, stats.max};
+    }
+
+    private static double loopEngineSize(List<Vehicle> fleet) {
+        double sum = 0;
+        for (Vehicle vehicle : fleet) {
+            if (vehicle instanceof Car) {
+                sum += ((Car) vehicle).getEngineSize();
+            }
+        }
+        return sum;
+    }
+
+    private static double columnEngineSize(VehicleColumns columns) {
+        return columns.specStats("engineSize", columns.typeIs(VehicleCodecs.tagOf(Car.class))).sum;
+    }
+
+    private static double time(Runnable query, int iterations) {
+        long start = System.nanoTime();
+        for (int i = 0; i < iterations; i++) {
+            query.run();
+        }
+        return (System.nanoTime() - start) / 1e6 / iterations;
+    }
+
+    private static void report(String name, double loopMillis, double columnMillis) {
+        System.out.printf("%-28s %10.2fms %10.2fms  (%.1fx)%n", name, loopMillis, columnMillis,
+                loopMillis / columnMillis);
+    }
+
+    private static List<Vehicle> generateFleet(int size, Random random) {
+        IdAllocator allocator = new IdAllocator(1);
+        List<Vehicle> fleet = new ArrayList<>(size);
+        for (int i = 0; i < size; i++) {
+            long id = allocator.next();
+            int year = 1990 + random.nextInt(35);
+            long priceCents = random.nextInt(10_000_000);
+            switch (random.nextInt(3)) {
+                case 0:
+                    fleet.add(new Car(id, "Toyota", "Corolla", year, "Red", priceCents, 4, "Automatic",
+                                      1 + random.nextInt(40) / 10.0));
+                    break;
+                case 1:
+                    fleet.add(new Truck(id, "Ford", "F-150", year, "Blue", priceCents,
+                                        random.nextInt(5000) / 10.0, "4WD", random.nextBoolean()));
+                    break;
+                default:
+                    fleet.add(new Motorcycle(id, "Honda", "CBR", year, "Black", priceCents, "Sport",
+                                             125 + random.nextInt(1700), random.nextBoolean()));
+            }
+        }
+        return fleet;
+    }
+}
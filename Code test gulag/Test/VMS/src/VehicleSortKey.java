@@ -0,0 +1,31 @@
+/**
+ * Attributes vehicles can be ranked by, each reduced to a primitive long sort key
+ * Keys are extracted once per vehicle so comparisons never go back through the getters.
+ */
+public enum VehicleSortKey {
+    PRICE {
+        @Override
+        public long keyOf(Vehicle vehicle) {
+            return vehicle.getPriceCents();
+        }
+    },
+    YEAR {
+        @Override
+        public long keyOf(Vehicle vehicle) {
+            return vehicle.getYear();
+        }
+    },
+    ID {
+        @Override
+        public long keyOf(Vehicle vehicle) {
+            return vehicle.getIdValue();
+        }
+    };
+
+    /**
+     * Extracts the sort key of a vehicle
+     * @param vehicle The vehicle
+     * @return The key; smaller keys sort first in ascending order
+     */
+    public abstract long keyOf(Vehicle vehicle);
+}
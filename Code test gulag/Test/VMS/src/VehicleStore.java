@@ -0,0 +1,63 @@
+import java.util.List;
+import java.util.function.Consumer;
+import java.util.function.Predicate;
+
+/**
+ * Persistence backend for the fleet
+ *
+ * VehicleManager keeps the working set in memory and reports every mutation to its store.
+ * JSONHandler stores the fleet in JSON files; JdbcVehicleStore stores it in an SQL database.
+ * Methods report failures through their return value and print the cause to System.err.
+ */
+public interface VehicleStore extends AutoCloseable {
+
+    /**
+     * Loads every stored vehicle
+     * @return List of vehicles, empty if nothing is stored
+     */
+    List<Vehicle> loadAll();
+
+    /**
+     * Inserts a vehicle, or replaces the stored vehicle with the same ID
+     * @param vehicle The vehicle to store
+     * @return true if successful, false otherwise
+     */
+    boolean upsert(Vehicle vehicle);
+
+    /**
+     * Deletes a stored vehicle
+     * @param id The packed vehicle ID
+     * @return true if the vehicle existed and was deleted, false otherwise
+     */
+    boolean delete(long id);
+
+    /**
+     * Applies several upserts and deletes as a single write
+     * @param upserts Vehicles to insert or replace
+     * @param deletes Packed IDs of vehicles to delete
+     * @return true if successful, false otherwise
+     */
+    boolean batch(List<Vehicle> upserts, List<Long> deletes);
+
+    /**
+     * Streams stored vehicles matching a type and a filter
+     * @param type Vehicle type name ("Car", "Truck", ...), or null for all types
+     * @param filter Additional condition, or null to accept every vehicle of the type
+     * @param action Receives each match
+     */
+    void scan(String type, Predicate<Vehicle> filter, Consumer<Vehicle> action);
+
+    /**
+     * Replaces the whole stored fleet
+     * @param vehicles The vehicles to store
+     * @return true if successful, false otherwise
+     */
+    boolean saveAll(List<Vehicle> vehicles);
+
+    /**
+     * Releases connections or other resources held by the store
+     */
+    @Override
+    default void close() {
+    }
+}
@@ -0,0 +1,133 @@
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+
+/**
+ * Runs the same workload against each VehicleStore backend
+ *
+ * Measures bulk save, full load, per-operation latency of insert, update and delete, batched
+ * writes, and query throughput of a type scan with a price filter. The JSON backends always
+ * run; the SQL backend runs when a JDBC URL is given and its driver is on the classpath.
+ * Usage: java VehicleStoreBenchmark [fleetSize] [operations] [jdbcUrl]
+ */
+public class VehicleStoreBenchmark {
+    private static final String[] MAKES = {"Toyota", "Ford", "Honda", "Nissan", "Tesla", "BMW", "Kia"};
+    private static final String[] COLORS = {"Black", "White", "Silver", "Red", "Blue"};
+
+    public static void main(String[] args) throws IOException {
+        int fleetSize = args.length > 0 ? Integer.parseInt(args[0]) : 20_000;
+        int operations = args.length > 1 ? Integer.parseInt(args[1]) : 200;
+        String jdbcUrl = args.length > 2 ? args[2] : null;
+
+        Map<String, VehicleStore> stores = new LinkedHashMap<>();
+        File jsonFile = File.createTempFile("vehicles-store", ".json");
+        jsonFile.deleteOnExit();
+        stores.put("json", new JSONHandler(jsonFile.getPath()));
+
+        File ndjsonFile = File.createTempFile("vehicles-store", ".ndjson");
+        ndjsonFile.deleteOnExit();
+        JSONHandler ndjson = new JSONHandler(ndjsonFile.getPath());
+        ndjson.setFormat(JSONHandler.Format.NDJSON);
+        stores.put("ndjson", ndjson);
+
+        if (jdbcUrl != null) {
+            VehicleStore jdbc = JdbcVehicleStore.open(jdbcUrl);
+            if (jdbc != null) {
+                stores.put("jdbc", jdbc);
+            }
+        }
+
+        System.out.printf("Fleet of %,d vehicles, %d operations per latency test%n%n", fleetSize, operations);
+        System.out.printf("%-8s %10s %10s %10s %10s %10s %12s %12s%n",
+                "Backend", "Save all", "Load all", "Insert", "Update", "Delete", "Batch/op", "Scans/s");
+
+        for (Map.Entry<String, VehicleStore> entry : stores.entrySet()) {
+            VehicleStore store = entry.getValue();
+            Random random = new Random(7);
+            IdAllocator allocator = new IdAllocator(1);
+            List<Vehicle> fleet = generateFleet(fleetSize, allocator, random);
+
+            long start = System.nanoTime();
+            store.saveAll(fleet);
+            double saveMillis = (System.nanoTime() - start) / 1e6;
+
+            start = System.nanoTime();
+            store.loadAll();
+            double loadMillis = (System.nanoTime() - start) / 1e6;
+
+            List<Vehicle> inserted = generateFleet(operations, allocator, random);
+            start = System.nanoTime();
+            for (Vehicle vehicle : inserted) {
+                store.upsert(vehicle);
+            }
+            double insertMicros = (System.nanoTime() - start) / 1e3 / operations;
+
+            start = System.nanoTime();
+            for (int i = 0; i < operations; i++) {
+                Vehicle vehicle = fleet.get(random.nextInt(fleet.size()));
+                vehicle.setPrice(vehicle.getPrice() + 1);
+                store.upsert(vehicle);
+            }
+            double updateMicros = (System.nanoTime() - start) / 1e3 / operations;
+
+            start = System.nanoTime();
+            for (Vehicle vehicle : inserted) {
+                store.delete(vehicle.getIdValue());
+            }
+            double deleteMicros = (System.nanoTime() - start) / 1e3 / operations;
+
+            List<Vehicle> batch = generateFleet(operations, allocator, random);
+            start = System.nanoTime();
+            store.batch(batch, new ArrayList<>());
+            double batchMicros = (System.nanoTime() - start) / 1e3 / operations;
+
+            int scans = 0;
+            long[] matches = new long[1];
+            start = System.nanoTime();
+            while (System.nanoTime() - start < 1_000_000_000L) {
+                store.scan("Truck", vehicle -> vehicle.getPrice() < 20_000, vehicle -> matches[0]++);
+                scans++;
+            }
+            double scansPerSecond = scans / ((System.nanoTime() - start) / 1e9);
+
+            System.out.printf("%-8s %8.1fms %8.1fms %8.1fus %8.1fus %8.1fus %10.1fus %12.1f%n",
+                    entry.getKey(), saveMillis, loadMillis, insertMicros, updateMicros, deleteMicros,
+                    batchMicros, scansPerSecond);
+            store.close();
+        }
+    }
+
+    private static List<Vehicle> generateFleet(int size, IdAllocator allocator, Random random) {
+        List<Vehicle> fleet = new ArrayList<>(size);
+        for (int i = 0; i < size; i++) {
+            String id = allocator.nextId();
+            String make = MAKES[random.nextInt(MAKES.length)];
+            String model = "Model " + random.nextInt(500);
+            int year = 1990 + random.nextInt(35);
+            String color = COLORS[random.nextInt(COLORS.length)];
+            long priceCents = random.nextInt(10_000_000);
+
+            switch (i % 3) {
+                case 0:
+                    fleet.add(new Car(id, make, model, year, color, priceCents,
+                                      2 + random.nextInt(3), random.nextBoolean() ? "Automatic" : "Manual",
+                                      1 + random.nextInt(40) / 10.0));
+                    break;
+                case 1:
+                    fleet.add(new Truck(id, make, model, year, color, priceCents,
+                                        random.nextInt(5000) / 10.0, random.nextBoolean() ? "4WD" : "2WD",
+                                        random.nextBoolean()));
+                    break;
+                default:
+                    fleet.add(new Motorcycle(id, make, model, year, color, priceCents,
+                                             random.nextBoolean() ? "Sport" : "Cruiser",
+                                             125 + random.nextInt(1700), random.nextBoolean()));
+            }
+        }
+        return fleet;
+    }
+}
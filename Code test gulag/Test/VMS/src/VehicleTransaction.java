@@ -0,0 +1,149 @@
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * A group of changes that is applied and persisted all at once, or not at all
+ *
+ * Changes are buffered here and leave the fleet untouched until commit. Commit checks that
+ * every vehicle read through the transaction is unchanged, applies all buffered changes in
+ * memory, and persists them with a single batch write; if that write fails the fleet is put
+ * back as it was. Vehicles must be edited through copies obtained from get().
+ * Obtained from VehicleManager.begin().
+ */
+public class VehicleTransaction implements AutoCloseable {
+    private final VehicleManager manager;
+
+    // Buffered changes in order of first touch; a null value deletes the vehicle
+    private final Map<Long, Vehicle> changes = new LinkedHashMap<>();
+
+    // Fields of each vehicle as read through get(), checked again at commit
+    private final Map<Long, Map<String, Object>> readStates = new LinkedHashMap<>();
+
+    private boolean active = true;
+
+    VehicleTransaction(VehicleManager manager) {
+        this.manager = manager;
+    }
+
+    /**
+     * Reads a vehicle as this transaction sees it
+     * @param id The vehicle ID
+     * @return A private copy to edit and pass to update, or null if the vehicle does not exist
+     */
+    public Vehicle get(String id) {
+        checkActive();
+        if (!VehicleId.isValid(id)) {
+            return null;
+        }
+        long packedId = VehicleId.parse(id);
+        if (changes.containsKey(packedId)) {
+            Vehicle buffered = changes.get(packedId);
+            return buffered != null ? VehicleCodecs.copyOf(buffered) : null;
+        }
+        Vehicle current = manager.getCommitted(packedId);
+        if (current == null) {
+            return null;
+        }
+        readStates.putIfAbsent(packedId, VehicleEvent.stateOf(current));
+        return VehicleCodecs.copyOf(current);
+    }
+
+    /**
+     * Buffers the addition of a vehicle
+     * @param vehicle The new vehicle
+     * @return false if the ID is already in use
+     */
+    public boolean add(Vehicle vehicle) {
+        checkActive();
+        long id = vehicle.getIdValue();
+        if (changes.containsKey(id) ? changes.get(id) != null : manager.getCommitted(id) != null) {
+            return false;
+        }
+        changes.put(id, vehicle);
+        return true;
+    }
+
+    /**
+     * Buffers the replacement of a vehicle
+     * @param vehicle The changed vehicle, usually a copy from get()
+     * @return false if the vehicle does not exist
+     */
+    public boolean update(Vehicle vehicle) {
+        checkActive();
+        long id = vehicle.getIdValue();
+        if (changes.containsKey(id) ? changes.get(id) == null : manager.getCommitted(id) == null) {
+            return false;
+        }
+        changes.put(id, vehicle);
+        return true;
+    }
+
+    /**
+     * Buffers the deletion of a vehicle
+     * @param id The vehicle ID
+     * @return false if the vehicle does not exist
+     */
+    public boolean delete(String id) {
+        checkActive();
+        if (!VehicleId.isValid(id)) {
+            return false;
+        }
+        long packedId = VehicleId.parse(id);
+        if (changes.containsKey(packedId) ? changes.get(packedId) == null : manager.getCommitted(packedId) == null) {
+            return false;
+        }
+        changes.put(packedId, null);
+        return true;
+    }
+
+    /**
+     * @return Number of vehicles this transaction changes
+     */
+    public int size() {
+        return changes.size();
+    }
+
+    /**
+     * @return true until the transaction is committed or rolled back
+     */
+    public boolean isActive() {
+        return active;
+    }
+
+    /**
+     * Applies and persists every buffered change in one write
+     * @return true if all changes were applied; false if a vehicle read through this transaction
+     *         was changed meanwhile or the write failed, in which case nothing was changed
+     */
+    public boolean commit() {
+        checkActive();
+        active = false;
+        return manager.commit(Collections.unmodifiableMap(changes), Collections.unmodifiableMap(readStates));
+    }
+
+    /**
+     * Discards every buffered change
+     */
+    public void rollback() {
+        active = false;
+        changes.clear();
+        readStates.clear();
+    }
+
+    /**
+     * Rolls back unless the transaction was committed
+     */
+    @Override
+    public void close() {
+        if (active) {
+            rollback();
+        }
+    }
+
+    private void checkActive() {
+        if (!active) {
+            throw new IllegalStateException("Transaction is no longer active");
+        }
+    }
+}